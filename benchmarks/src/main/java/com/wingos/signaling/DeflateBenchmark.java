@@ -0,0 +1,67 @@
+package com.wingos.signaling;
+
+import org.java_websocket.framing.TextFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * permessage-deflate：offer 和 candidate 的压缩耗时，压缩前后的大小在 setup 时输出
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeflateBenchmark {
+
+    /** 是否协商SDP预置字典 */
+    @Param({"true", "false"})
+    public boolean dictionary;
+
+    private SdpDeflateExtension extension;
+    private byte[] offer;
+    private byte[] candidates;
+
+    @Setup
+    public void setup() {
+        extension = new SdpDeflateExtension(SdpDeflateExtension.DEFAULT_THRESHOLD, dictionary,
+                new SdpDeflateExtension.Stats());
+        extension.acceptProvidedExtensionAsServer(
+                "permessage-deflate; client_no_context_takeover; x-sdp-dictionary=1");
+        offer = SampleMessages.offer().getBytes(StandardCharsets.UTF_8);
+        candidates = SampleMessages.candidates(null, 5).getBytes(StandardCharsets.UTF_8);
+        System.out.printf("%noffer: %d -> %d bytes, candidates(5): %d -> %d bytes%n",
+                offer.length, deflate(offer), candidates.length, deflate(candidates));
+    }
+
+    private int deflate(byte[] payload) {
+        TextFrame frame = new TextFrame();
+        frame.setPayload(ByteBuffer.wrap(payload));
+        extension.encodeFrame(frame);
+        return frame.getPayloadData().remaining();
+    }
+
+    @Benchmark
+    public int offer() {
+        return deflate(offer);
+    }
+
+    @Benchmark
+    public int candidates() {
+        return deflate(candidates);
+    }
+}
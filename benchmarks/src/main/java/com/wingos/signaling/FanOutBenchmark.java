@@ -0,0 +1,59 @@
+package com.wingos.signaling;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 广播扇出：一次编码（FanOut）与逐个连接编码（WebSocket.send）的对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int recipients;
+
+    private NullWebSocket[] connections;
+    private String message;
+
+    @Setup
+    public void setup() {
+        connections = new NullWebSocket[recipients];
+        for (int i = 0; i < recipients; i++) {
+            connections[i] = new NullWebSocket("/");
+        }
+        message = SampleMessages.candidate(null, 1);
+    }
+
+    @Benchmark
+    public int encodeOnce() {
+        FanOut fanOut = new FanOut(message);
+        for (NullWebSocket conn : connections) {
+            fanOut.sendTo(conn);
+        }
+        return fanOut.sentCount();
+    }
+
+    @Benchmark
+    public long encodePerRecipient() {
+        for (NullWebSocket conn : connections) {
+            conn.send(message);
+        }
+        return connections[0].frames();
+    }
+}
@@ -0,0 +1,163 @@
+package com.wingos.signaling;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接建立：TCP连接 + （TLS握手） + WebSocket握手，直到 onOpen
+ *
+ * transport 参数：
+ * - ws：明文
+ * - wss：每次完整TLS握手（客户端每次清空会话缓存）
+ * - wss-resumed：复用客户端的TLS会话，对应移动端断线重连
+ *
+ * 服务器在本进程内启动，证书为 setup 时用 keytool 生成的自签名证书。
+ * 用 -t 指定并发线程数可以测量握手速率的上限。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandshakeBenchmark {
+    private static final int PORT = 10200;
+    private static final String PASSWORD = "benchmark";
+
+    @Param({"ws", "wss", "wss-resumed"})
+    public String transport;
+
+    private SignalingServer server;
+    private File keystore;
+    private URI uri;
+    private SSLContext clientContext;
+    private SSLSocketFactory socketFactory;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        boolean tls = transport.startsWith("wss");
+        SignalingConfig config = new SignalingConfig().setJmxEnabled(false).setEventLog(SignalingConfig.EVENT_LOG_OFF);
+        if (tls) {
+            keystore = generateSelfSignedKeystore();
+            config.setTlsKeystore(keystore.getPath()).setTlsKeystorePassword(PASSWORD);
+            clientContext = trustingContext(keystore);
+            socketFactory = clientContext.getSocketFactory();
+        }
+        server = new SignalingServer(config);
+        server.start(PORT);
+        uri = new URI((tls ? "wss" : "ws") + "://localhost:" + PORT + "/?deviceId=bench");
+        // 等待服务器开始监听
+        for (int i = 0; i < 50; i++) {
+            try {
+                handshake();
+                return;
+            } catch (IllegalStateException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + PORT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+        if (keystore != null) {
+            keystore.delete();
+        }
+    }
+
+    @Benchmark
+    public void handshake() throws InterruptedException {
+        if ("wss".equals(transport)) {
+            invalidateClientSessions();
+        }
+        WebSocketClient client = new WebSocketClient(uri) {
+            @Override
+            public void onOpen(ServerHandshake handshake) {
+            }
+
+            @Override
+            public void onMessage(String message) {
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {
+            }
+
+            @Override
+            public void onError(Exception ex) {
+            }
+        };
+        // 关闭Nagle，否则TLS握手后的升级请求会等待对端的延迟确认（约40ms）
+        client.setTcpNoDelay(true);
+        if (socketFactory != null) {
+            client.setSocketFactory(socketFactory);
+        }
+        if (!client.connectBlocking(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Handshake failed");
+        }
+        client.close();
+    }
+
+    private void invalidateClientSessions() {
+        SSLSessionContext sessions = clientContext.getClientSessionContext();
+        for (byte[] id : Collections.list(sessions.getIds())) {
+            if (sessions.getSession(id) != null) {
+                sessions.getSession(id).invalidate();
+            }
+        }
+    }
+
+    private static File generateSelfSignedKeystore() throws Exception {
+        File file = Files.createTempFile("signaling-bench", ".p12").toFile();
+        file.delete();
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "signaling",
+                "-keyalg", "EC", "-groupname", "secp256r1", "-dname", "CN=localhost", "-validity", "1",
+                "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-storetype", "PKCS12", "-keystore", file.getPath(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+                .inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("keytool failed");
+        }
+        return file;
+    }
+
+    private static SSLContext trustingContext(File keystore) throws Exception {
+        KeyStore trusted = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keystore)) {
+            trusted.load(in, PASSWORD.toCharArray());
+        }
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(trusted);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+}
@@ -0,0 +1,257 @@
+package com.wingos.signaling;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 空闲连接的内存占用
+ *
+ * 服务器在本进程内启动，客户端在单独的子进程中建立连接并保持空闲（只完成握手，不再收发），
+ * 本进程测得的堆只包含服务器一侧。依次增加到每个连接数后多次GC，输出每个连接平均占用的堆，
+ * 以及直接内存（低内存模式下缓冲区池使用直接缓冲区）。
+ *
+ * 用法：
+ * java -Xmx8g -cp target/benchmarks.jar com.wingos.signaling.IdleConnectionBenchmark \
+ *   --sessions=10000,50000,100000 [--low-memory=true] [--tls-keystore=PATH --tls-keystore-password=...]
+ *
+ * 需要足够的文件描述符（ulimit -n，服务器和子进程各需要连接数个）；
+ * 每个本地地址最多约2.8万个临时端口，客户端依次绑定 127.0.0.1、127.0.0.2……
+ */
+public class IdleConnectionBenchmark {
+    private static final int CONNECTIONS_PER_ADDRESS = 25000;
+    private static final int DEVICES = 100;
+
+    private int[] sessions = {10000, 50000, 100000};
+    private boolean lowMemory;
+    private String tlsKeystore;
+    private String tlsKeystorePassword;
+    private int port = 10300;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+            System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        }
+        if (args.length > 0 && args[0].equals("clients")) {
+            Clients.run(args[1], Integer.parseInt(args[2]), Boolean.parseBoolean(args[3]));
+            return;
+        }
+        IdleConnectionBenchmark benchmark = new IdleConnectionBenchmark();
+        for (String arg : args) {
+            benchmark.apply(arg);
+        }
+        benchmark.run();
+        System.exit(0);
+    }
+
+    private void apply(String arg) {
+        int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || eq < 0) {
+            return;
+        }
+        String value = arg.substring(eq + 1);
+        switch (arg.substring(2, eq)) {
+            case "sessions":
+                String[] items = value.split(",");
+                sessions = new int[items.length];
+                for (int i = 0; i < items.length; i++) {
+                    sessions[i] = Integer.parseInt(items[i].trim());
+                }
+                break;
+            case "low-memory":
+                lowMemory = Boolean.parseBoolean(value);
+                break;
+            case "tls-keystore":
+                tlsKeystore = value;
+                break;
+            case "tls-keystore-password":
+                tlsKeystorePassword = value;
+                break;
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void run() throws Exception {
+        SignalingConfig config = new SignalingConfig()
+                .setJmxEnabled(false)
+                .setEventLog(SignalingConfig.EVENT_LOG_OFF)
+                .setLowMemory(lowMemory)
+                // 子进程不回复ping，测量期间不能因心跳超时关闭连接
+                .setClientTimeoutMs(TimeUnit.HOURS.toMillis(1))
+                .setDeviceTimeoutMs(TimeUnit.HOURS.toMillis(1));
+        boolean tls = tlsKeystore != null;
+        if (tls) {
+            config.setTlsKeystore(tlsKeystore);
+            if (tlsKeystorePassword != null) {
+                config.setTlsKeystorePassword(tlsKeystorePassword);
+            }
+        }
+        SignalingServer server = new SignalingServer(config);
+        server.start(port);
+        Thread.sleep(500);
+
+        long baseHeap = usedHeap();
+        long baseDirect = usedDirect();
+        Process process = new ProcessBuilder(javaExecutable(), "-Xmx2g", "-cp", System.getProperty("java.class.path"),
+                IdleConnectionBenchmark.class.getName(), "clients", "127.0.0.1:" + port, String.valueOf(DEVICES),
+                String.valueOf(tls))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        PrintStream commands = new PrintStream(process.getOutputStream(), true, "UTF-8");
+        BufferedReader replies = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+        System.out.printf("mode=%s transport=%s%n", lowMemory ? "low-memory" : "default", tls ? "wss" : "ws");
+        System.out.printf("%10s %14s %14s %14s%n", "sessions", "heap/conn(B)", "heap(MB)", "direct(MB)");
+        try {
+            for (int target : sessions) {
+                commands.println(target);
+                String reply = replies.readLine();
+                if (reply == null || !reply.startsWith("ok")) {
+                    System.out.println("Client process failed: " + reply);
+                    break;
+                }
+                // 等待服务器处理完所有握手
+                while (server.getClientCount() < target) {
+                    Thread.sleep(100);
+                }
+                long heap = usedHeap() - baseHeap;
+                long direct = usedDirect() - baseDirect;
+                System.out.printf("%10d %14d %14.1f %14.1f%n", target, heap / (target + DEVICES),
+                        heap / 1048576.0, direct / 1048576.0);
+            }
+        } finally {
+            server.stop();
+            commands.println("exit");
+            process.waitFor(10, TimeUnit.SECONDS);
+            process.destroyForcibly();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static String javaExecutable() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    /**
+     * 子进程：按父进程的命令把连接数增加到指定值，先连接 DEVICES 个设备
+     */
+    static final class Clients {
+        private final String host;
+        private final int port;
+        private final boolean tls;
+        private final SSLContext sslContext;
+        private final List<Socket> sockets = new ArrayList<>();
+
+        private Clients(String address, boolean tls) throws Exception {
+            int colon = address.lastIndexOf(':');
+            this.host = address.substring(0, colon);
+            this.port = Integer.parseInt(address.substring(colon + 1));
+            this.tls = tls;
+            this.sslContext = tls ? trustAll() : null;
+        }
+
+        static void run(String address, int devices, boolean tls) throws Exception {
+            Clients clients = new Clients(address, tls);
+            for (int d = 0; d < devices; d++) {
+                clients.open("/?role=server&deviceId=idle-" + d);
+            }
+            BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = commands.readLine()) != null && !line.equals("exit")) {
+                int target = Integer.parseInt(line.trim()) + devices;
+                try {
+                    while (clients.sockets.size() < target) {
+                        clients.open("/?deviceId=idle-" + (clients.sockets.size() % devices));
+                    }
+                    System.out.println("ok " + clients.sockets.size());
+                } catch (IOException e) {
+                    System.out.println("failed after " + clients.sockets.size() + ": " + e);
+                }
+            }
+            for (Socket socket : clients.sockets) {
+                socket.close();
+            }
+        }
+
+        private void open(String path) throws IOException {
+            // 每个本地地址的临时端口有限，依次换用 127.0.0.x
+            int index = sockets.size() / CONNECTIONS_PER_ADDRESS;
+            Socket socket = tls ? sslContext.getSocketFactory().createSocket() : new Socket();
+            socket.bind(new InetSocketAddress("127.0.0." + (1 + index), 0));
+            socket.connect(new InetSocketAddress(host, port), 5000);
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + path + " HTTP/1.1\r\nHost: " + host + "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            // 读到响应头结束即可，之后的 connected 消息留在套接字缓冲区中
+            InputStream in = socket.getInputStream();
+            int matched = 0;
+            while (matched < 4) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("Connection closed during handshake");
+                }
+                matched = (b == "\r\n\r\n".charAt(matched)) ? matched + 1 : (b == '\r' ? 1 : 0);
+            }
+            sockets.add(socket);
+        }
+
+        private static SSLContext trustAll() throws Exception {
+            TrustManager trustAll = new X509TrustManager() {
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+            };
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] {trustAll}, null);
+            return context;
+        }
+    }
+}
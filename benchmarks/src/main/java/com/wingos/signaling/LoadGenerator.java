@@ -0,0 +1,280 @@
+package com.wingos.signaling;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 信令服务器压测工具
+ *
+ * 模拟 N 个设备 × 每设备 M 个客户端，每个客户端循环执行一次完整协商：
+ * 发送 offer 和 K 个 candidate，设备回复 answer 和 K 个 candidate，收到 answer 后立即开始下一轮。
+ * 统计消息吞吐，以及 offer -> answer 往返和 candidate 单向的端到端延迟（p50/p99/p999）。
+ *
+ * 压测工具与服务器在同一JVM或同一台机器上运行时，candidate 中携带的 System.nanoTime 可直接比较。
+ *
+ * 用法：
+ * java -cp target/benchmarks.jar com.wingos.signaling.LoadGenerator \
+ *   --devices=10 --clients=10 --candidates=5 --duration-s=30 [--url=ws://host:port/]
+ * 未指定 --url 时在本进程内启动服务器（--port，默认10100）。
+ */
+public class LoadGenerator {
+    private static final String TOKEN_PREFIX = "bench:";
+
+    private int devices = 10;
+    private int clientsPerDevice = 10;
+    private int candidates = 5;
+    private int durationS = 30;
+    private int warmupS = 5;
+    private int port = 10100;
+    private long batchMs = 0;
+    private String url;
+
+    private final AtomicLong messages = new AtomicLong();
+    private final LatencyRecorder negotiationLatency = new LatencyRecorder();
+    private final LatencyRecorder candidateLatency = new LatencyRecorder();
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+            System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        }
+        LoadGenerator generator = new LoadGenerator();
+        for (String arg : args) {
+            generator.apply(arg);
+        }
+        generator.run();
+        System.exit(0);
+    }
+
+    private void apply(String arg) {
+        int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || eq < 0) {
+            return;
+        }
+        String value = arg.substring(eq + 1);
+        switch (arg.substring(2, eq)) {
+            case "devices":
+                devices = Integer.parseInt(value);
+                break;
+            case "clients":
+                clientsPerDevice = Integer.parseInt(value);
+                break;
+            case "candidates":
+                candidates = Integer.parseInt(value);
+                break;
+            case "duration-s":
+                durationS = Integer.parseInt(value);
+                break;
+            case "warmup-s":
+                warmupS = Integer.parseInt(value);
+                break;
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "batch-ms":
+                batchMs = Long.parseLong(value);
+                break;
+            case "url":
+                url = value;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void run() throws Exception {
+        SignalingServer server = null;
+        if (url == null) {
+            server = new SignalingServer(new SignalingConfig().setJmxEnabled(false));
+            server.start(port);
+            url = "ws://127.0.0.1:" + port + "/";
+            Thread.sleep(500);
+        }
+
+        List<SignalingWebSocketClient> connections = new ArrayList<>();
+        List<Client> clients = new ArrayList<>();
+        for (int d = 0; d < devices; d++) {
+            String deviceId = "load-" + d;
+            Device device = new Device();
+            device.connection = connect(url + "?role=server&deviceId=" + deviceId, device);
+            connections.add(device.connection);
+            for (int c = 0; c < clientsPerDevice; c++) {
+                Client client = new Client();
+                client.connection = connect(url + "?deviceId=" + deviceId, client);
+                connections.add(client.connection);
+                clients.add(client);
+            }
+        }
+        System.out.printf("Connected %d devices x %d clients to %s%n", devices, clientsPerDevice, url);
+
+        for (Client client : clients) {
+            client.negotiate();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupS));
+        long startMessages = messages.get();
+        long start = System.nanoTime();
+        recording = true;
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationS));
+        recording = false;
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long forwarded = messages.get() - startMessages;
+        running = false;
+
+        System.out.printf("Duration:     %.1f s%n", seconds);
+        System.out.printf("Throughput:   %.0f msg/s (%d messages received by peers)%n", forwarded / seconds, forwarded);
+        negotiationLatency.report("offer->answer");
+        candidateLatency.report("candidate");
+
+        for (SignalingWebSocketClient connection : connections) {
+            connection.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private SignalingWebSocketClient connect(String uri, SignalingWebSocketClient.MessageHandler handler) throws Exception {
+        SignalingWebSocketClient connection = new SignalingWebSocketClient(new URI(uri), handler);
+        if (batchMs > 0) {
+            connection.setCandidateBatching(batchMs, 20);
+        }
+        if (!connection.connectBlocking(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Failed to connect: " + uri);
+        }
+        return connection;
+    }
+
+    private static String candidateToken() {
+        return TOKEN_PREFIX + System.nanoTime() + " 1 udp 1677729535 203.0.113.7 50000 typ srflx";
+    }
+
+    private void onCandidate(String candidate) {
+        messages.incrementAndGet();
+        if (recording && candidate.startsWith(TOKEN_PREFIX)) {
+            int end = candidate.indexOf(' ');
+            long sentAt = Long.parseLong(candidate.substring(TOKEN_PREFIX.length(), end));
+            candidateLatency.record(System.nanoTime() - sentAt);
+        }
+    }
+
+    /**
+     * 设备：收到 offer 后回复 answer 和 candidate
+     */
+    private final class Device extends Handler {
+        @Override
+        public void onOffer(String sdp, String fromClientId) {
+            messages.incrementAndGet();
+            if (!running) {
+                return;
+            }
+            connection.sendAnswer(sdp, fromClientId);
+            for (int i = 0; i < candidates; i++) {
+                connection.sendIceCandidate(candidateToken(), "0", 0, fromClientId);
+            }
+        }
+
+        @Override
+        public void onIceCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId) {
+            onCandidate(candidate);
+        }
+    }
+
+    /**
+     * 客户端：循环发起协商，收到 answer 后开始下一轮
+     */
+    private final class Client extends Handler {
+        private volatile long offerSentAt;
+
+        void negotiate() {
+            if (!running) {
+                return;
+            }
+            offerSentAt = System.nanoTime();
+            connection.sendOffer(SampleMessages.SDP);
+            for (int i = 0; i < candidates; i++) {
+                connection.sendIceCandidate(candidateToken(), "0", 0, null);
+            }
+        }
+
+        @Override
+        public void onAnswer(String sdp) {
+            messages.incrementAndGet();
+            if (recording) {
+                negotiationLatency.record(System.nanoTime() - offerSentAt);
+            }
+            negotiate();
+        }
+
+        @Override
+        public void onIceCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId) {
+            onCandidate(candidate);
+        }
+    }
+
+    private abstract static class Handler implements SignalingWebSocketClient.MessageHandler {
+        SignalingWebSocketClient connection;
+
+        @Override
+        public void onConnected() {
+        }
+
+        @Override
+        public void onDisconnected() {
+        }
+
+        @Override
+        public void onOffer(String sdp, String fromClientId) {
+        }
+
+        @Override
+        public void onAnswer(String sdp) {
+        }
+
+        @Override
+        public void onIceCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId) {
+        }
+
+        @Override
+        public void onError(String error) {
+            System.err.println("Error: " + error);
+        }
+    }
+
+    /**
+     * 记录全部延迟样本，结束时排序计算分位数
+     */
+    private static final class LatencyRecorder {
+        private long[] samples = new long[1 << 16];
+        private int size;
+
+        synchronized void record(long nanos) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+        }
+
+        synchronized void report(String name) {
+            if (size == 0) {
+                System.out.printf("%-13s no samples%n", name + ":");
+                return;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            System.out.printf("%-13s n=%d p50=%.3f ms p99=%.3f ms p999=%.3f ms max=%.3f ms%n", name + ":", size,
+                    percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    sorted[size - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(sorted.length * quantile) - 1);
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
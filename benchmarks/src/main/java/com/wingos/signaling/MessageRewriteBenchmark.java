@@ -0,0 +1,82 @@
+package com.wingos.signaling;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息改写：扫描器（RawMessage）与完整JSON解析的对比
+ * 覆盖 offer 添加 fromClientId、answer/candidate 移除 toClientId、candidates 拆分
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageRewriteBenchmark {
+    private String offer;
+    private String answer;
+    private String candidate;
+    private String candidates;
+
+    @Setup
+    public void setup() {
+        offer = SampleMessages.offer();
+        answer = SampleMessages.answer("client-1");
+        candidate = SampleMessages.candidate("client-1", 0);
+        candidates = SampleMessages.candidates("client-1", 8);
+    }
+
+    @Benchmark
+    public String offerScan() {
+        return RawMessage.scan(offer).withFromClientId("client-1");
+    }
+
+    @Benchmark
+    public String offerJson() {
+        JSONObject json = new JSONObject(offer);
+        json.put("fromClientId", "client-1");
+        return json.toString();
+    }
+
+    @Benchmark
+    public String answerScan() {
+        return RawMessage.scan(answer).withoutToClientId();
+    }
+
+    @Benchmark
+    public String answerJson() {
+        JSONObject json = new JSONObject(answer);
+        json.remove("toClientId");
+        return json.toString();
+    }
+
+    @Benchmark
+    public String candidateScan() {
+        return RawMessage.scan(candidate).withoutToClientId();
+    }
+
+    @Benchmark
+    public String candidateJson() {
+        JSONObject json = new JSONObject(candidate);
+        json.remove("toClientId");
+        return json.toString();
+    }
+
+    @Benchmark
+    public List<String> candidatesDecode() {
+        return CandidateBatcher.decode(candidates, null);
+    }
+}
@@ -0,0 +1,188 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.HandshakeState;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.enums.ReadyState;
+import org.java_websocket.exceptions.InvalidHandshakeException;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.HandshakeImpl1Client;
+import org.java_websocket.protocols.IProtocol;
+
+import javax.net.ssl.SSLSession;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * 不连接网络的 WebSocket，用于在基准测试中直接驱动服务器
+ *
+ * send(String) 与 WebSocketImpl 一样按 Draft 分帧，帧只计数不写出。
+ */
+final class NullWebSocket implements WebSocket {
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 0);
+
+    private final Draft draft;
+    private final String resourceDescriptor;
+    private Object attachment;
+    private long frames;
+
+    NullWebSocket(String resourceDescriptor) {
+        this(new Draft_6455(), resourceDescriptor);
+    }
+
+    NullWebSocket(Draft draft, String resourceDescriptor) {
+        this.draft = draft;
+        this.resourceDescriptor = resourceDescriptor;
+    }
+
+    /**
+     * 已协商二进制协议的连接
+     */
+    static NullWebSocket binary(String resourceDescriptor) {
+        Draft draft = BinaryCodec.draft();
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.put("Sec-WebSocket-Version", "13");
+        handshake.put("Sec-WebSocket-Protocol", BinaryCodec.PROTOCOL);
+        try {
+            if (draft.acceptHandshakeAsServer(handshake) != HandshakeState.MATCHED) {
+                throw new IllegalStateException("Binary protocol not negotiated");
+            }
+        } catch (InvalidHandshakeException e) {
+            throw new IllegalStateException(e);
+        }
+        return new NullWebSocket(draft, resourceDescriptor);
+    }
+
+    long frames() {
+        return frames;
+    }
+
+    @Override
+    public void close(int code, String message) {
+    }
+
+    @Override
+    public void close(int code) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void closeConnection(int code, String message) {
+    }
+
+    @Override
+    public void send(String text) {
+        sendFrame(draft.createFrames(text, false));
+    }
+
+    @Override
+    public void send(ByteBuffer bytes) {
+        sendFrame(draft.createFrames(bytes, false));
+    }
+
+    @Override
+    public void send(byte[] bytes) {
+        send(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void sendFrame(Framedata framedata) {
+        frames++;
+    }
+
+    @Override
+    public void sendFrame(Collection<Framedata> frames) {
+        this.frames += frames.size();
+    }
+
+    @Override
+    public void sendPing() {
+    }
+
+    @Override
+    public void sendFragmentedFrame(Opcode op, ByteBuffer buffer, boolean fin) {
+        frames++;
+    }
+
+    @Override
+    public boolean hasBufferedData() {
+        return false;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public InetSocketAddress getLocalSocketAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public boolean isClosing() {
+        return false;
+    }
+
+    @Override
+    public boolean isFlushAndClose() {
+        return false;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public Draft getDraft() {
+        return draft;
+    }
+
+    @Override
+    public ReadyState getReadyState() {
+        return ReadyState.OPEN;
+    }
+
+    @Override
+    public String getResourceDescriptor() {
+        return resourceDescriptor;
+    }
+
+    @Override
+    public <T> void setAttachment(T attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getAttachment() {
+        return (T) attachment;
+    }
+
+    @Override
+    public boolean hasSSLSupport() {
+        return false;
+    }
+
+    @Override
+    public SSLSession getSSLSession() {
+        throw new IllegalArgumentException("This websocket does not use ssl");
+    }
+
+    @Override
+    public IProtocol getProtocol() {
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+package com.wingos.signaling;
+
+import org.java_websocket.handshake.HandshakeImpl1Client;
+import org.java_websocket.server.WebSocketServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息处理与路由：从 onMessage 到发送调用返回
+ *
+ * 连接使用 NullWebSocket，不经过网络，测量的是解析、查表、改写和分帧的开销。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutingBenchmark {
+    private static final String DEVICE_ID = "bench";
+
+    /** 设备上的客户端数，影响广播的扇出 */
+    @Param({"1", "10", "100"})
+    public int clients;
+
+    /** 所有连接使用的协议：json 或 binary */
+    @Param({"json", "binary"})
+    public String protocol;
+
+    private SignalingServer server;
+    private WebSocketServer webSocketServer;
+    private NullWebSocket device;
+    private NullWebSocket client;
+    private String offer;
+    private String answer;
+    private String clientCandidate;
+    private String deviceCandidate;
+    private String broadcastCandidate;
+    private boolean binary;
+    private ByteBuffer offerBinary;
+    private ByteBuffer answerBinary;
+    private ByteBuffer clientCandidateBinary;
+    private ByteBuffer deviceCandidateBinary;
+    private ByteBuffer broadcastCandidateBinary;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        server = new SignalingServer(new SignalingConfig().setJmxEnabled(false));
+        server.start(0);
+        webSocketServer = server.getWebSocketServer();
+        binary = "binary".equals(protocol);
+
+        // 连接ID按打开顺序分配：设备为 client-1，第一个客户端为 client-2
+        device = open("/?role=server&deviceId=" + DEVICE_ID);
+        List<NullWebSocket> connections = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            connections.add(open("/?deviceId=" + DEVICE_ID));
+        }
+        client = connections.get(0);
+        String clientId = "client-2";
+
+        offer = SampleMessages.offer();
+        answer = SampleMessages.answer(clientId);
+        clientCandidate = SampleMessages.candidate(null, 1);
+        deviceCandidate = SampleMessages.candidate(clientId, 1);
+        broadcastCandidate = SampleMessages.candidate(null, 1);
+
+        offerBinary = BinaryCodec.fromJson(offer);
+        answerBinary = BinaryCodec.fromJson(answer);
+        clientCandidateBinary = BinaryCodec.fromJson(clientCandidate);
+        deviceCandidateBinary = BinaryCodec.fromJson(deviceCandidate);
+        broadcastCandidateBinary = BinaryCodec.fromJson(broadcastCandidate);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    private NullWebSocket open(String resourceDescriptor) {
+        NullWebSocket conn = binary ? NullWebSocket.binary(resourceDescriptor) : new NullWebSocket(resourceDescriptor);
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.setResourceDescriptor(resourceDescriptor);
+        webSocketServer.onOpen(conn, handshake);
+        return conn;
+    }
+
+    private void send(NullWebSocket conn, String text, ByteBuffer bytes) {
+        if (binary) {
+            webSocketServer.onMessage(conn, bytes);
+        } else {
+            webSocketServer.onMessage(conn, text);
+        }
+    }
+
+    @Benchmark
+    public long offer() {
+        send(client, offer, offerBinary);
+        return device.frames();
+    }
+
+    @Benchmark
+    public long answer() {
+        send(device, answer, answerBinary);
+        return client.frames();
+    }
+
+    @Benchmark
+    public long candidateToDevice() {
+        send(client, clientCandidate, clientCandidateBinary);
+        return device.frames();
+    }
+
+    @Benchmark
+    public long candidateToClient() {
+        send(device, deviceCandidate, deviceCandidateBinary);
+        return client.frames();
+    }
+
+    @Benchmark
+    public long candidateBroadcast() {
+        send(device, broadcastCandidate, broadcastCandidateBinary);
+        return client.frames();
+    }
+}
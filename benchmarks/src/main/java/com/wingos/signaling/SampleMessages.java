@@ -0,0 +1,70 @@
+package com.wingos.signaling;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试和压测使用的信令消息
+ */
+final class SampleMessages {
+
+    /** 典型的浏览器offer SDP（音视频 + data channel，约2.5KB） */
+    static final String SDP;
+
+    static {
+        StringBuilder sb = new StringBuilder(3000);
+        sb.append("v=0\r\no=- 4611731400430051336 2 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\n")
+                .append("a=group:BUNDLE 0 1 2\r\na=extmap-allow-mixed\r\na=msid-semantic: WMS stream\r\n");
+        String[] media = {"audio 9 UDP/TLS/RTP/SAVPF 111 63 103", "video 9 UDP/TLS/RTP/SAVPF 96 97 98 99 100 101",
+                "application 9 UDP/DTLS/SCTP webrtc-datachannel"};
+        for (int i = 0; i < media.length; i++) {
+            sb.append("m=").append(media[i]).append("\r\nc=IN IP4 0.0.0.0\r\na=rtcp:9 IN IP4 0.0.0.0\r\n")
+                    .append("a=ice-ufrag:Xf3k\r\na=ice-pwd:q9Vd1tQ2nQ8bN7m4Lc0pYh6s\r\na=ice-options:trickle\r\n")
+                    .append("a=fingerprint:sha-256 6B:8B:5D:EA:59:04:20:23:29:C8:87:1C:CC:87:32:BE:DD:8C:")
+                    .append("66:A5:8E:50:55:BF:D4:50:A6:9B:37:D4:43:5B\r\na=setup:actpass\r\na=mid:").append(i).append("\r\n")
+                    .append("a=sendrecv\r\na=rtcp-mux\r\na=rtpmap:111 opus/48000/2\r\na=rtcp-fb:111 transport-cc\r\n")
+                    .append("a=fmtp:111 minptime=10;useinbandfec=1\r\na=rtpmap:96 VP8/90000\r\na=rtcp-fb:96 goog-remb\r\n")
+                    .append("a=rtcp-fb:96 ccm fir\r\na=rtcp-fb:96 nack\r\na=rtcp-fb:96 nack pli\r\n")
+                    .append("a=rtpmap:97 rtx/90000\r\na=fmtp:97 apt=96\r\na=ssrc-group:FID 2231627014 632943048\r\n");
+        }
+        SDP = sb.toString();
+    }
+
+    private SampleMessages() {
+    }
+
+    static String offer() {
+        return new JSONObject().put("type", "offer").put("sdp", SDP).toString();
+    }
+
+    static String answer(String toClientId) {
+        return new JSONObject().put("type", "answer").put("sdp", SDP).put("toClientId", toClientId).toString();
+    }
+
+    static String candidate(String toClientId, int index) {
+        JSONObject json = candidateJson(index);
+        if (toClientId != null) {
+            json.put("toClientId", toClientId);
+        }
+        return json.toString();
+    }
+
+    static String candidates(String toClientId, int count) {
+        List<String> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(candidateJson(i).toString());
+        }
+        return CandidateBatcher.encode(items, toClientId);
+    }
+
+    private static JSONObject candidateJson(int index) {
+        return new JSONObject()
+                .put("type", "candidate")
+                .put("candidate", "candidate:842163049 1 udp 1677729535 203.0.113." + (index % 250)
+                        + " 5" + index % 10 + "000 typ srflx raddr 0.0.0.0 rport 0 generation 0 ufrag Xf3k network-cost 999")
+                .put("sdpMid", "0")
+                .put("sdpMLineIndex", 0);
+    }
+}
@@ -0,0 +1,127 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+
+import java.net.InetAddress;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 连接准入控制
+ *
+ * 在 WebSocket 握手阶段（onWebsocketHandshakeReceivedAsServer）检查总连接数和单个IP的连接数，
+ * 超限的连接在分配会话、发送队列之前就被拒绝，过载时只付出一次握手解析的代价。
+ *
+ * 准入时占用名额并按连接记录，连接关闭时释放（无论是否已建立会话，重复释放无效）；
+ * 总数用CAS计数，单个IP的计数在为0时移除。
+ */
+final class AdmissionControl {
+
+    /**
+     * 拒绝原因
+     */
+    enum Rejection {
+        /** 总连接数已达上限 */
+        MAX_CONNECTIONS,
+        /** 该IP的连接数已达上限 */
+        MAX_CONNECTIONS_PER_IP;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final int maxConnections;
+    private final int maxConnectionsPerIp;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Map<InetAddress, Integer> connectionsPerIp = new ConcurrentHashMap<>();
+    private final Map<WebSocket, Admitted> admitted = new ConcurrentHashMap<>();
+
+    /**
+     * 连接占用的名额
+     */
+    private static final class Admitted {
+        /** 对端地址，未知时为null */
+        final InetAddress address;
+
+        Admitted(InetAddress address) {
+            this.address = address;
+        }
+    }
+
+    /**
+     * @param maxConnections 总连接数上限，0表示不限
+     * @param maxConnectionsPerIp 单个IP的连接数上限，0表示不限
+     */
+    AdmissionControl(int maxConnections, int maxConnectionsPerIp) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+    }
+
+    /**
+     * 尝试为连接占用一个名额
+     * @param conn 连接，关闭时以它释放名额
+     * @param address 对端地址，未知时为null（只检查总数）
+     * @return 准入时返回null，否则返回拒绝原因
+     */
+    Rejection tryAdmit(WebSocket conn, InetAddress address) {
+        if (!reserveTotal()) {
+            return Rejection.MAX_CONNECTIONS;
+        }
+        if (address != null && maxConnectionsPerIp > 0) {
+            boolean[] admitted = new boolean[1];
+            connectionsPerIp.compute(address, (k, count) -> {
+                int current = count != null ? count : 0;
+                if (current >= maxConnectionsPerIp) {
+                    return count;
+                }
+                admitted[0] = true;
+                return current + 1;
+            });
+            if (!admitted[0]) {
+                connections.decrementAndGet();
+                return Rejection.MAX_CONNECTIONS_PER_IP;
+            }
+        }
+        admitted.put(conn, new Admitted(address));
+        return null;
+    }
+
+    private boolean reserveTotal() {
+        while (true) {
+            int current = connections.get();
+            if (maxConnections > 0 && current >= maxConnections) {
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放连接准入时占用的名额，连接未占用名额或已释放时不做任何事
+     */
+    void release(WebSocket conn) {
+        Admitted slot = admitted.remove(conn);
+        if (slot == null) {
+            return;
+        }
+        connections.decrementAndGet();
+        if (slot.address != null && maxConnectionsPerIp > 0) {
+            connectionsPerIp.computeIfPresent(slot.address, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    int maxConnections() {
+        return maxConnections;
+    }
+
+    int maxConnectionsPerIp() {
+        return maxConnectionsPerIp;
+    }
+}
@@ -0,0 +1,420 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 二进制信令协议
+ *
+ * 通过 Sec-WebSocket-Protocol 协商（PROTOCOL），未协商的连接仍使用JSON文本。
+ * 协商后 offer/answer/candidate/candidates 以二进制帧发送，connected/error 等控制消息仍为JSON文本。
+ *
+ * 帧格式（大端）：
+ * <pre>
+ * u8  版本（VERSION）
+ * u8  类型（OFFER/ANSWER/CANDIDATE/CANDIDATES）
+ * u16 toClientId长度 + UTF-8（长度0表示没有）
+ * u16 fromClientId长度 + UTF-8（长度0表示没有）
+ * 消息体：
+ *   offer/answer：SDP UTF-8，直到帧尾
+ *   candidate：  u16 sdpMLineIndex，u16 sdpMid长度 + UTF-8，candidate UTF-8 直到帧尾
+ *   candidates： u16 数量，每项 u16 sdpMLineIndex，u16 sdpMid长度 + UTF-8，
+ *               u16 fromClientId长度 + UTF-8（长度0表示与头部相同），u16 candidate长度 + UTF-8
+ * </pre>
+ * 服务器合并的 candidates 可能来自不同的客户端（按接收方合并、离线暂存的补发、发送队列积压时的合并），
+ * 因此每项带有自己的来源。
+ * 路由只需读取固定位置的头部，转发时改写ID、原样复制消息体，不做JSON处理。
+ */
+final class BinaryCodec {
+    static final String PROTOCOL = "signaling.v1.binary";
+    static final byte VERSION = 1;
+
+    static final byte OFFER = 1;
+    static final byte ANSWER = 2;
+    static final byte CANDIDATE = 3;
+    static final byte CANDIDATES = 4;
+
+    private static final int MAX_U16 = 0xFFFF;
+    private static final byte[] EMPTY = new byte[0];
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * 帧头部
+     */
+    static final class Header {
+        final byte type;
+        final String toClientId;
+        final String fromClientId;
+        /** 消息体在缓冲区中的绝对起始位置 */
+        final int bodyStart;
+
+        Header(byte type, String toClientId, String fromClientId, int bodyStart) {
+            this.type = type;
+            this.toClientId = toClientId;
+            this.fromClientId = fromClientId;
+            this.bodyStart = bodyStart;
+        }
+
+        String typeName() {
+            return BinaryCodec.typeName(type);
+        }
+    }
+
+    /**
+     * 解码后的消息内容
+     */
+    interface Sink {
+        void onSdp(byte type, String sdp);
+
+        /**
+         * @param fromClientId 该 candidate 的来源，candidates 中未单独指定时为头部的 fromClientId
+         */
+        void onCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId);
+    }
+
+    /**
+     * 支持二进制协议的Draft：优先协商 PROTOCOL，未请求时接受任意（即不使用子协议）
+     */
+    static Draft_6455 draft() {
+        return draft(Collections.<IExtension>emptyList());
+    }
+
+    static Draft_6455 draft(List<IExtension> extensions) {
+        return new Draft_6455(extensions, Arrays.<IProtocol>asList(new Protocol(PROTOCOL), new Protocol("")));
+    }
+
+    static boolean isBinary(Draft draft) {
+        if (!(draft instanceof Draft_6455)) {
+            return false;
+        }
+        IProtocol protocol = ((Draft_6455) draft).getProtocol();
+        return protocol != null && PROTOCOL.equals(protocol.getProvidedProtocol());
+    }
+
+    static boolean isBinary(WebSocket conn) {
+        return isBinary(conn.getDraft());
+    }
+
+    static String typeName(byte type) {
+        switch (type) {
+            case OFFER:
+                return "offer";
+            case ANSWER:
+                return "answer";
+            case CANDIDATE:
+                return "candidate";
+            case CANDIDATES:
+                return CandidateBatcher.BATCH_TYPE;
+            default:
+                return "";
+        }
+    }
+
+    // ---------- 解码 ----------
+
+    /**
+     * 读取帧头部
+     * @return 格式不正确时返回null
+     */
+    static Header scan(ByteBuffer message) {
+        int pos = message.position();
+        int limit = message.limit();
+        if (limit - pos < 6 || message.get(pos) != VERSION) {
+            return null;
+        }
+        byte type = message.get(pos + 1);
+        if (type < OFFER || type > CANDIDATES) {
+            return null;
+        }
+
+        pos += 2;
+        int toLength = readU16(message, pos);
+        pos += 2;
+        if (pos + toLength + 2 > limit) {
+            return null;
+        }
+        String toClientId = toLength > 0 ? readString(message, pos, toLength) : null;
+        pos += toLength;
+
+        int fromLength = readU16(message, pos);
+        pos += 2;
+        if (pos + fromLength > limit) {
+            return null;
+        }
+        String fromClientId = fromLength > 0 ? readString(message, pos, fromLength) : null;
+        pos += fromLength;
+
+        return new Header(type, toClientId, fromClientId, pos);
+    }
+
+    /**
+     * 解码消息体
+     * @throws IllegalArgumentException 消息体格式不正确
+     */
+    static void decode(ByteBuffer message, Header header, Sink sink) {
+        int pos = header.bodyStart;
+        int limit = message.limit();
+        switch (header.type) {
+            case OFFER:
+            case ANSWER:
+                sink.onSdp(header.type, readString(message, pos, limit - pos));
+                break;
+
+            case CANDIDATE: {
+                check(pos + 4 <= limit);
+                int index = readU16(message, pos);
+                int midLength = readU16(message, pos + 2);
+                pos += 4;
+                check(pos + midLength <= limit);
+                String sdpMid = readString(message, pos, midLength);
+                pos += midLength;
+                sink.onCandidate(readString(message, pos, limit - pos), sdpMid, index, header.fromClientId);
+                break;
+            }
+
+            case CANDIDATES: {
+                check(pos + 2 <= limit);
+                int count = readU16(message, pos);
+                pos += 2;
+                for (int i = 0; i < count; i++) {
+                    check(pos + 4 <= limit);
+                    int index = readU16(message, pos);
+                    int midLength = readU16(message, pos + 2);
+                    pos += 4;
+                    check(pos + midLength + 2 <= limit);
+                    String sdpMid = readString(message, pos, midLength);
+                    pos += midLength;
+                    int fromLength = readU16(message, pos);
+                    pos += 2;
+                    check(pos + fromLength + 2 <= limit);
+                    String fromClientId = fromLength > 0 ? readString(message, pos, fromLength) : header.fromClientId;
+                    pos += fromLength;
+                    int candidateLength = readU16(message, pos);
+                    pos += 2;
+                    check(pos + candidateLength <= limit);
+                    sink.onCandidate(readString(message, pos, candidateLength), sdpMid, index, fromClientId);
+                    pos += candidateLength;
+                }
+                break;
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown binary message type: " + header.type);
+        }
+    }
+
+    /**
+     * 转换为等价的JSON文本，用于发送给未协商二进制协议的接收方或进入文本处理流程
+     */
+    static String toJson(ByteBuffer message, Header header) {
+        JSONObject json = new JSONObject();
+        json.put("type", header.typeName());
+        if (header.toClientId != null) {
+            json.put("toClientId", header.toClientId);
+        }
+        if (header.fromClientId != null) {
+            json.put("fromClientId", header.fromClientId);
+        }
+
+        JSONArray candidates = header.type == CANDIDATES ? new JSONArray() : null;
+        decode(message, header, new Sink() {
+            @Override
+            public void onSdp(byte type, String sdp) {
+                json.put("sdp", sdp);
+            }
+
+            @Override
+            public void onCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId) {
+                JSONObject target = json;
+                if (candidates != null) {
+                    target = new JSONObject().put("type", "candidate");
+                    if (fromClientId != null) {
+                        target.put("fromClientId", fromClientId);
+                    }
+                    candidates.put(target);
+                }
+                target.put("candidate", candidate);
+                target.put("sdpMid", sdpMid);
+                target.put("sdpMLineIndex", sdpMLineIndex);
+            }
+        });
+        if (candidates != null) {
+            json.put(CandidateBatcher.BATCH_TYPE, candidates);
+        }
+        return json.toString();
+    }
+
+    // ---------- 编码 ----------
+
+    static ByteBuffer encodeSdp(byte type, String toClientId, String fromClientId, String sdp) {
+        byte[] body = utf8(sdp);
+        ByteBuffer buffer = header(type, toClientId, fromClientId, body.length);
+        buffer.put(body);
+        buffer.flip();
+        return buffer;
+    }
+
+    static ByteBuffer encodeCandidate(String toClientId, String fromClientId,
+                                      String candidate, String sdpMid, int sdpMLineIndex) {
+        byte[] mid = utf8(sdpMid != null ? sdpMid : "");
+        byte[] body = utf8(candidate);
+        ByteBuffer buffer = header(CANDIDATE, toClientId, fromClientId, 4 + mid.length + body.length);
+        putU16(buffer, sdpMLineIndex);
+        putU16(buffer, mid.length);
+        buffer.put(mid);
+        buffer.put(body);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 改写头部的ID，消息体原样复制
+     * @param toClientId 新的目标ID，null表示移除
+     * @param fromClientId 新的来源ID，null表示移除
+     */
+    static ByteBuffer rewrite(ByteBuffer message, Header header, String toClientId, String fromClientId) {
+        return rewrite(message, header, toClientId != null ? utf8(toClientId) : EMPTY,
+                fromClientId != null ? utf8(fromClientId) : EMPTY);
+    }
+
+    /**
+     * 改写头部的ID，ID已编码为UTF-8（null表示移除）
+     */
+    static ByteBuffer rewrite(ByteBuffer message, Header header, byte[] toClientId, byte[] fromClientId) {
+        int bodyLength = message.limit() - header.bodyStart;
+        ByteBuffer buffer = header(header.type, toClientId != null ? toClientId : EMPTY,
+                fromClientId != null ? fromClientId : EMPTY, bodyLength);
+        ByteBuffer body = message.duplicate();
+        body.position(header.bodyStart);
+        buffer.put(body);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 把JSON文本信令消息转换为二进制帧
+     * @return 不是 offer/answer/candidate/candidates 时返回null（按文本发送）
+     */
+    static ByteBuffer fromJson(String text) {
+        // 服务器发出的消息都是标准JSON，先用扫描器判断类型，控制消息不做完整解析
+        RawMessage raw = RawMessage.scan(text);
+        String type = raw != null && raw.type != null ? raw.type : "";
+        switch (type) {
+            case "offer":
+            case "answer":
+            case "candidate":
+            case CandidateBatcher.BATCH_TYPE:
+                break;
+            default:
+                return null;
+        }
+
+        JSONObject json = new JSONObject(text);
+        String toClientId = json.optString("toClientId", null);
+        String fromClientId = json.optString("fromClientId", null);
+        switch (type) {
+            case "offer":
+                return encodeSdp(OFFER, toClientId, fromClientId, json.getString("sdp"));
+            case "answer":
+                return encodeSdp(ANSWER, toClientId, fromClientId, json.getString("sdp"));
+            case "candidate":
+                return encodeCandidate(toClientId, fromClientId, json.getString("candidate"),
+                        json.optString("sdpMid", ""), json.optInt("sdpMLineIndex", 0));
+            default:
+                return encodeCandidates(toClientId, fromClientId, json.getJSONArray(CandidateBatcher.BATCH_TYPE));
+        }
+    }
+
+    private static ByteBuffer encodeCandidates(String toClientId, String fromClientId, JSONArray items) {
+        check(items.length() <= MAX_U16);
+        byte[][] mids = new byte[items.length()][];
+        byte[][] froms = new byte[items.length()][];
+        byte[][] bodies = new byte[items.length()][];
+        int length = 2;
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            String from = item.optString("fromClientId", null);
+            mids[i] = utf8(item.optString("sdpMid", ""));
+            froms[i] = from == null || from.equals(fromClientId) ? EMPTY : utf8(from);
+            bodies[i] = utf8(item.getString("candidate"));
+            check(froms[i].length <= MAX_U16 && bodies[i].length <= MAX_U16);
+            length += 8 + mids[i].length + froms[i].length + bodies[i].length;
+        }
+
+        ByteBuffer buffer = header(CANDIDATES, toClientId, fromClientId, length);
+        putU16(buffer, items.length());
+        for (int i = 0; i < items.length(); i++) {
+            putU16(buffer, items.getJSONObject(i).optInt("sdpMLineIndex", 0));
+            putU16(buffer, mids[i].length);
+            buffer.put(mids[i]);
+            putU16(buffer, froms[i].length);
+            buffer.put(froms[i]);
+            putU16(buffer, bodies[i].length);
+            buffer.put(bodies[i]);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer header(byte type, String toClientId, String fromClientId, int bodyLength) {
+        return header(type, toClientId != null ? utf8(toClientId) : EMPTY,
+                fromClientId != null ? utf8(fromClientId) : EMPTY, bodyLength);
+    }
+
+    private static ByteBuffer header(byte type, byte[] to, byte[] from, int bodyLength) {
+        check(to.length <= MAX_U16 && from.length <= MAX_U16);
+
+        ByteBuffer buffer = ByteBuffer.allocate(6 + to.length + from.length + bodyLength);
+        buffer.put(VERSION);
+        buffer.put(type);
+        putU16(buffer, to.length);
+        buffer.put(to);
+        putU16(buffer, from.length);
+        buffer.put(from);
+        return buffer;
+    }
+
+    private static void putU16(ByteBuffer buffer, int value) {
+        check(value >= 0 && value <= MAX_U16);
+        buffer.putShort((short) value);
+    }
+
+    private static int readU16(ByteBuffer buffer, int pos) {
+        return buffer.getShort(pos) & MAX_U16;
+    }
+
+    private static String readString(ByteBuffer buffer, int pos, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + pos, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(pos);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void check(boolean condition) {
+        if (!condition) {
+            throw new IllegalArgumentException("Malformed binary signaling message");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.wingos.signaling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端回调分发器
+ *
+ * 把 MessageHandler 回调从 WebSocket 读线程移到单独的线程上执行，读线程不会被
+ * 创建 PeerConnection、设置远端描述等耗时操作阻塞（包括 pong 的处理）。
+ *
+ * 每个连接一个有界队列，同一时刻最多一个线程在执行队列中的回调（单消费者），
+ * 因此 offer 与随后的 candidate 的回调顺序与收到的顺序一致。执行回调的线程由
+ * runner 提供：Java 21 及以上默认使用虚拟线程，否则使用共享的守护线程池。
+ *
+ * 队列满时阻塞读线程，把背压传递到TCP，而不是丢弃信令消息。
+ */
+final class CallbackDispatcher implements Executor {
+    private static final Logger logger = LoggerFactory.getLogger(CallbackDispatcher.class);
+
+    static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private static volatile Executor defaultRunner;
+
+    private final BlockingQueue<Runnable> queue;
+    private final Executor runner;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final LongAdder queueFull = new LongAdder();
+
+    CallbackDispatcher(Executor runner, int queueSize) {
+        this.runner = runner;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * 默认的 runner：虚拟线程（Java 21+）或共享的守护线程池
+     */
+    static Executor defaultRunner() {
+        Executor runner = defaultRunner;
+        if (runner == null) {
+            synchronized (CallbackDispatcher.class) {
+                runner = defaultRunner;
+                if (runner == null) {
+                    runner = createDefaultRunner();
+                    defaultRunner = runner;
+                }
+            }
+        }
+        return runner;
+    }
+
+    private static Executor createDefaultRunner() {
+        try {
+            // 编译目标为 Java 11，通过反射使用虚拟线程
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.debug("Client callbacks run on virtual threads");
+            return (ExecutorService) executor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "signaling-client-callback");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!queue.offer(task)) {
+            queueFull.increment();
+            logger.warn("Callback queue full ({} queued), blocking reader until handlers catch up", queue.size());
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (draining.compareAndSet(false, true)) {
+            runner.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task = queue.poll();
+            if (task == null) {
+                draining.set(false);
+                // 释放后又有新任务入队且没有其他线程接手时，继续执行
+                if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Message handler failed", e);
+            }
+        }
+    }
+
+    /**
+     * 等待执行的回调数
+     */
+    int queuedCallbacks() {
+        return queue.size();
+    }
+
+    /**
+     * 队列已满、读线程被阻塞的次数
+     */
+    long queueFullCount() {
+        return queueFull.sum();
+    }
+}
@@ -0,0 +1,176 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * ICE candidate 合并发送
+ *
+ * Trickle ICE 会在几毫秒内产生一串很小的 candidate 消息，这里按接收方缓存，
+ * 在时间窗口结束或达到数量上限时合并为一条 candidates 消息发出：
+ * <pre>
+ * {"type":"candidates","candidates":[{"type":"candidate",...},{"type":"candidate",...}]}
+ * </pre>
+ * 数组中的每一项就是原本要单独发送的 candidate 消息（已包含 fromClientId），
+ * 接收方逐项处理即可；批次中只有一项时直接按单条 candidate 消息发送。
+ *
+ * 只对声明支持 candidates 的连接使用，调用方负责判断。
+ */
+final class CandidateBatcher {
+    static final String BATCH_TYPE = "candidates";
+    static final String FEATURE = "candidates";
+
+    private final ScheduledExecutorService scheduler;
+    private final BiConsumer<WebSocket, List<String>> sender;
+    private final long windowMs;
+    private final int maxCount;
+    private final Map<WebSocket, Batch> batches = new ConcurrentHashMap<>();
+
+    private static final class Batch {
+        final WebSocket recipient;
+        final List<String> items = new ArrayList<>();
+        boolean closed;
+
+        Batch(WebSocket recipient) {
+            this.recipient = recipient;
+        }
+    }
+
+    /**
+     * @param sender 发出一个批次：接收方 + 批次中的 candidate 消息
+     */
+    CandidateBatcher(ScheduledExecutorService scheduler, BiConsumer<WebSocket, List<String>> sender,
+                     long windowMs, int maxCount) {
+        this.scheduler = scheduler;
+        this.sender = sender;
+        this.windowMs = windowMs;
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * 加入一条待发送的 candidate 消息
+     */
+    void add(WebSocket recipient, String candidateMessage) {
+        while (true) {
+            Batch batch = batches.computeIfAbsent(recipient, Batch::new);
+            synchronized (batch) {
+                if (batch.closed) {
+                    // 批次刚被发出，重新创建
+                    continue;
+                }
+                batch.items.add(candidateMessage);
+                if (batch.items.size() >= maxCount) {
+                    flushLocked(batch);
+                } else if (batch.items.size() == 1) {
+                    scheduler.schedule(() -> flush(batch), windowMs, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 立即发出接收方的待发送批次
+     * 向同一接收方发送其它消息前调用，保证消息顺序
+     */
+    void flush(WebSocket recipient) {
+        Batch batch = batches.get(recipient);
+        if (batch != null) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * 丢弃接收方的待发送批次（连接关闭时调用）
+     */
+    void discard(WebSocket recipient) {
+        Batch batch = batches.remove(recipient);
+        if (batch != null) {
+            synchronized (batch) {
+                batch.closed = true;
+                batch.items.clear();
+            }
+        }
+    }
+
+    private void flush(Batch batch) {
+        synchronized (batch) {
+            if (!batch.closed) {
+                flushLocked(batch);
+            }
+        }
+    }
+
+    private void flushLocked(Batch batch) {
+        batch.closed = true;
+        try {
+            if (batch.recipient.isOpen()) {
+                sender.accept(batch.recipient, batch.items);
+            }
+        } finally {
+            // 发送完成后才移除：发送期间调用 flush(recipient) 的线程会在批次锁上等待，不会抢先发出后续消息
+            batches.remove(batch.recipient, batch);
+        }
+    }
+
+    /**
+     * 编码 candidates 消息
+     * @param items 每一项都是完整的 candidate 消息JSON文本
+     * @param toClientId 目标客户端ID，为null时不写入
+     */
+    static String encode(List<String> items, String toClientId) {
+        int length = 64;
+        for (String item : items) {
+            length += item.length() + 1;
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        sb.append("{\"type\":\"").append(BATCH_TYPE).append('"');
+        if (toClientId != null) {
+            sb.append(",\"toClientId\":").append(JSONObject.quote(toClientId));
+        }
+        sb.append(",\"candidates\":[");
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(items.get(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * 拆分 candidates 消息为单条 candidate 消息，移除 toClientId 并重写 fromClientId
+     * @param fromClientId 来源客户端ID，为null时移除
+     * @return 消息中没有 candidates 数组时返回null
+     */
+    static List<String> decode(String text, String fromClientId) {
+        JSONArray array = new JSONObject(text).optJSONArray(BATCH_TYPE);
+        if (array == null) {
+            return null;
+        }
+
+        List<String> items = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject item = array.getJSONObject(i);
+            item.put("type", "candidate");
+            item.remove("toClientId");
+            if (fromClientId == null) {
+                item.remove("fromClientId");
+            } else {
+                item.put("fromClientId", fromClientId);
+            }
+            items.add(item.toString());
+        }
+        return items;
+    }
+}
@@ -0,0 +1,55 @@
+package com.wingos.signaling;
+
+/**
+ * 集群节点之间转发的信令消息
+ *
+ * payload 是已经改写好的信令消息文本（已添加 fromClientId / 已移除 toClientId），
+ * 接收节点只需要交付给本地连接。
+ */
+public final class ClusterMessage {
+
+    public enum Kind {
+        /** 客户端 -> 设备：deviceId 为目标设备，clientId 为来源客户端 */
+        TO_DEVICE,
+        /** 设备 -> 客户端：deviceId 为来源设备，clientId 为目标客户端 */
+        TO_CLIENT,
+        /** 设备 -> 接收节点上该设备的所有客户端 */
+        BROADCAST,
+        /** 设备在发送节点上线，接收节点补发暂存的消息 */
+        DEVICE_ONLINE
+    }
+
+    private final Kind kind;
+    private final String deviceId;
+    private final String clientId;
+    private final String payload;
+    private final boolean candidate;
+
+    public ClusterMessage(Kind kind, String deviceId, String clientId, String payload, boolean candidate) {
+        this.kind = kind;
+        this.deviceId = deviceId;
+        this.clientId = clientId;
+        this.payload = payload;
+        this.candidate = candidate;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public boolean isCandidate() {
+        return candidate;
+    }
+}
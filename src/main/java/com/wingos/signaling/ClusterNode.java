@@ -0,0 +1,31 @@
+package com.wingos.signaling;
+
+/**
+ * 集群模式配置
+ *
+ * 多个 SignalingServer 节点共享同一个 LocationDirectory，并通过 ClusterTransport 互相转发消息，
+ * 客户端和它的目标设备可以连接在不同节点上。
+ */
+public final class ClusterNode {
+    private final String nodeId;
+    private final ClusterTransport transport;
+    private final LocationDirectory directory;
+
+    public ClusterNode(String nodeId, ClusterTransport transport, LocationDirectory directory) {
+        this.nodeId = nodeId;
+        this.transport = transport;
+        this.directory = directory;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public ClusterTransport getTransport() {
+        return transport;
+    }
+
+    public LocationDirectory getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,34 @@
+package com.wingos.signaling;
+
+/**
+ * 集群节点间的消息传输
+ *
+ * 实现需要保证同一对节点之间的消息按发送顺序到达。
+ */
+public interface ClusterTransport {
+
+    interface Receiver {
+        void onClusterMessage(String fromNodeId, ClusterMessage message);
+    }
+
+    /**
+     * 节点加入集群，之后发往该节点的消息交给 receiver
+     */
+    void join(String nodeId, Receiver receiver);
+
+    /**
+     * 节点离开集群
+     */
+    void leave(String nodeId);
+
+    /**
+     * 发送消息给指定节点
+     * @return 目标节点不可达时返回false
+     */
+    boolean send(String fromNodeId, String toNodeId, ClusterMessage message);
+
+    /**
+     * 发送消息给除自己以外的所有节点
+     */
+    void broadcast(String fromNodeId, ClusterMessage message);
+}
@@ -0,0 +1,96 @@
+package com.wingos.signaling;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 设备注册表
+ *
+ * 功能：
+ * 1. deviceId -> 设备会话，支持多个设备（服务端）同时在线
+ * 2. deviceId -> 绑定到该设备的客户端会话，用于定向广播
+ *
+ * 所有操作都基于ConcurrentHashMap的单键原子操作，不使用全局锁：
+ * - 注册/替换：put 返回被替换的旧会话，由调用方关闭
+ * - 注销：remove(key, value)，旧连接的关闭回调不会误删新连接
+ */
+final class DeviceRegistry {
+    /** 未指定deviceId时使用的设备ID，兼容单设备部署 */
+    static final String DEFAULT_DEVICE_ID = "default";
+
+    private final Map<String, Session> devices = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Session>> deviceClients = new ConcurrentHashMap<>();
+
+    /**
+     * 注册设备会话
+     * @return 被替换的旧会话，没有则返回null
+     */
+    Session register(String deviceId, Session session) {
+        return devices.put(deviceId, session);
+    }
+
+    /**
+     * 注销设备会话，仅当当前注册的仍是该会话时才移除
+     */
+    boolean unregister(String deviceId, Session session) {
+        return devices.remove(deviceId, session);
+    }
+
+    /**
+     * 查找设备会话，设备不存在或已断开时返回null
+     */
+    Session lookup(String deviceId) {
+        Session session = devices.get(deviceId);
+        if (session == null || !session.isOpen()) {
+            return null;
+        }
+        return session;
+    }
+
+    void bindClient(String deviceId, Session client) {
+        deviceClients.compute(deviceId, (k, sessions) -> {
+            if (sessions == null) {
+                sessions = new ConcurrentHashMap<>();
+            }
+            sessions.put(client.id, client);
+            return sessions;
+        });
+    }
+
+    void unbindClient(String deviceId, Session client) {
+        deviceClients.computeIfPresent(deviceId, (k, sessions) -> {
+            sessions.remove(client.id, client);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    /**
+     * 获取绑定到设备的客户端ID（弱一致视图）
+     */
+    Set<String> clientsOf(String deviceId) {
+        Map<String, Session> sessions = deviceClients.get(deviceId);
+        return sessions != null ? sessions.keySet() : Collections.emptySet();
+    }
+
+    /**
+     * 获取绑定到设备的客户端会话（弱一致视图），广播时不再按ID逐个查找
+     */
+    Collection<Session> clientSessionsOf(String deviceId) {
+        Map<String, Session> sessions = deviceClients.get(deviceId);
+        return sessions != null ? sessions.values() : Collections.emptyList();
+    }
+
+    /**
+     * 所有设备会话（弱一致视图）
+     */
+    Collection<Session> sessions() {
+        return devices.values();
+    }
+
+    int deviceCount() {
+        return devices.size();
+    }
+}
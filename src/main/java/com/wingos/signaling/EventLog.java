@@ -0,0 +1,275 @@
+package com.wingos.signaling;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步信令事件日志
+ *
+ * 转发线程只把事件的几个字段写进预分配的环形缓冲区（一次CAS，不格式化、不做I/O），
+ * 由后台线程格式化为JSON行后写入日志文件或 slf4j 的 com.wingos.signaling.events 日志。
+ * 缓冲区满时直接丢弃事件并计数，转发线程从不因写日志阻塞。
+ *
+ * 每种事件可以单独设置采样率（0~1），detail（如无法解析的原始消息）在写出时截断，
+ * 不会把完整的SDP写进日志。
+ */
+final class EventLog {
+    private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+    private static final Logger eventLogger = LoggerFactory.getLogger("com.wingos.signaling.events");
+
+    /** 缓冲区为空时写线程的等待时间 */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * 事件类型
+     */
+    enum Type {
+        /** 转发的 offer */
+        OFFER(1),
+        /** 转发的 answer */
+        ANSWER(1),
+        /** 转发的 candidate / candidates，默认不记录 */
+        CANDIDATE(0),
+        /** 设备离线时暂存的消息 */
+        HELD(1),
+        /** 找不到接收方而丢弃的消息 */
+        DROPPED(1),
+        /** 无法解析的消息 */
+        INVALID(1);
+
+        final String label = name().toLowerCase(Locale.ROOT);
+        final double defaultSampling;
+
+        Type(double defaultSampling) {
+            this.defaultSampling = defaultSampling;
+        }
+
+        static Type of(String label) {
+            return valueOf(label.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * 缓冲区中的一个槽位，sequence 表示槽位状态：等于写入位置时可写，等于写入位置+1时可读
+     */
+    private static final class Slot {
+        volatile long sequence;
+        long timeMillis;
+        Type type;
+        String from;
+        String to;
+        long size;
+        String detail;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final double[] sampling;
+    private final int maxDetailChars;
+    private final Writer writer; // 为null时写入 slf4j
+    private final Runnable onDrop;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head; // 只由写线程修改
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity 缓冲区的事件数，向上取整为2的幂
+     * @param sampling 按 Type 下标的采样率
+     * @param maxDetailChars detail 的最大长度
+     * @param writer 日志文件，为null时写入 slf4j
+     * @param onDrop 缓冲区已满丢弃事件时调用，用于统计
+     */
+    EventLog(int capacity, double[] sampling, int maxDetailChars, Writer writer, Runnable onDrop) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+        this.mask = size - 1;
+        this.sampling = sampling;
+        this.maxDetailChars = maxDetailChars;
+        this.writer = writer;
+        this.onDrop = onDrop;
+        this.writerThread = new Thread(this::drainLoop, "signaling-event-log");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 按配置创建事件日志
+     * @return 配置为 off 时返回null
+     */
+    static EventLog create(SignalingConfig config, Runnable onDrop) throws IOException {
+        String target = config.getEventLog();
+        if (SignalingConfig.EVENT_LOG_OFF.equals(target)) {
+            return null;
+        }
+        Writer writer = SignalingConfig.EVENT_LOG_SLF4J.equals(target) ? null : new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(target, true), StandardCharsets.UTF_8));
+        double[] sampling = new double[Type.values().length];
+        for (Type type : Type.values()) {
+            sampling[type.ordinal()] = config.getEventSampling(type);
+        }
+        return new EventLog(config.getEventLogBufferSize(), sampling, config.getEventLogMaxDetail(), writer, onDrop);
+    }
+
+    /**
+     * 记录一个事件，未被采样或缓冲区已满时直接返回
+     * @param from 发送方的连接ID
+     * @param to 接收方（设备ID或客户端ID），可以为null
+     * @param size 消息长度
+     * @param detail 附加信息，写出时截断，可以为null
+     */
+    void record(Type type, String from, String to, long size, String detail) {
+        double rate = sampling[type.ordinal()];
+        if (closed || rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return;
+        }
+        long position;
+        Slot slot;
+        while (true) {
+            position = tail.get();
+            slot = slots[(int) position & mask];
+            long sequence = slot.sequence;
+            if (sequence < position) {
+                // 写线程还没有读走这个槽位上一轮的事件
+                onDrop.run();
+                return;
+            }
+            if (sequence == position && tail.compareAndSet(position, position + 1)) {
+                break;
+            }
+        }
+        slot.timeMillis = System.currentTimeMillis();
+        slot.type = type;
+        slot.from = from;
+        slot.to = to;
+        slot.size = size;
+        slot.detail = detail;
+        slot.sequence = position + 1;
+    }
+
+    private void drainLoop() {
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            Slot slot = slots[(int) head & mask];
+            if (slot.sequence != head + 1) {
+                flush();
+                if (closed) {
+                    // 关闭的同时正在写入的事件来不及写出
+                    long abandoned = tail.get() - head;
+                    if (abandoned > 0) {
+                        logger.warn("Event log closed, {} events abandoned", abandoned);
+                    }
+                    closeWriter();
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            line.setLength(0);
+            format(slot, line);
+            slot.from = null;
+            slot.to = null;
+            slot.detail = null;
+            slot.sequence = head + slots.length;
+            head++;
+            write(line);
+        }
+    }
+
+    private void format(Slot slot, StringBuilder line) {
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(slot.timeMillis))
+                .append("\",\"event\":\"").append(slot.type.label)
+                .append("\",\"from\":").append(JSONObject.quote(slot.from));
+        if (slot.to != null) {
+            line.append(",\"to\":").append(JSONObject.quote(slot.to));
+        }
+        line.append(",\"size\":").append(slot.size);
+        if (slot.detail != null) {
+            String detail = slot.detail;
+            if (detail.length() > maxDetailChars) {
+                detail = detail.substring(0, maxDetailChars) + "...";
+            }
+            line.append(",\"detail\":").append(JSONObject.quote(detail));
+        }
+        line.append('}');
+    }
+
+    private void write(StringBuilder line) {
+        if (writer == null) {
+            eventLogger.info(line.toString());
+            return;
+        }
+        try {
+            writer.append(line).append('\n');
+        } catch (IOException e) {
+            logger.warn("Failed to write event log: {}", e.getMessage());
+        }
+    }
+
+    private void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn("Failed to flush event log: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 缓冲区中等待写出的事件数
+     */
+    int queuedEvents() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * 由写线程在退出前关闭日志文件，不会与写出并发
+     */
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close event log: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 写出缓冲区中剩余的事件后停止写线程
+     *
+     * 关闭后不再接受新事件，缓冲区有界，写线程写完剩余事件即退出并关闭日志文件，因此等待不设超时。
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // 写线程仍会写完剩余事件并关闭日志文件
+            logger.warn("Interrupted while closing event log, {} events still queued", queuedEvents());
+        }
+    }
+}
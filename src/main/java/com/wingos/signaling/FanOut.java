@@ -0,0 +1,94 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.Framedata;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 消息扇出
+ *
+ * 同一条消息发送给多个接收方时，只做一次UTF-8编码和分帧，
+ * 之后把同一组帧写入每个接收方连接（与 WebSocketServer.broadcast 的做法一致）。
+ * 服务端发出的帧不做掩码，帧内容与连接无关，只与协商的Draft有关，
+ * 因此按Draft缓存：所有连接使用相同Draft配置时整个广播只编码一次。
+ * 协商了二进制协议的连接发送二进制帧，同样只转换一次。
+ * 开启 permessage-deflate 时第一个连接发送时压缩共用的帧，之后的连接直接使用已压缩的帧（见 SdpDeflateExtension）。
+ *
+ * 非线程安全，每次广播创建一个实例。
+ */
+final class FanOut {
+    private final String payload;
+    private ByteBuffer binaryPayload;
+    private Draft framesDraft;
+    private List<Framedata> frames;
+    private int sent;
+    private long payloadBytes = -1;
+
+    FanOut(String payload) {
+        this(payload, null);
+    }
+
+    /**
+     * @param binaryPayload 已编码的二进制消息（与 payload 内容相同），二进制接收方直接使用
+     */
+    FanOut(String payload, ByteBuffer binaryPayload) {
+        this.payload = payload;
+        this.binaryPayload = binaryPayload;
+    }
+
+    /**
+     * 发送给一个接收方
+     * @return 是否已写入（连接已关闭时返回false）
+     */
+    boolean sendTo(WebSocket conn) {
+        if (conn == null || !conn.isOpen()) {
+            return false;
+        }
+
+        Draft draft = conn.getDraft();
+        if (frames == null || !draft.equals(framesDraft)) {
+            frames = BinaryCodec.isBinary(draft) ? binaryFrames(draft) : draft.createFrames(payload, false);
+            framesDraft = draft;
+        }
+
+        try {
+            conn.sendFrame(frames);
+            sent++;
+            return true;
+        } catch (WebsocketNotConnectedException e) {
+            return false;
+        }
+    }
+
+    private List<Framedata> binaryFrames(Draft draft) {
+        if (binaryPayload == null) {
+            binaryPayload = BinaryCodec.fromJson(payload);
+        }
+        if (binaryPayload == null) {
+            return draft.createFrames(payload, false);
+        }
+        return draft.createFrames(binaryPayload.duplicate(), false);
+    }
+
+    String payload() {
+        return payload;
+    }
+
+    /**
+     * payload 的UTF-8字节数，同一次广播的所有接收方只计算一次
+     */
+    long payloadBytes() {
+        if (payloadBytes < 0) {
+            payloadBytes = OutboundQueue.utf8Length(payload);
+        }
+        return payloadBytes;
+    }
+
+    int sentCount() {
+        return sent;
+    }
+}
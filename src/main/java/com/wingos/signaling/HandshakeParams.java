@@ -0,0 +1,82 @@
+package com.wingos.signaling;
+
+import org.java_websocket.handshake.ClientHandshake;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 握手参数解析
+ * 从握手请求的资源描述符（如 /?role=server&deviceId=dev-1）中读取查询参数
+ */
+final class HandshakeParams {
+    /** 可选功能声明的请求头，值为逗号分隔的功能列表 */
+    static final String FEATURES_HEADER = "X-Signaling-Features";
+    /** 会话恢复令牌的请求头 */
+    static final String RESUME_HEADER = "X-Signaling-Resume";
+
+    private HandshakeParams() {
+    }
+
+    /**
+     * 读取查询参数
+     * @return 参数值（已URL解码），不存在时返回null
+     */
+    static String queryParam(String resourceDescriptor, String name) {
+        if (resourceDescriptor == null) {
+            return null;
+        }
+        int queryStart = resourceDescriptor.indexOf('?');
+        if (queryStart < 0) {
+            return null;
+        }
+
+        String query = resourceDescriptor.substring(queryStart + 1);
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            if (key.equals(name)) {
+                String value = eq >= 0 ? pair.substring(eq + 1) : "";
+                try {
+                    return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+                } catch (Exception e) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 判断对端是否声明支持某个可选功能
+     * 浏览器无法设置自定义请求头，因此同时支持 features 查询参数（逗号分隔）
+     */
+    static boolean hasFeature(ClientHandshake handshake, String feature) {
+        return listContains(handshake.getFieldValue(FEATURES_HEADER), feature)
+                || listContains(queryParam(handshake.getResourceDescriptor(), "features"), feature);
+    }
+
+    /**
+     * 读取会话恢复令牌，浏览器可使用 resume 查询参数
+     * @return 未携带时返回null
+     */
+    static String resumeToken(ClientHandshake handshake) {
+        String token = handshake.getFieldValue(RESUME_HEADER);
+        if (token == null || token.isEmpty()) {
+            token = queryParam(handshake.getResourceDescriptor(), "resume");
+        }
+        return token == null || token.isEmpty() ? null : token;
+    }
+
+    private static boolean listContains(String list, String item) {
+        if (list == null || list.isEmpty()) {
+            return false;
+        }
+        for (String value : list.split(",")) {
+            if (value.trim().equals(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
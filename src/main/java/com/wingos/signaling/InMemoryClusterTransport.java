@@ -0,0 +1,43 @@
+package com.wingos.signaling;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的集群消息总线
+ *
+ * 同一个JVM中的多个节点共享一个实例，消息在发送线程上直接交给目标节点处理，
+ * 没有序列化和网络开销。用于单机多节点部署和测试。
+ */
+public class InMemoryClusterTransport implements ClusterTransport {
+    private final Map<String, Receiver> nodes = new ConcurrentHashMap<>();
+
+    @Override
+    public void join(String nodeId, Receiver receiver) {
+        nodes.put(nodeId, receiver);
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        nodes.remove(nodeId);
+    }
+
+    @Override
+    public boolean send(String fromNodeId, String toNodeId, ClusterMessage message) {
+        Receiver receiver = nodes.get(toNodeId);
+        if (receiver == null) {
+            return false;
+        }
+        receiver.onClusterMessage(fromNodeId, message);
+        return true;
+    }
+
+    @Override
+    public void broadcast(String fromNodeId, ClusterMessage message) {
+        for (Map.Entry<String, Receiver> entry : nodes.entrySet()) {
+            if (!entry.getKey().equals(fromNodeId)) {
+                entry.getValue().onClusterMessage(fromNodeId, message);
+            }
+        }
+    }
+}
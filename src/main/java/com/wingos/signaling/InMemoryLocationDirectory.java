@@ -0,0 +1,92 @@
+package com.wingos.signaling;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的会话位置目录
+ * 同一个JVM中的多个节点共享一个实例
+ */
+public class InMemoryLocationDirectory implements LocationDirectory {
+
+    private static final class ClientLocation {
+        final String deviceId;
+        final String nodeId;
+
+        ClientLocation(String deviceId, String nodeId) {
+            this.deviceId = deviceId;
+            this.nodeId = nodeId;
+        }
+    }
+
+    private final Map<String, String> devices = new ConcurrentHashMap<>();
+    private final Map<String, ClientLocation> clients = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> deviceClients = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerDevice(String deviceId, String nodeId) {
+        devices.put(deviceId, nodeId);
+    }
+
+    @Override
+    public void unregisterDevice(String deviceId, String nodeId) {
+        devices.remove(deviceId, nodeId);
+    }
+
+    @Override
+    public String locateDevice(String deviceId) {
+        return devices.get(deviceId);
+    }
+
+    @Override
+    public void registerClient(String clientId, String deviceId, String nodeId) {
+        clients.put(clientId, new ClientLocation(deviceId, nodeId));
+        deviceClients.compute(deviceId, (k, ids) -> {
+            if (ids == null) {
+                ids = new ConcurrentHashMap<>();
+            }
+            ids.put(clientId, nodeId);
+            return ids;
+        });
+    }
+
+    @Override
+    public void unregisterClient(String clientId, String deviceId, String nodeId) {
+        ClientLocation location = clients.get(clientId);
+        if (location == null || !location.nodeId.equals(nodeId) || !clients.remove(clientId, location)) {
+            return;
+        }
+        deviceClients.computeIfPresent(deviceId, (k, ids) -> {
+            ids.remove(clientId, nodeId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    @Override
+    public String locateClient(String clientId, String deviceId) {
+        ClientLocation location = clients.get(clientId);
+        if (location == null || !location.deviceId.equals(deviceId)) {
+            return null;
+        }
+        return location.nodeId;
+    }
+
+    @Override
+    public Map<String, String> clientsOf(String deviceId) {
+        Map<String, String> ids = deviceClients.get(deviceId);
+        return ids != null ? Collections.unmodifiableMap(new HashMap<>(ids)) : Collections.emptyMap();
+    }
+
+    @Override
+    public void removeNode(String nodeId) {
+        devices.values().removeIf(nodeId::equals);
+        for (Map.Entry<String, ClientLocation> entry : clients.entrySet()) {
+            ClientLocation location = entry.getValue();
+            if (location.nodeId.equals(nodeId)) {
+                unregisterClient(entry.getKey(), location.deviceId, nodeId);
+            }
+        }
+    }
+}
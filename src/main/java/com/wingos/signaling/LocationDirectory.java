@@ -0,0 +1,41 @@
+package com.wingos.signaling;
+
+import java.util.Map;
+
+/**
+ * 集群共享的会话位置目录
+ * 记录每个设备和客户端连接在哪个节点上
+ *
+ * 注销操作都带 nodeId，只有登记的仍是该节点时才移除，
+ * 设备换节点重连后旧节点的迟到注销不会覆盖新位置。
+ */
+public interface LocationDirectory {
+
+    void registerDevice(String deviceId, String nodeId);
+
+    void unregisterDevice(String deviceId, String nodeId);
+
+    /**
+     * @return 设备所在节点，不在线时返回null
+     */
+    String locateDevice(String deviceId);
+
+    void registerClient(String clientId, String deviceId, String nodeId);
+
+    void unregisterClient(String clientId, String deviceId, String nodeId);
+
+    /**
+     * @return 客户端所在节点，客户端不存在或不属于该设备时返回null
+     */
+    String locateClient(String clientId, String deviceId);
+
+    /**
+     * @return 设备的所有客户端：clientId -> nodeId
+     */
+    Map<String, String> clientsOf(String deviceId);
+
+    /**
+     * 移除节点登记的所有设备和客户端（节点退出时调用）
+     */
+    void removeNode(String nodeId);
+}
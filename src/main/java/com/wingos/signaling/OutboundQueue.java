@@ -0,0 +1,348 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 连接的有界发送队列
+ *
+ * Java-WebSocket 的 send 会把帧无限制地放入连接的 outQueue，慢速连接会让内存无限增长。
+ * 这里把发送分为两级：
+ * 1. 套接字队列（WebSocketImpl.outQueue）：只保留少量已分帧、等待写出的数据
+ * 2. 待发送队列：套接字队列积压时暂存在这里，由定时任务在套接字队列排空后继续交付
+ *
+ * 两级合计的消息数或字节数超过上限时按策略处理（字节数按UTF-8编码计算；
+ * 转换为二进制帧的消息按文本的字节数计，二进制编码不会比JSON文本更长）：
+ * - DROP_OLDEST_CANDIDATE：丢弃最早的 candidate（offer/answer 不会被丢弃）
+ * - COALESCE：把相邻的 candidate 合并为 candidates 消息，仍超限时丢弃最早的 candidate
+ * - CLOSE：以 CLOSE_CODE 关闭连接
+ * 无 candidate 可丢弃时同样关闭连接。
+ *
+ * 协商了二进制协议的连接，文本信令消息在交付时转换为二进制帧。
+ *
+ * 所有方法线程安全，交付在锁内完成以保证消息顺序。
+ */
+final class OutboundQueue {
+    /** 发送队列溢出时的关闭码 */
+    static final int CLOSE_CODE = 4008;
+
+    /** 套接字队列中最多保留的帧数，超过后新消息进入待发送队列 */
+    static final int SOCKET_QUEUE_FRAMES = 32;
+
+    /**
+     * 发送结果（背压信号）
+     */
+    enum Result {
+        /** 已交付给套接字 */
+        SENT,
+        /** 接收方积压，已进入待发送队列 */
+        QUEUED,
+        /** 接收方积压，为了容纳新消息丢弃了较早的 candidate */
+        DROPPED,
+        /** 接收方积压超限，连接已关闭 */
+        CLOSED
+    }
+
+    /**
+     * 待发送的消息，candidate 类消息保存为单条 candidate 列表以便合并和丢弃，
+     * 已编码的二进制帧保存在 binary 中
+     */
+    private static final class Entry {
+        String text;
+        final List<String> candidates;
+        final ByteBuffer binary;
+        final boolean binaryCandidate;
+        long bytes;
+
+        Entry(String text, List<String> candidates, long bytes) {
+            this.text = text;
+            this.candidates = candidates;
+            this.binary = null;
+            this.binaryCandidate = false;
+            this.bytes = bytes;
+        }
+
+        Entry(ByteBuffer binary, boolean candidate) {
+            this.text = null;
+            this.candidates = null;
+            this.binary = binary;
+            this.binaryCandidate = candidate;
+            this.bytes = binary.remaining();
+        }
+
+        String text() {
+            if (text == null) {
+                text = candidates.size() == 1 ? candidates.get(0) : CandidateBatcher.encode(candidates, null);
+            }
+            return text;
+        }
+    }
+
+    private final WebSocket conn;
+    /** 连接的套接字队列（WebSocketImpl.outQueue），无法取得时为null */
+    private final Collection<ByteBuffer> socketQueue;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final SlowConsumerPolicy policy;
+    private final boolean batchCapable;
+    private final boolean binary;
+
+    // 大多数连接的消息直接交给套接字，等待队列一直为空，初始只分配最小的数组
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>(1);
+    private long pendingBytes;
+    private long dropped;
+    private boolean closed;
+
+    OutboundQueue(WebSocket conn, int maxMessages, long maxBytes, SlowConsumerPolicy policy,
+                  boolean batchCapable, boolean binary) {
+        this(conn, conn instanceof WebSocketImpl ? ((WebSocketImpl) conn).outQueue : null,
+                maxMessages, maxBytes, policy, batchCapable, binary);
+    }
+
+    /**
+     * @param socketQueue 套接字队列，测试时可以传入不会自动排空的队列
+     */
+    OutboundQueue(WebSocket conn, Collection<ByteBuffer> socketQueue, int maxMessages, long maxBytes,
+                  SlowConsumerPolicy policy, boolean batchCapable, boolean binary) {
+        this.conn = conn;
+        this.socketQueue = socketQueue;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.batchCapable = batchCapable;
+        this.binary = binary;
+    }
+
+    /**
+     * 发送普通消息
+     */
+    synchronized Result offer(String message) {
+        return offer(new Entry(message, null, utf8Length(message)), null);
+    }
+
+    /**
+     * 发送已编码的二进制帧（调用方保证接收方协商了二进制协议）
+     * @param candidate 是否为 candidate 消息，积压时可以被丢弃
+     */
+    synchronized Result offer(ByteBuffer message, boolean candidate) {
+        return offer(new Entry(message, candidate), null);
+    }
+
+    /**
+     * 发送 candidate 消息（单条或合并），积压时可以被合并或丢弃
+     */
+    synchronized Result offerCandidates(List<String> candidates) {
+        long bytes = 0;
+        for (String candidate : candidates) {
+            bytes += utf8Length(candidate);
+        }
+        return offer(new Entry(null, new ArrayList<>(candidates), bytes), null);
+    }
+
+    /**
+     * 发送广播的 candidate 消息，直接交付时复用已编码的帧
+     */
+    synchronized Result offerCandidate(FanOut fanOut) {
+        String message = fanOut.payload();
+        List<String> candidates = new ArrayList<>(1);
+        candidates.add(message);
+        return offer(new Entry(null, candidates, fanOut.payloadBytes()), fanOut);
+    }
+
+    private Result offer(Entry entry, FanOut fanOut) {
+        if (closed || !conn.isOpen()) {
+            return Result.CLOSED;
+        }
+
+        if (pending.isEmpty() && socketFrames() < SOCKET_QUEUE_FRAMES) {
+            return deliver(entry, fanOut) ? Result.SENT : Result.CLOSED;
+        }
+
+        pending.addLast(entry);
+        pendingBytes += entry.bytes;
+        return enforceLimits();
+    }
+
+    /**
+     * 套接字队列有空间时继续交付待发送消息，由定时任务调用
+     * @return 是否仍有待发送消息
+     */
+    synchronized boolean drain() {
+        while (!pending.isEmpty() && !closed && socketFrames() < SOCKET_QUEUE_FRAMES) {
+            Entry entry = pending.pollFirst();
+            pendingBytes -= entry.bytes;
+            if (!deliver(entry, null)) {
+                clear();
+                return false;
+            }
+        }
+        return !pending.isEmpty() && !closed;
+    }
+
+    synchronized void clear() {
+        pending.clear();
+        pendingBytes = 0;
+    }
+
+    /**
+     * 当前排队的消息数（套接字队列 + 待发送队列）
+     */
+    synchronized int depthMessages() {
+        return socketFrames() + pending.size();
+    }
+
+    /**
+     * 当前排队的字节数（套接字队列 + 待发送队列）
+     */
+    synchronized long depthBytes() {
+        return socketBytes() + pendingBytes;
+    }
+
+    synchronized long droppedCount() {
+        return dropped;
+    }
+
+    private boolean deliver(Entry entry, FanOut fanOut) {
+        try {
+            if (fanOut != null) {
+                fanOut.sendTo(conn);
+            } else if (entry.binary != null) {
+                conn.send(entry.binary);
+            } else {
+                ByteBuffer frame = binary ? BinaryCodec.fromJson(entry.text()) : null;
+                if (frame != null) {
+                    conn.send(frame);
+                } else {
+                    conn.send(entry.text());
+                }
+            }
+            return true;
+        } catch (WebsocketNotConnectedException e) {
+            return false;
+        }
+    }
+
+    private Result enforceLimits() {
+        if (!overLimit()) {
+            return Result.QUEUED;
+        }
+
+        if (policy == SlowConsumerPolicy.COALESCE && batchCapable) {
+            coalesce();
+            if (!overLimit()) {
+                return Result.QUEUED;
+            }
+        }
+
+        if (policy != SlowConsumerPolicy.CLOSE) {
+            while (overLimit() && dropOldestCandidate()) {
+                // 继续丢弃直到满足上限
+            }
+            if (!overLimit()) {
+                return Result.DROPPED;
+            }
+        }
+
+        closed = true;
+        clear();
+        conn.close(CLOSE_CODE, "Outbound queue overflow");
+        return Result.CLOSED;
+    }
+
+    private boolean overLimit() {
+        return socketFrames() + pending.size() > maxMessages || socketBytes() + pendingBytes > maxBytes;
+    }
+
+    /**
+     * 把相邻的 candidate 消息合并为一条，不改变与 offer/answer 的相对顺序
+     */
+    private void coalesce() {
+        Entry run = null;
+        Iterator<Entry> it = pending.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.candidates == null) {
+                run = null;
+            } else if (run == null) {
+                run = entry;
+            } else {
+                run.candidates.addAll(entry.candidates);
+                run.bytes += entry.bytes;
+                run.text = null;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 丢弃最早的一条 candidate
+     * @return 没有可丢弃的 candidate 时返回false
+     */
+    private boolean dropOldestCandidate() {
+        Iterator<Entry> it = pending.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.binaryCandidate) {
+                it.remove();
+                pendingBytes -= entry.bytes;
+                dropped++;
+                return true;
+            }
+            if (entry.candidates == null || entry.candidates.isEmpty()) {
+                continue;
+            }
+            String removed = entry.candidates.remove(0);
+            long removedBytes = utf8Length(removed);
+            entry.bytes -= removedBytes;
+            entry.text = null;
+            pendingBytes -= removedBytes;
+            dropped++;
+            if (entry.candidates.isEmpty()) {
+                it.remove();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 字符串按UTF-8编码后的字节数，不实际编码（孤立的代理字符按2字节计，只会多算）
+     */
+    static long utf8Length(String value) {
+        long bytes = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800 && !Character.isSurrogate(c)) {
+                bytes += 2;
+            } else if (c >= 0x80) {
+                // 2字节字符，或代理对的一半（一对共4字节）
+                bytes += 1;
+            }
+        }
+        return bytes;
+    }
+
+    private int socketFrames() {
+        return socketQueue != null ? socketQueue.size() : 0;
+    }
+
+    private long socketBytes() {
+        if (socketQueue == null) {
+            return 0;
+        }
+        // 套接字队列最多 SOCKET_QUEUE_FRAMES 帧（加上直接交付的一批），遍历开销有限
+        long bytes = 0;
+        for (ByteBuffer buffer : socketQueue) {
+            bytes += buffer.remaining();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,183 @@
+package com.wingos.signaling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 设备离线期间的消息暂存
+ *
+ * 设备短暂断线时，客户端发来的 offer 和 candidate 按设备暂存，
+ * 设备重新注册后按原顺序一次性补发，避免所有客户端同时重新协商。
+ *
+ * 限制：
+ * - 每条消息最多保留 ttlMs，过期后丢弃
+ * - 每个设备最多保留 maxMessages 条、maxBytes 字节（按UTF-8编码计算，与发送队列一致），超出时丢弃最早的消息
+ * - 同一客户端发来新的 offer 时，丢弃它之前暂存的消息（已被新的协商取代）
+ *
+ * 补发在设备缓冲区的锁内完成，并且在补发结束后才把缓冲区从表中移除，
+ * 因此补发期间同一客户端的新消息会进入缓冲区排队，不会越过补发的消息。
+ */
+final class PendingMessageBuffer {
+
+    /**
+     * 暂存的消息（已包含 fromClientId）
+     */
+    static final class Pending {
+        final String clientId;
+        final String message;
+        final boolean candidate;
+        /** 消息按UTF-8编码的字节数 */
+        final long bytes;
+        final long createdAt;
+
+        Pending(String clientId, String message, boolean candidate) {
+            this.clientId = clientId;
+            this.message = message;
+            this.candidate = candidate;
+            this.bytes = OutboundQueue.utf8Length(message);
+            this.createdAt = System.nanoTime();
+        }
+    }
+
+    private static final class DeviceBuffer {
+        final ArrayDeque<Pending> messages = new ArrayDeque<>();
+        long bytes;
+        boolean closed;
+    }
+
+    private final long ttlNanos;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final Map<String, DeviceBuffer> buffers = new ConcurrentHashMap<>();
+
+    PendingMessageBuffer(long ttlMs, int maxMessages, long maxBytes) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 设备是否有待补发的消息
+     */
+    boolean hasPending(String deviceId) {
+        return buffers.containsKey(deviceId);
+    }
+
+    /**
+     * 暂存一条消息
+     * @param onDiscarded 因超出容量或被新offer取代而丢弃的消息
+     */
+    void add(String deviceId, Pending pending, Consumer<Pending> onDiscarded) {
+        while (true) {
+            DeviceBuffer buffer = buffers.computeIfAbsent(deviceId, k -> new DeviceBuffer());
+            synchronized (buffer) {
+                if (buffer.closed) {
+                    // 缓冲区刚补发完毕，重新创建
+                    continue;
+                }
+
+                if (!pending.candidate) {
+                    // 新的offer取代该客户端之前暂存的协商
+                    Iterator<Pending> it = buffer.messages.iterator();
+                    while (it.hasNext()) {
+                        Pending old = it.next();
+                        if (old.clientId.equals(pending.clientId)) {
+                            it.remove();
+                            buffer.bytes -= old.bytes;
+                        }
+                    }
+                }
+
+                buffer.messages.addLast(pending);
+                buffer.bytes += pending.bytes;
+                while (buffer.messages.size() > maxMessages || buffer.bytes > maxBytes) {
+                    Pending dropped = buffer.messages.pollFirst();
+                    buffer.bytes -= dropped.bytes;
+                    onDiscarded.accept(dropped);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 补发设备暂存的消息，过期的消息交给 onExpired
+     * @param sink 在缓冲区锁内调用，按原顺序接收未过期的消息
+     */
+    void replay(String deviceId, Consumer<List<Pending>> sink, Consumer<Pending> onExpired) {
+        DeviceBuffer buffer = buffers.get(deviceId);
+        if (buffer == null) {
+            return;
+        }
+
+        synchronized (buffer) {
+            if (buffer.closed) {
+                return;
+            }
+            buffer.closed = true;
+
+            long now = System.nanoTime();
+            List<Pending> live = new ArrayList<>(buffer.messages.size());
+            for (Pending pending : buffer.messages) {
+                if (now - pending.createdAt > ttlNanos) {
+                    onExpired.accept(pending);
+                } else {
+                    live.add(pending);
+                }
+            }
+            buffer.messages.clear();
+            buffer.bytes = 0;
+
+            try {
+                if (!live.isEmpty()) {
+                    sink.accept(live);
+                }
+            } finally {
+                buffers.remove(deviceId, buffer);
+            }
+        }
+    }
+
+    /**
+     * 清理过期消息，由定时任务调用
+     */
+    void expire(Consumer<Pending> onExpired) {
+        long now = System.nanoTime();
+        for (Map.Entry<String, DeviceBuffer> entry : buffers.entrySet()) {
+            DeviceBuffer buffer = entry.getValue();
+            synchronized (buffer) {
+                if (buffer.closed) {
+                    continue;
+                }
+                while (!buffer.messages.isEmpty() && now - buffer.messages.peekFirst().createdAt > ttlNanos) {
+                    Pending expired = buffer.messages.pollFirst();
+                    buffer.bytes -= expired.bytes;
+                    onExpired.accept(expired);
+                }
+                if (buffer.messages.isEmpty()) {
+                    buffer.closed = true;
+                    buffers.remove(entry.getKey(), buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * 待补发的消息总数
+     */
+    int size() {
+        int size = 0;
+        for (DeviceBuffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                size += buffer.messages.size();
+            }
+        }
+        return size;
+    }
+}
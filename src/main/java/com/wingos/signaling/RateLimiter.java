@@ -0,0 +1,75 @@
+package com.wingos.signaling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶限速器
+ *
+ * 使用 GCRA（通用信元速率算法）实现，与令牌桶等价：平均每秒 perSecond 个，最多连续 burst 个。
+ * 状态只有一个 AtomicLong（下一个令牌的理论到达时间），获取令牌是一次 CAS，不加锁也不分配对象，
+ * 每个连接、每种消息类型各一个也只占很少内存。
+ */
+final class RateLimiter {
+
+    /**
+     * 限速配置
+     */
+    static final class Limit {
+        final double perSecond;
+        final int burst;
+
+        Limit(double perSecond, int burst) {
+            if (!(perSecond > 0) || burst < 1) {
+                throw new IllegalArgumentException("Invalid rate limit: " + perSecond + "/" + burst);
+            }
+            this.perSecond = perSecond;
+            this.burst = burst;
+        }
+
+        /**
+         * 解析 "每秒数量/突发数量" 形式，如 "2/10"；省略突发数量时等于每秒数量（至少为1）
+         */
+        static Limit parse(String value) {
+            int slash = value.indexOf('/');
+            double perSecond = Double.parseDouble(slash >= 0 ? value.substring(0, slash).trim() : value.trim());
+            int burst = slash >= 0
+                    ? Integer.parseInt(value.substring(slash + 1).trim())
+                    : Math.max(1, (int) Math.ceil(perSecond));
+            return new Limit(perSecond, burst);
+        }
+
+        @Override
+        public String toString() {
+            return perSecond + "/" + burst;
+        }
+    }
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    RateLimiter(Limit limit) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / limit.perSecond));
+        this.toleranceNanos = intervalNanos * (limit.burst - 1);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 获取一个令牌
+     * @return 超过限速时返回false
+     */
+    boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long base = tat - now > 0 ? tat : now;
+            if (base - now > toleranceNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, base + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+}
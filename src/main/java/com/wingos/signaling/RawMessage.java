@@ -0,0 +1,497 @@
+package com.wingos.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * 原始信令消息
+ *
+ * 转发路径只需要 type / toClientId / fromClientId 三个顶层字段，
+ * 因此这里用一个单遍扫描器读取它们的值和位置，不构建完整的JSON树：
+ * - 读取：type、toClientId 直接取扫描结果
+ * - 改写：fromClientId 直接拼接到原始文本中，toClientId 直接从原始文本中删除
+ *
+ * 扫描器只接受标准JSON对象，遇到不规范的文本（单引号、重复字段、非字符串的 type/toClientId 等）返回null，
+ * 由调用方回退到 parse：JSONObject 完整解析，并按 optString 的规则把三个字段规范为字符串。
+ */
+final class RawMessage {
+    private static final String TYPE = "type";
+    private static final String TO_CLIENT_ID = "toClientId";
+    private static final String FROM_CLIENT_ID = "fromClientId";
+
+    final String text;
+    final String type;
+    final String toClientId;
+
+    private final int openBrace;
+    private final boolean empty;
+    private final Field toField;
+    private final Field fromField;
+
+    /**
+     * 顶层字段在原始文本中的位置
+     */
+    private static final class Field {
+        int valueStart;
+        int valueEnd;
+        int removeStart;
+        int removeEnd;
+    }
+
+    private RawMessage(String text, String type, String toClientId, int openBrace, boolean empty,
+                       Field toField, Field fromField) {
+        this.text = text;
+        this.type = type;
+        this.toClientId = toClientId;
+        this.openBrace = openBrace;
+        this.empty = empty;
+        this.toField = toField;
+        this.fromField = fromField;
+    }
+
+    /**
+     * 扫描消息文本
+     * @return 扫描结果，文本不是标准JSON对象时返回null
+     */
+    static RawMessage scan(String text) {
+        try {
+            return new Scanner(text).scan();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 完整解析消息文本，scan 返回null时使用
+     *
+     * type/toClientId/fromClientId 按 optString 的规则读取：数字等非字符串值转为字符串，null 视为不存在
+     * @return 解析结果，不会返回null
+     * @throws JSONException 文本不是JSON对象
+     */
+    static RawMessage parse(String text) {
+        JSONObject json = new JSONObject(text);
+        for (String key : new String[] {TYPE, TO_CLIENT_ID, FROM_CLIENT_ID}) {
+            Object value = json.opt(key);
+            if (JSONObject.NULL.equals(value)) {
+                json.remove(key);
+            } else if (value != null && !(value instanceof String)) {
+                json.put(key, value.toString());
+            }
+        }
+        RawMessage raw = scan(json.toString());
+        if (raw == null) {
+            // JSONObject 输出的是标准JSON，规范化之后扫描不会失败
+            throw new JSONException("Unexpected normalized message");
+        }
+        return raw;
+    }
+
+    /**
+     * 设置fromClientId（已存在时覆盖原值），其余内容原样保留
+     */
+    String withFromClientId(String clientId) {
+        return withQuotedFromClientId(JSONObject.quote(clientId));
+    }
+
+    /**
+     * 同 withFromClientId，ID已转为JSON字符串（含引号）
+     */
+    String withQuotedFromClientId(String quoted) {
+        if (fromField != null) {
+            return new StringBuilder(text.length() + quoted.length())
+                    .append(text, 0, fromField.valueStart)
+                    .append(quoted)
+                    .append(text, fromField.valueEnd, text.length())
+                    .toString();
+        }
+
+        StringBuilder sb = new StringBuilder(text.length() + quoted.length() + FROM_CLIENT_ID.length() + 4);
+        sb.append(text, 0, openBrace + 1)
+                .append('"').append(FROM_CLIENT_ID).append("\":")
+                .append(quoted);
+        if (!empty) {
+            sb.append(',');
+        }
+        return sb.append(text, openBrace + 1, text.length()).toString();
+    }
+
+    /**
+     * 删除toClientId字段，其余内容原样保留
+     */
+    String withoutToClientId() {
+        if (toField == null) {
+            return text;
+        }
+        return new StringBuilder(text.length())
+                .append(text, 0, toField.removeStart)
+                .append(text, toField.removeEnd, text.length())
+                .toString();
+    }
+
+    /**
+     * 单遍扫描器，只解码关心的字段值，其它值仅跳过
+     */
+    private static final class Scanner {
+        private final String text;
+        private int pos;
+        private boolean sawEscape;
+
+        Scanner(String text) {
+            this.text = text;
+        }
+
+        RawMessage scan() {
+            skipWhitespace();
+            int openBrace = pos;
+            expect('{');
+
+            String type = null;
+            String toClientId = null;
+            Field toField = null;
+            Field fromField = null;
+            boolean seenType = false;
+            boolean empty = true;
+            int prevComma = -1;
+
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    int memberStart = pos;
+                    String key = readKey();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+
+                    int valueStart = pos;
+                    String value = null;
+                    boolean interesting = TYPE.equals(key) || TO_CLIENT_ID.equals(key) || FROM_CLIENT_ID.equals(key);
+                    if (peek() == '"') {
+                        value = readString(interesting);
+                    } else if (interesting) {
+                        // 非字符串的 type/toClientId（如数字、null）由 parse 按 optString 的规则转换
+                        throw new IllegalArgumentException("non-string " + key);
+                    } else {
+                        skipValue();
+                    }
+                    int valueEnd = pos;
+                    empty = false;
+
+                    skipWhitespace();
+                    char next = text.charAt(pos);
+
+                    Field field = null;
+                    if (interesting) {
+                        field = new Field();
+                        field.valueStart = valueStart;
+                        field.valueEnd = valueEnd;
+                        if (next == ',') {
+                            field.removeStart = memberStart;
+                            field.removeEnd = pos + 1;
+                        } else if (prevComma >= 0) {
+                            field.removeStart = prevComma;
+                            field.removeEnd = valueEnd;
+                        } else {
+                            field.removeStart = memberStart;
+                            field.removeEnd = valueEnd;
+                        }
+                    }
+
+                    // 重复字段交给完整解析处理（JSONObject会拒绝）
+                    if (TYPE.equals(key)) {
+                        if (seenType) {
+                            throw new IllegalArgumentException("duplicate key");
+                        }
+                        seenType = true;
+                        type = value;
+                    } else if (TO_CLIENT_ID.equals(key)) {
+                        if (toField != null) {
+                            throw new IllegalArgumentException("duplicate key");
+                        }
+                        toField = field;
+                        toClientId = value;
+                    } else if (FROM_CLIENT_ID.equals(key)) {
+                        if (fromField != null) {
+                            throw new IllegalArgumentException("duplicate key");
+                        }
+                        fromField = field;
+                    }
+
+                    if (next == ',') {
+                        prevComma = pos;
+                        pos++;
+                    } else if (next == '}') {
+                        pos++;
+                        break;
+                    } else {
+                        throw new IllegalArgumentException("expected ',' or '}'");
+                    }
+                }
+            }
+
+            skipWhitespace();
+            if (pos != text.length()) {
+                throw new IllegalArgumentException("trailing characters");
+            }
+            return new RawMessage(text, type, toClientId, openBrace, empty, toField, fromField);
+        }
+
+        private char peek() {
+            return text.charAt(pos);
+        }
+
+        private void expect(char c) {
+            if (text.charAt(pos) != c) {
+                throw new IllegalArgumentException("expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    break;
+                }
+                pos++;
+            }
+        }
+
+        /**
+         * 读取字段名，只有关心的字段名才返回（不产生额外的字符串分配），其它返回null
+         */
+        private String readKey() {
+            int start = pos + 1;
+            sawEscape = false;
+            readString(false);
+            if (sawEscape) {
+                pos = start - 1;
+                return readString(true);
+            }
+            int length = pos - 1 - start;
+            if (matches(start, length, TYPE)) {
+                return TYPE;
+            }
+            if (matches(start, length, TO_CLIENT_ID)) {
+                return TO_CLIENT_ID;
+            }
+            if (matches(start, length, FROM_CLIENT_ID)) {
+                return FROM_CLIENT_ID;
+            }
+            return null;
+        }
+
+        private boolean matches(int start, int length, String key) {
+            return length == key.length() && text.regionMatches(start, key, 0, length);
+        }
+
+        /**
+         * 读取字符串值
+         * @param decode 是否需要解码（不需要时只跳过并返回null）
+         */
+        private String readString(boolean decode) {
+            expect('"');
+            int start = pos;
+            StringBuilder sb = null;
+            while (true) {
+                char c = text.charAt(pos);
+                if (c < 0x20) {
+                    throw new IllegalArgumentException("control character in string");
+                }
+                if (c == '"') {
+                    String result = null;
+                    if (decode) {
+                        result = sb != null ? sb.toString() : text.substring(start, pos);
+                    }
+                    pos++;
+                    return result;
+                }
+                if (c == '\\') {
+                    sawEscape = true;
+                    if (decode && sb == null) {
+                        sb = new StringBuilder(text.length() - start).append(text, start, pos);
+                    }
+                    char escaped = text.charAt(pos + 1);
+                    pos += 2;
+                    char decoded;
+                    switch (escaped) {
+                        case '"':
+                        case '\\':
+                        case '/':
+                            decoded = escaped;
+                            break;
+                        case 'b':
+                            decoded = '\b';
+                            break;
+                        case 'f':
+                            decoded = '\f';
+                            break;
+                        case 'n':
+                            decoded = '\n';
+                            break;
+                        case 'r':
+                            decoded = '\r';
+                            break;
+                        case 't':
+                            decoded = '\t';
+                            break;
+                        case 'u':
+                            decoded = readHex4();
+                            break;
+                        default:
+                            throw new IllegalArgumentException("invalid escape");
+                    }
+                    if (sb != null) {
+                        sb.append(decoded);
+                    }
+                } else {
+                    if (sb != null) {
+                        sb.append(c);
+                    }
+                    pos++;
+                }
+            }
+        }
+
+        /**
+         * 读取Unicode转义的4个十六进制数字（Integer.parseInt 会接受正负号，这里逐个检查ASCII字符）
+         */
+        private char readHex4() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                char c = text.charAt(pos++);
+                int digit = c < 128 ? Character.digit(c, 16) : -1;
+                if (digit < 0) {
+                    throw new IllegalArgumentException("invalid unicode escape");
+                }
+                value = (value << 4) | digit;
+            }
+            return (char) value;
+        }
+
+        /**
+         * 跳过一个值并校验语法，不解码
+         *
+         * 嵌套的对象/数组不递归，用栈记录尚未闭合的括号类型，右括号必须与栈顶配对。
+         */
+        private void skipValue() {
+            char c = peek();
+            if (c != '{' && c != '[') {
+                skipScalar();
+                return;
+            }
+            StringBuilder open = new StringBuilder();
+            open.append(c);
+            pos++;
+            boolean first = true;
+            while (true) {
+                skipWhitespace();
+                char top = open.charAt(open.length() - 1);
+                if (first && peek() == closing(top)) {
+                    // 空对象/数组
+                    pos++;
+                    open.setLength(open.length() - 1);
+                } else {
+                    if (top == '{') {
+                        readString(false);
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                    }
+                    c = peek();
+                    if (c == '{' || c == '[') {
+                        open.append(c);
+                        pos++;
+                        first = true;
+                        continue;
+                    }
+                    skipScalar();
+                }
+                // 一个值结束：逗号之后是同一层的下一个值，右括号闭合当前层
+                while (open.length() > 0) {
+                    skipWhitespace();
+                    c = text.charAt(pos);
+                    if (c == ',') {
+                        pos++;
+                        break;
+                    }
+                    if (c != closing(open.charAt(open.length() - 1))) {
+                        throw new IllegalArgumentException("expected ',' or closing bracket");
+                    }
+                    pos++;
+                    open.setLength(open.length() - 1);
+                }
+                if (open.length() == 0) {
+                    return;
+                }
+                first = false;
+            }
+        }
+
+        private static char closing(char open) {
+            return open == '{' ? '}' : ']';
+        }
+
+        /**
+         * 跳过字符串、true/false/null 或数字
+         */
+        private void skipScalar() {
+            char c = peek();
+            if (c == '"') {
+                readString(false);
+            } else if (c == 't') {
+                skipLiteral("true");
+            } else if (c == 'f') {
+                skipLiteral("false");
+            } else if (c == 'n') {
+                skipLiteral("null");
+            } else {
+                skipNumber();
+            }
+        }
+
+        private void skipLiteral(String literal) {
+            if (!text.startsWith(literal, pos)) {
+                throw new IllegalArgumentException("expected value");
+            }
+            pos += literal.length();
+        }
+
+        /**
+         * 数字：-?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?
+         */
+        private void skipNumber() {
+            if (peek() == '-') {
+                pos++;
+            }
+            if (peek() == '0') {
+                pos++;
+            } else {
+                skipDigits();
+            }
+            if (pos < text.length() && text.charAt(pos) == '.') {
+                pos++;
+                skipDigits();
+            }
+            if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                pos++;
+                if (peek() == '+' || peek() == '-') {
+                    pos++;
+                }
+                skipDigits();
+            }
+        }
+
+        private void skipDigits() {
+            int start = pos;
+            while (pos < text.length() && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+                pos++;
+            }
+            if (pos == start) {
+                throw new IllegalArgumentException("expected digit");
+            }
+        }
+    }
+}
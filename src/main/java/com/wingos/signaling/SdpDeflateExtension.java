@@ -0,0 +1,390 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.ExtensionRequestData;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.ContinuousFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 针对SDP调整的 permessage-deflate（RFC 7692）
+ *
+ * 与 PerMessageDeflateExtension 的区别：
+ * - 小于 threshold 的消息（单条candidate）不压缩，压缩后不变小的消息也原样发送
+ * - 发送方向始终不保留上下文（server/client_no_context_takeover），压缩器按线程复用，
+ *   连接本身不持有 Deflater；Inflater 在第一次收到压缩消息时才创建
+ * - 双方都声明 x-sdp-dictionary 时使用预置的SDP字典，弥补不保留上下文的损失；
+ *   标准对端（浏览器等）不声明该参数，按普通 permessage-deflate 处理
+ * - 已压缩的帧（RSV1）不再处理：广播时同一帧被多个连接共用（FanOut），只压缩一次
+ */
+final class SdpDeflateExtension extends PerMessageDeflateExtension {
+    private static final String EXTENSION_NAME = "permessage-deflate";
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    private static final String SDP_DICTIONARY = "x-sdp-dictionary";
+    /** 字典内容变化时必须修改版本，版本不同的对端不使用字典 */
+    private static final String DICTIONARY_VERSION = "1";
+
+    /** 默认压缩阈值：单条candidate约200字节，不压缩 */
+    static final int DEFAULT_THRESHOLD = 256;
+
+    /** 单帧解压后的上限，防止压缩炸弹 */
+    private static final int MAX_INFLATED_BYTES = 1 << 20;
+    private static final byte[] TAIL_BYTES = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final byte[] DICTIONARY = buildDictionary();
+
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    /**
+     * 压缩统计，同一配置创建的所有连接共享
+     */
+    static final class Stats {
+        final LongAdder compressedMessages = new LongAdder();
+        final LongAdder skippedMessages = new LongAdder();
+        final LongAdder deflateInputBytes = new LongAdder();
+        final LongAdder deflateOutputBytes = new LongAdder();
+        final LongAdder inflateInputBytes = new LongAdder();
+        final LongAdder inflateOutputBytes = new LongAdder();
+    }
+
+    private final boolean dictionaryEnabled;
+    private final Stats stats;
+
+    // 握手协商结果，每个连接一个实例（copyInstance）
+    private boolean dictionaryNegotiated;
+    private boolean peerNoContextTakeover;
+    private Inflater inflater;
+
+    /**
+     * @param threshold  小于该字节数的消息不压缩
+     * @param dictionary 对端声明支持时是否使用SDP字典
+     */
+    SdpDeflateExtension(int threshold, boolean dictionary, Stats stats) {
+        this.dictionaryEnabled = dictionary;
+        this.stats = stats;
+        setThreshold(threshold);
+        // 父类构造时创建的压缩器不会被使用，立即释放本地内存
+        getDeflater().end();
+        getInflater().end();
+    }
+
+    /**
+     * 连接是否协商了压缩
+     */
+    static boolean isNegotiated(WebSocket conn) {
+        Draft draft = conn.getDraft();
+        return draft instanceof Draft_6455 && ((Draft_6455) draft).getExtension() instanceof SdpDeflateExtension;
+    }
+
+    @Override
+    public void encodeFrame(Framedata inputFrame) {
+        // 只压缩单帧消息
+        if (!(inputFrame instanceof DataFrame) || inputFrame instanceof ContinuousFrame
+                || !inputFrame.isFin() || inputFrame.isRSV1()) {
+            return;
+        }
+
+        ByteBuffer payload = inputFrame.getPayloadData();
+        int length = payload.remaining();
+        if (length < getThreshold()) {
+            stats.skippedMessages.increment();
+            return;
+        }
+
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        if (dictionaryNegotiated) {
+            deflater.setDictionary(DICTIONARY);
+        }
+        deflater.setInput(payload.duplicate());
+        byte[] output = new byte[Math.max(64, length / 2)];
+        int size = 0;
+        while (true) {
+            size += deflater.deflate(output, size, output.length - size, Deflater.SYNC_FLUSH);
+            if (size < output.length) {
+                break;
+            }
+            output = Arrays.copyOf(output, output.length * 2);
+        }
+        // 不让线程复用的压缩器继续引用消息
+        deflater.setInput(EMPTY);
+
+        // SYNC_FLUSH 的输出以 00 00 FF FF 结尾，按 RFC 7692 7.2.1 去掉
+        if (endsWithTail(output, size)) {
+            size -= TAIL_BYTES.length;
+        }
+        if (size >= length) {
+            stats.skippedMessages.increment();
+            return;
+        }
+
+        stats.compressedMessages.increment();
+        stats.deflateInputBytes.add(length);
+        stats.deflateOutputBytes.add(size);
+        ((DataFrame) inputFrame).setRSV1(true);
+        ((FramedataImpl1) inputFrame).setPayload(ByteBuffer.wrap(output, 0, size));
+    }
+
+    @Override
+    public void decodeFrame(Framedata inputFrame) throws InvalidDataException {
+        if (!(inputFrame instanceof DataFrame)) {
+            return;
+        }
+        if (!inputFrame.isRSV1() && inputFrame.getOpcode() != Opcode.CONTINUOUS) {
+            return;
+        }
+        if (inputFrame.getOpcode() == Opcode.CONTINUOUS && inputFrame.isRSV1()) {
+            throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, "RSV1 bit can only be set for the first frame.");
+        }
+
+        if (inflater == null) {
+            inflater = new Inflater(true);
+            startMessage();
+        }
+        ByteBuffer payload = inputFrame.getPayloadData();
+        int compressed = payload.remaining();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(256, compressed * 4));
+        try {
+            inflate(payload, output);
+            if (inputFrame.isFin()) {
+                inflate(ByteBuffer.wrap(TAIL_BYTES), output);
+                if (peerNoContextTakeover) {
+                    inflater.reset();
+                    startMessage();
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, e.getMessage());
+        }
+
+        stats.inflateInputBytes.add(compressed);
+        stats.inflateOutputBytes.add(output.size());
+        ((FramedataImpl1) inputFrame).setPayload(ByteBuffer.wrap(output.toByteArray()));
+    }
+
+    private void startMessage() {
+        if (dictionaryNegotiated) {
+            inflater.setDictionary(DICTIONARY);
+        }
+    }
+
+    private void inflate(ByteBuffer input, ByteArrayOutputStream output) throws DataFormatException, InvalidDataException {
+        inflater.setInput(input);
+        byte[] buffer = new byte[1024];
+        int inflated;
+        while ((inflated = inflater.inflate(buffer)) > 0) {
+            output.write(buffer, 0, inflated);
+            if (output.size() > MAX_INFLATED_BYTES) {
+                throw new InvalidDataException(CloseFrame.TOOBIG, "Inflated frame exceeds " + MAX_INFLATED_BYTES + " bytes");
+            }
+        }
+    }
+
+    private static boolean endsWithTail(byte[] data, int size) {
+        if (size < TAIL_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < TAIL_BYTES.length; i++) {
+            if (data[size - TAIL_BYTES.length + i] != TAIL_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---------- 协商 ----------
+
+    @Override
+    public boolean acceptProvidedExtensionAsServer(String inputExtension) {
+        for (String extension : inputExtension.split(",")) {
+            ExtensionRequestData request = ExtensionRequestData.parseExtensionRequest(extension);
+            if (!EXTENSION_NAME.equalsIgnoreCase(request.getExtensionName())) {
+                continue;
+            }
+            Map<String, String> parameters = request.getExtensionParameters();
+            // Deflater 固定使用15位窗口，对端要求更小的窗口时拒绝这一项
+            String windowBits = parameters.get(SERVER_MAX_WINDOW_BITS);
+            if (windowBits != null && !windowBits.isEmpty() && !"15".equals(windowBits)) {
+                continue;
+            }
+            peerNoContextTakeover = parameters.containsKey(CLIENT_NO_CONTEXT_TAKEOVER);
+            dictionaryNegotiated = dictionaryEnabled && DICTIONARY_VERSION.equals(parameters.get(SDP_DICTIONARY));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean acceptProvidedExtensionAsClient(String inputExtension) {
+        for (String extension : inputExtension.split(",")) {
+            ExtensionRequestData response = ExtensionRequestData.parseExtensionRequest(extension);
+            if (!EXTENSION_NAME.equalsIgnoreCase(response.getExtensionName())) {
+                continue;
+            }
+            Map<String, String> parameters = response.getExtensionParameters();
+            peerNoContextTakeover = parameters.containsKey(SERVER_NO_CONTEXT_TAKEOVER);
+            dictionaryNegotiated = dictionaryEnabled && DICTIONARY_VERSION.equals(parameters.get(SDP_DICTIONARY));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String getProvidedExtensionAsClient() {
+        return EXTENSION_NAME + "; " + SERVER_NO_CONTEXT_TAKEOVER + "; " + CLIENT_NO_CONTEXT_TAKEOVER
+                + (dictionaryEnabled ? "; " + SDP_DICTIONARY + "=" + DICTIONARY_VERSION : "");
+    }
+
+    @Override
+    public String getProvidedExtensionAsServer() {
+        return EXTENSION_NAME + "; " + SERVER_NO_CONTEXT_TAKEOVER
+                + (peerNoContextTakeover ? "; " + CLIENT_NO_CONTEXT_TAKEOVER : "")
+                + (dictionaryNegotiated ? "; " + SDP_DICTIONARY + "=" + DICTIONARY_VERSION : "");
+    }
+
+    @Override
+    public IExtension copyInstance() {
+        return new SdpDeflateExtension(getThreshold(), dictionaryEnabled, stats);
+    }
+
+    /**
+     * 压缩结果只取决于阈值和是否使用字典，相等的连接可以共用已压缩的帧
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SdpDeflateExtension that = (SdpDeflateExtension) o;
+        return getThreshold() == that.getThreshold() && dictionaryNegotiated == that.dictionaryNegotiated;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * getThreshold() + (dictionaryNegotiated ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "SdpDeflateExtension(dictionary=" + dictionaryNegotiated + ")";
+    }
+
+    // ---------- 字典 ----------
+
+    /**
+     * 预置字典：常见的SDP行、candidate片段和JSON信令的固定部分
+     * zlib 对靠近字典末尾的内容编码更短，最常用的JSON形式放在最后
+     */
+    private static byte[] buildDictionary() {
+        String sdp = String.join("\r\n",
+                "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level",
+                "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time",
+                "a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01",
+                "a=extmap:4 urn:ietf:params:rtp-hdrext:sdes:mid",
+                "a=extmap:5 urn:ietf:params:rtp-hdrext:sdes:rtp-stream-id",
+                "a=extmap:6 urn:ietf:params:rtp-hdrext:sdes:repaired-rtp-stream-id",
+                "a=extmap:7 http://www.webrtc.org/experiments/rtp-hdrext/video-timing",
+                "a=extmap:8 http://www.webrtc.org/experiments/rtp-hdrext/color-space",
+                "a=extmap:11 http://www.webrtc.org/experiments/rtp-hdrext/video-content-type",
+                "a=extmap:12 http://www.webrtc.org/experiments/rtp-hdrext/playout-delay",
+                "a=extmap:13 urn:3gpp:video-orientation",
+                "a=extmap:14 urn:ietf:params:rtp-hdrext:toffset",
+                "a=rtpmap:96 VP8/90000",
+                "a=rtcp-fb:96 goog-remb",
+                "a=rtcp-fb:96 transport-cc",
+                "a=rtcp-fb:96 ccm fir",
+                "a=rtcp-fb:96 nack",
+                "a=rtcp-fb:96 nack pli",
+                "a=rtpmap:97 rtx/90000",
+                "a=fmtp:97 apt=96",
+                "a=rtpmap:98 VP9/90000",
+                "a=fmtp:98 profile-id=0",
+                "a=rtpmap:35 AV1/90000",
+                "a=rtpmap:102 H264/90000",
+                "a=fmtp:102 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42001f",
+                "a=fmtp:108 level-asymmetry-allowed=1;packetization-mode=0;profile-level-id=42e01f",
+                "a=fmtp:125 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f",
+                "a=rtpmap:114 red/90000",
+                "a=rtpmap:116 ulpfec/90000",
+                "a=rtpmap:63 red/48000/2",
+                "a=fmtp:63 111/111",
+                "a=rtpmap:9 G722/8000",
+                "a=rtpmap:0 PCMU/8000",
+                "a=rtpmap:8 PCMA/8000",
+                "a=rtpmap:13 CN/8000",
+                "a=rtpmap:110 telephone-event/48000",
+                "a=rtpmap:126 telephone-event/8000",
+                "a=rtpmap:111 opus/48000/2",
+                "a=rtcp-fb:111 transport-cc",
+                "a=fmtp:111 minptime=10;useinbandfec=1",
+                "m=application 9 UDP/DTLS/SCTP webrtc-datachannel",
+                "a=sctp-port:5000",
+                "a=max-message-size:262144",
+                "m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9 0 8 13 110 126",
+                "m=video 9 UDP/TLS/RTP/SAVPF 96 97 98 99 100 101 102 103 104 105 106 107 108 109 114 115 116",
+                "c=IN IP4 0.0.0.0",
+                "a=rtcp:9 IN IP4 0.0.0.0",
+                "a=ice-ufrag:",
+                "a=ice-pwd:",
+                "a=ice-options:trickle",
+                "a=fingerprint:sha-256 ",
+                "a=setup:actpass",
+                "a=setup:active",
+                "a=mid:0",
+                "a=mid:1",
+                "a=sendrecv",
+                "a=sendonly",
+                "a=recvonly",
+                "a=msid:",
+                "a=rtcp-mux",
+                "a=rtcp-rsize",
+                "a=ssrc-group:FID ",
+                "a=ssrc:",
+                " cname:",
+                " msid:",
+                "v=0",
+                "o=- ",
+                " 2 IN IP4 127.0.0.1",
+                "s=-",
+                "t=0 0",
+                "a=group:BUNDLE 0 1 2",
+                "a=extmap-allow-mixed",
+                "a=msid-semantic: WMS",
+                "");
+        String candidate = "candidate:1 1 udp 2122260223 192.168.1.2 50000 typ host generation 0 ufrag"
+                + " network-id 1 network-cost 10"
+                + "candidate:2 1 udp 1686052607 203.0.113.5 50000 typ srflx raddr 192.168.1.2 rport 50000"
+                + "candidate:3 1 tcp 1518280447 192.168.1.2 9 typ host tcptype active"
+                + " typ relay raddr ";
+        String json = "{\"type\":\"candidate\",\"candidate\":\"" + candidate
+                + "\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0,\"toClientId\":\"client-\",\"fromClientId\":\"client-\"}"
+                + "{\"type\":\"answer\",\"sdp\":\"" + sdp.replace("\r\n", "\\r\\n") + "\"}"
+                + "{\"type\":\"offer\",\"sdp\":\"";
+        return (sdp + candidate + json).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,167 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接会话
+ *
+ * 在 onOpen 时创建并通过 WebSocket.setAttachment 挂在连接上，保存转发需要的所有连接状态：
+ * 角色、连接ID（及预先编码好的JSON/二进制形式）、设备ID（服务端为自己的设备，客户端为目标设备）、
+ * 对端能力、发送队列、限速器和计数。处理消息时直接从连接取会话，不再按连接查表；
+ * 客户端 -> 设备只需一次按 deviceId 的查找，设备 -> 客户端只需一次按 clientId 的查找。
+ *
+ * 会话在连接关闭时由 close 统一标记，之后的发送都返回 CLOSED。
+ */
+final class Session {
+
+    enum Role {
+        DEVICE,
+        CLIENT;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    final WebSocket conn;
+    final Role role;
+    final String id;
+    /** JSON字符串形式的ID（含引号），用于写入 fromClientId */
+    final String quotedId;
+    /** UTF-8编码的ID，用于二进制协议的 fromClientId */
+    final byte[] idBytes;
+    final String deviceId;
+    final boolean batchCapable;
+    final boolean binary;
+    final OutboundQueue outbound;
+    /** 按消息类型下标的限速器，最后一个为所有消息的限速器；未开启限速时为null */
+    private final RateLimiter[] rateLimiters;
+
+    // 计数：收到的消息只在该连接的处理线程上累加，发出的消息可能来自多个线程
+    private long messagesReceived;
+    private long bytesReceived;
+    private final LongAdder messagesSent = new LongAdder();
+    // 最近一次收到任何帧（消息、ping、pong）的时间，心跳检查据此跳过活跃的连接
+    private volatile long lastActivityNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    Session(WebSocket conn, Role role, String id, String deviceId, boolean batchCapable, boolean binary,
+            OutboundQueue outbound, RateLimiter[] rateLimiters) {
+        this.conn = conn;
+        this.role = role;
+        this.id = id;
+        this.quotedId = JSONObject.quote(id);
+        this.idBytes = id.getBytes(StandardCharsets.UTF_8);
+        this.deviceId = deviceId;
+        this.batchCapable = batchCapable;
+        this.binary = binary;
+        this.outbound = outbound;
+        this.rateLimiters = rateLimiters;
+    }
+
+    /**
+     * 为一个会话创建限速器
+     * @param limits 按消息类型下标的限速配置，最后一个为所有消息；未配置的为null
+     * @return 没有任何限速时返回null
+     */
+    static RateLimiter[] newRateLimiters(RateLimiter.Limit[] limits) {
+        if (limits == null) {
+            return null;
+        }
+        RateLimiter[] limiters = new RateLimiter[limits.length];
+        for (int i = 0; i < limits.length; i++) {
+            if (limits[i] != null) {
+                limiters[i] = new RateLimiter(limits[i]);
+            }
+        }
+        return limiters;
+    }
+
+    /**
+     * 按限速取一个令牌
+     * @param type 消息类型，null 表示该连接的所有消息
+     * @return 超过限速时返回false
+     */
+    boolean tryAcquire(SignalingMetrics.MessageType type) {
+        if (rateLimiters == null) {
+            return true;
+        }
+        RateLimiter limiter = rateLimiters[type != null ? type.ordinal() : rateLimiters.length - 1];
+        return limiter == null || limiter.tryAcquire();
+    }
+
+    /**
+     * 连接上的会话，连接尚未打开时返回null
+     */
+    static Session of(WebSocket conn) {
+        return conn != null ? conn.getAttachment() : null;
+    }
+
+    boolean isDevice() {
+        return role == Role.DEVICE;
+    }
+
+    /**
+     * 连接仍可发送
+     */
+    boolean isOpen() {
+        return !closed && !conn.isClosed();
+    }
+
+    /**
+     * 会话已结束（连接关闭或被同一设备/客户端的新连接取代）
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    void recordReceived(int bytes) {
+        messagesReceived++;
+        bytesReceived += bytes;
+    }
+
+    /**
+     * 收到对端的帧，连接仍然存活
+     */
+    void touch(long nanos) {
+        lastActivityNanos = nanos;
+    }
+
+    /**
+     * 距离最近一次收到帧的时间（纳秒）
+     */
+    long idleNanos(long now) {
+        return now - lastActivityNanos;
+    }
+
+    void recordSent() {
+        messagesSent.increment();
+    }
+
+    long messagesReceived() {
+        return messagesReceived;
+    }
+
+    long bytesReceived() {
+        return bytesReceived;
+    }
+
+    long messagesSent() {
+        return messagesSent.sum();
+    }
+
+    /**
+     * 标记关闭并清空发送队列，返回false表示已经关闭过
+     */
+    synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        outbound.clear();
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+package com.wingos.signaling;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端会话恢复
+ *
+ * 客户端连接时在连接确认中下发一次性的恢复令牌（resumeToken）。客户端断线后在 ttlMs 内
+ * 带着令牌重新连接，可以取回原来的客户端ID和目标设备，设备端的 PeerConnection 仍按原ID
+ * 路由，网络抖动只需要一次 WebSocket 握手，不需要重新协商。
+ *
+ * 令牌在连接期间一直有效（客户端可能先于服务器发现连接断开），使用后作废并下发新令牌；
+ * 断开后超过 ttlMs 未恢复的令牌由 expire 清理。
+ */
+final class SessionResumption {
+
+    /**
+     * 可恢复的会话
+     */
+    static final class Resumable {
+        final String clientId;
+        final String deviceId;
+        final String token;
+        volatile long detachedAt; // 0 表示连接中
+
+        Resumable(String clientId, String deviceId, String token) {
+            this.clientId = clientId;
+            this.deviceId = deviceId;
+            this.token = token;
+        }
+    }
+
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlNanos;
+    private final Map<String, Resumable> sessionsByToken = new ConcurrentHashMap<>();
+    private final Map<String, Resumable> sessionsByClient = new ConcurrentHashMap<>();
+
+    SessionResumption(long ttlMs) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * 为连接中的客户端下发新令牌，之前的令牌作废
+     */
+    String issue(String clientId, String deviceId) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Resumable session = new Resumable(clientId, deviceId, token);
+        Resumable previous = sessionsByClient.put(clientId, session);
+        if (previous != null) {
+            sessionsByToken.remove(previous.token, previous);
+        }
+        sessionsByToken.put(token, session);
+        return token;
+    }
+
+    /**
+     * 客户端断开，开始计算令牌的有效期
+     */
+    void detach(String clientId) {
+        Resumable session = sessionsByClient.get(clientId);
+        if (session != null) {
+            session.detachedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * 用令牌取回会话，令牌随即作废
+     * @return 令牌无效、已过期或目标设备不一致时返回null
+     */
+    Resumable resume(String token, String deviceId) {
+        Resumable session = sessionsByToken.remove(token);
+        if (session == null) {
+            return null;
+        }
+        if (isExpired(session, System.nanoTime()) || !session.deviceId.equals(deviceId)) {
+            sessionsByClient.remove(session.clientId, session);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * 清理断开后超过有效期的会话
+     */
+    void expire() {
+        long now = System.nanoTime();
+        Iterator<Resumable> it = sessionsByClient.values().iterator();
+        while (it.hasNext()) {
+            Resumable session = it.next();
+            if (isExpired(session, now)) {
+                it.remove();
+                sessionsByToken.remove(session.token, session);
+            }
+        }
+    }
+
+    private boolean isExpired(Resumable session, long now) {
+        long detachedAt = session.detachedAt;
+        return detachedAt != 0 && now - detachedAt > ttlNanos;
+    }
+
+    /**
+     * 保留的会话数（包括连接中的客户端）
+     */
+    int size() {
+        return sessionsByClient.size();
+    }
+}
@@ -0,0 +1,632 @@
+package com.wingos.signaling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 信令服务器配置
+ *
+ * 所有选项都可以通过命令行参数 --name=value 设置，未设置时使用默认值。
+ */
+public class SignalingConfig {
+    private static final Logger logger = LoggerFactory.getLogger(SignalingConfig.class);
+
+    /** 限速配置中表示连接的所有消息 */
+    static final String RATE_LIMIT_ALL = "all";
+    /** 事件日志写入 slf4j */
+    static final String EVENT_LOG_SLF4J = "log";
+    /** 关闭事件日志 */
+    static final String EVENT_LOG_OFF = "off";
+
+    // ICE candidate 合并发送：窗口时间（毫秒，0表示关闭）和单批最大数量
+    private long candidateBatchWindowMs = 0;
+    private int candidateBatchMaxCount = 20;
+
+    // 每个连接的发送队列上限和超限处理策略
+    private int outboundMaxMessages = 1024;
+    private long outboundMaxBytes = 4L * 1024 * 1024;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST_CANDIDATE;
+
+    // 设备离线时暂存客户端消息：保留时间（毫秒，0表示关闭）和每个设备的容量
+    private long pendingTtlMs = 0;
+    private int pendingMaxMessages = 256;
+    private long pendingMaxBytes = 1024 * 1024;
+
+    // 客户端断线后恢复原会话（客户端ID和路由）的有效期（毫秒，0表示关闭）
+    private long resumeTtlMs = 30000;
+
+    // WSS：密钥库路径（为空表示使用 ws://）、密码（默认读取环境变量 SIGNALING_KEYSTORE_PASSWORD）和类型，
+    // TLS会话缓存的会话数和有效期（秒），握手计算线程数（0表示CPU核数）和缓冲区池保留的空闲缓冲区数
+    private String tlsKeystore = null;
+    private String tlsKeystorePassword = System.getenv("SIGNALING_KEYSTORE_PASSWORD");
+    private String tlsKeystoreType = "PKCS12";
+    private int tlsSessionCacheSize = 20000;
+    private int tlsSessionTimeoutSeconds = 3600;
+    private int tlsHandshakeThreads = 0;
+    private int tlsPooledBuffers = 3072;
+
+    // 低内存模式：WSS连接空闲时不持有TLS缓冲区，只在收发数据时从共享的直接缓冲区池中借用（池的上限同 tlsPooledBuffers）
+    private boolean lowMemory = false;
+
+    // 接收连接的 WebSocketServer 实例数，多于1个时通过 SO_REUSEPORT 绑定同一端口（仅Linux等支持的平台）
+    private int acceptors = 1;
+
+    // 消息处理线程：WebSocket解码线程数（0表示CPU核数），按连接分条的处理线程数（0表示在解码线程上处理）和每条的队列长度
+    private int decoders = 0;
+    private int processingStripes = 0;
+    private int processingQueueSize = 1024;
+
+    // permessage-deflate：是否开启、压缩阈值（字节）和是否使用SDP预置字典
+    private boolean deflateEnabled = false;
+    private int deflateThreshold = SdpDeflateExtension.DEFAULT_THRESHOLD;
+    private boolean deflateDictionary = true;
+
+    // 准入控制：总连接数和单个IP的连接数上限（0表示不限）
+    private int maxConnections = 0;
+    private int maxConnectionsPerIp = 0;
+
+    // 每个连接的限速：all（所有消息）或消息类型 -> 每秒数量/突发数量，未配置的不限
+    private final Map<String, RateLimiter.Limit> rateLimits = new LinkedHashMap<>();
+
+    // 心跳：检查间隔（毫秒，0表示使用 Java-WebSocket 自带的60秒检测）以及设备和客户端多久没有收到任何帧后关闭
+    private long heartbeatIntervalMs = 15000;
+    private long deviceTimeoutMs = 45000;
+    private long clientTimeoutMs = 90000;
+
+    // 事件日志：写入位置（log、off或文件路径）、缓冲区大小、detail最大长度和按事件类型的采样率
+    private String eventLog = EVENT_LOG_SLF4J;
+    private int eventLogBufferSize = 8192;
+    private int eventLogMaxDetail = 256;
+    private final Map<EventLog.Type, Double> eventSampling = new EnumMap<>(EventLog.Type.class);
+
+    // 指标：/metrics HTTP端口（0表示关闭）和是否注册JMX
+    private int metricsPort = 0;
+    private boolean jmxEnabled = true;
+
+    /**
+     * 从命令行参数解析配置，无法识别的参数忽略
+     */
+    public static SignalingConfig fromArgs(String[] args) {
+        SignalingConfig config = new SignalingConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                continue;
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            try {
+                config.apply(name, value);
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid value for --{}: {}", name, value);
+                System.exit(1);
+            }
+        }
+        return config;
+    }
+
+    private void apply(String name, String value) {
+        switch (name) {
+            case "candidate-batch-ms":
+                setCandidateBatchWindowMs(Long.parseLong(value));
+                break;
+            case "candidate-batch-max":
+                setCandidateBatchMaxCount(Integer.parseInt(value));
+                break;
+            case "outbound-max-messages":
+                setOutboundMaxMessages(Integer.parseInt(value));
+                break;
+            case "outbound-max-bytes":
+                setOutboundMaxBytes(Long.parseLong(value));
+                break;
+            case "slow-consumer-policy":
+                setSlowConsumerPolicy(parseEnum(SlowConsumerPolicy.class, value));
+                break;
+            case "pending-ttl-ms":
+                setPendingTtlMs(Long.parseLong(value));
+                break;
+            case "pending-max-messages":
+                setPendingMaxMessages(Integer.parseInt(value));
+                break;
+            case "pending-max-bytes":
+                setPendingMaxBytes(Long.parseLong(value));
+                break;
+            case "resume-ttl-ms":
+                setResumeTtlMs(Long.parseLong(value));
+                break;
+            case "tls-keystore":
+                setTlsKeystore(value);
+                break;
+            case "tls-keystore-password":
+                setTlsKeystorePassword(value);
+                break;
+            case "tls-keystore-type":
+                setTlsKeystoreType(value);
+                break;
+            case "tls-session-cache-size":
+                setTlsSessionCacheSize(Integer.parseInt(value));
+                break;
+            case "tls-session-timeout-s":
+                setTlsSessionTimeoutSeconds(Integer.parseInt(value));
+                break;
+            case "tls-handshake-threads":
+                setTlsHandshakeThreads(Integer.parseInt(value));
+                break;
+            case "tls-pooled-buffers":
+                setTlsPooledBuffers(Integer.parseInt(value));
+                break;
+            case "low-memory":
+                setLowMemory(parseBoolean(value));
+                break;
+            case "acceptors":
+                setAcceptors(Integer.parseInt(value));
+                break;
+            case "decoders":
+                setDecoders(Integer.parseInt(value));
+                break;
+            case "processing-stripes":
+                setProcessingStripes(Integer.parseInt(value));
+                break;
+            case "processing-queue-size":
+                setProcessingQueueSize(Integer.parseInt(value));
+                break;
+            case "deflate":
+                setDeflateEnabled(parseBoolean(value));
+                break;
+            case "deflate-threshold":
+                setDeflateThreshold(Integer.parseInt(value));
+                break;
+            case "deflate-dictionary":
+                setDeflateDictionary(parseBoolean(value));
+                break;
+            case "max-connections":
+                setMaxConnections(Integer.parseInt(value));
+                break;
+            case "max-connections-per-ip":
+                setMaxConnectionsPerIp(Integer.parseInt(value));
+                break;
+            case "rate-limits":
+                // 如 all:100/200,offer:2/10
+                for (String item : value.split(",")) {
+                    int colon = item.indexOf(':');
+                    if (colon < 0) {
+                        throw new IllegalArgumentException("Invalid rate limit: " + item);
+                    }
+                    RateLimiter.Limit limit = RateLimiter.Limit.parse(item.substring(colon + 1));
+                    setRateLimit(item.substring(0, colon).trim(), limit.perSecond, limit.burst);
+                }
+                break;
+            case "heartbeat-interval-ms":
+                setHeartbeatIntervalMs(Long.parseLong(value));
+                break;
+            case "device-timeout-ms":
+                setDeviceTimeoutMs(Long.parseLong(value));
+                break;
+            case "client-timeout-ms":
+                setClientTimeoutMs(Long.parseLong(value));
+                break;
+            case "event-log":
+                setEventLog(value);
+                break;
+            case "event-log-buffer":
+                setEventLogBufferSize(Integer.parseInt(value));
+                break;
+            case "event-log-max-detail":
+                setEventLogMaxDetail(Integer.parseInt(value));
+                break;
+            case "event-sampling":
+                // 如 candidate:0.01,offer:1
+                for (String item : value.split(",")) {
+                    int colon = item.indexOf(':');
+                    if (colon < 0) {
+                        throw new IllegalArgumentException("Invalid event sampling: " + item);
+                    }
+                    setEventSampling(item.substring(0, colon).trim(), Double.parseDouble(item.substring(colon + 1).trim()));
+                }
+                break;
+            case "metrics-port":
+                setMetricsPort(Integer.parseInt(value));
+                break;
+            case "jmx":
+                setJmxEnabled(parseBoolean(value));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 解析枚举值，接受 drop-oldest-candidate 形式
+     */
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        return Enum.valueOf(type, value.trim().toUpperCase().replace('-', '_'));
+    }
+
+    private static boolean parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException(value);
+    }
+
+    public long getCandidateBatchWindowMs() {
+        return candidateBatchWindowMs;
+    }
+
+    public SignalingConfig setCandidateBatchWindowMs(long candidateBatchWindowMs) {
+        this.candidateBatchWindowMs = candidateBatchWindowMs;
+        return this;
+    }
+
+    public int getCandidateBatchMaxCount() {
+        return candidateBatchMaxCount;
+    }
+
+    public SignalingConfig setCandidateBatchMaxCount(int candidateBatchMaxCount) {
+        this.candidateBatchMaxCount = candidateBatchMaxCount;
+        return this;
+    }
+
+    public boolean isCandidateBatchingEnabled() {
+        return candidateBatchWindowMs > 0 && candidateBatchMaxCount > 1;
+    }
+
+    public int getOutboundMaxMessages() {
+        return outboundMaxMessages;
+    }
+
+    public SignalingConfig setOutboundMaxMessages(int outboundMaxMessages) {
+        this.outboundMaxMessages = outboundMaxMessages;
+        return this;
+    }
+
+    public long getOutboundMaxBytes() {
+        return outboundMaxBytes;
+    }
+
+    public SignalingConfig setOutboundMaxBytes(long outboundMaxBytes) {
+        this.outboundMaxBytes = outboundMaxBytes;
+        return this;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public SignalingConfig setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        return this;
+    }
+
+    public long getPendingTtlMs() {
+        return pendingTtlMs;
+    }
+
+    public SignalingConfig setPendingTtlMs(long pendingTtlMs) {
+        this.pendingTtlMs = pendingTtlMs;
+        return this;
+    }
+
+    public int getPendingMaxMessages() {
+        return pendingMaxMessages;
+    }
+
+    public SignalingConfig setPendingMaxMessages(int pendingMaxMessages) {
+        this.pendingMaxMessages = pendingMaxMessages;
+        return this;
+    }
+
+    public long getPendingMaxBytes() {
+        return pendingMaxBytes;
+    }
+
+    public SignalingConfig setPendingMaxBytes(long pendingMaxBytes) {
+        this.pendingMaxBytes = pendingMaxBytes;
+        return this;
+    }
+
+    public boolean isPendingBufferEnabled() {
+        return pendingTtlMs > 0 && pendingMaxMessages > 0;
+    }
+
+    public long getResumeTtlMs() {
+        return resumeTtlMs;
+    }
+
+    public SignalingConfig setResumeTtlMs(long resumeTtlMs) {
+        this.resumeTtlMs = resumeTtlMs;
+        return this;
+    }
+
+    public boolean isResumeEnabled() {
+        return resumeTtlMs > 0;
+    }
+
+    public String getTlsKeystore() {
+        return tlsKeystore;
+    }
+
+    public SignalingConfig setTlsKeystore(String tlsKeystore) {
+        this.tlsKeystore = tlsKeystore;
+        return this;
+    }
+
+    public String getTlsKeystorePassword() {
+        return tlsKeystorePassword;
+    }
+
+    public SignalingConfig setTlsKeystorePassword(String tlsKeystorePassword) {
+        this.tlsKeystorePassword = tlsKeystorePassword;
+        return this;
+    }
+
+    public String getTlsKeystoreType() {
+        return tlsKeystoreType;
+    }
+
+    public SignalingConfig setTlsKeystoreType(String tlsKeystoreType) {
+        this.tlsKeystoreType = tlsKeystoreType;
+        return this;
+    }
+
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    public SignalingConfig setTlsSessionCacheSize(int tlsSessionCacheSize) {
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+        return this;
+    }
+
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    public SignalingConfig setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+        this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+        return this;
+    }
+
+    public int getTlsHandshakeThreads() {
+        return tlsHandshakeThreads;
+    }
+
+    public SignalingConfig setTlsHandshakeThreads(int tlsHandshakeThreads) {
+        this.tlsHandshakeThreads = tlsHandshakeThreads;
+        return this;
+    }
+
+    public int getTlsPooledBuffers() {
+        return tlsPooledBuffers;
+    }
+
+    public SignalingConfig setTlsPooledBuffers(int tlsPooledBuffers) {
+        this.tlsPooledBuffers = tlsPooledBuffers;
+        return this;
+    }
+
+    public boolean isTlsEnabled() {
+        return tlsKeystore != null && !tlsKeystore.isEmpty();
+    }
+
+    public boolean isLowMemory() {
+        return lowMemory;
+    }
+
+    public SignalingConfig setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
+        return this;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public SignalingConfig setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+        return this;
+    }
+
+    public int getDecoders() {
+        return decoders;
+    }
+
+    public SignalingConfig setDecoders(int decoders) {
+        this.decoders = decoders;
+        return this;
+    }
+
+    public int getProcessingStripes() {
+        return processingStripes;
+    }
+
+    public SignalingConfig setProcessingStripes(int processingStripes) {
+        this.processingStripes = processingStripes;
+        return this;
+    }
+
+    public int getProcessingQueueSize() {
+        return processingQueueSize;
+    }
+
+    public SignalingConfig setProcessingQueueSize(int processingQueueSize) {
+        this.processingQueueSize = processingQueueSize;
+        return this;
+    }
+
+    public boolean isStripedProcessingEnabled() {
+        return processingStripes > 0 && processingQueueSize > 0;
+    }
+
+    public boolean isDeflateEnabled() {
+        return deflateEnabled;
+    }
+
+    public SignalingConfig setDeflateEnabled(boolean deflateEnabled) {
+        this.deflateEnabled = deflateEnabled;
+        return this;
+    }
+
+    public int getDeflateThreshold() {
+        return deflateThreshold;
+    }
+
+    public SignalingConfig setDeflateThreshold(int deflateThreshold) {
+        this.deflateThreshold = deflateThreshold;
+        return this;
+    }
+
+    public boolean isDeflateDictionary() {
+        return deflateDictionary;
+    }
+
+    public SignalingConfig setDeflateDictionary(boolean deflateDictionary) {
+        this.deflateDictionary = deflateDictionary;
+        return this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public SignalingConfig setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public int getMaxConnectionsPerIp() {
+        return maxConnectionsPerIp;
+    }
+
+    public SignalingConfig setMaxConnectionsPerIp(int maxConnectionsPerIp) {
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+        return this;
+    }
+
+    public boolean isAdmissionControlEnabled() {
+        return maxConnections > 0 || maxConnectionsPerIp > 0;
+    }
+
+    /**
+     * 设置每个连接的限速
+     * @param type all 表示该连接的所有消息，或 offer/answer/candidate/candidates
+     */
+    public SignalingConfig setRateLimit(String type, double perSecond, int burst) {
+        if (!RATE_LIMIT_ALL.equals(type) && SignalingMetrics.MessageType.of(type) == SignalingMetrics.MessageType.OTHER) {
+            throw new IllegalArgumentException("Unknown rate limit type: " + type);
+        }
+        rateLimits.put(type, new RateLimiter.Limit(perSecond, burst));
+        return this;
+    }
+
+    /**
+     * 已配置的限速：all 或消息类型 -> 限速
+     */
+    Map<String, RateLimiter.Limit> getRateLimits() {
+        return Collections.unmodifiableMap(rateLimits);
+    }
+
+    public long getHeartbeatIntervalMs() {
+        return heartbeatIntervalMs;
+    }
+
+    public SignalingConfig setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        return this;
+    }
+
+    public long getDeviceTimeoutMs() {
+        return deviceTimeoutMs;
+    }
+
+    public SignalingConfig setDeviceTimeoutMs(long deviceTimeoutMs) {
+        this.deviceTimeoutMs = deviceTimeoutMs;
+        return this;
+    }
+
+    public long getClientTimeoutMs() {
+        return clientTimeoutMs;
+    }
+
+    public SignalingConfig setClientTimeoutMs(long clientTimeoutMs) {
+        this.clientTimeoutMs = clientTimeoutMs;
+        return this;
+    }
+
+    public boolean isHeartbeatEnabled() {
+        return heartbeatIntervalMs > 0;
+    }
+
+    public String getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * @param eventLog log 写入 slf4j，off 关闭，其它值为追加写入的文件路径
+     */
+    public SignalingConfig setEventLog(String eventLog) {
+        this.eventLog = eventLog;
+        return this;
+    }
+
+    public int getEventLogBufferSize() {
+        return eventLogBufferSize;
+    }
+
+    public SignalingConfig setEventLogBufferSize(int eventLogBufferSize) {
+        this.eventLogBufferSize = eventLogBufferSize;
+        return this;
+    }
+
+    public int getEventLogMaxDetail() {
+        return eventLogMaxDetail;
+    }
+
+    public SignalingConfig setEventLogMaxDetail(int eventLogMaxDetail) {
+        this.eventLogMaxDetail = eventLogMaxDetail;
+        return this;
+    }
+
+    /**
+     * 设置一种事件的采样率
+     * @param type offer/answer/candidate/held/dropped/invalid
+     * @param rate 0~1，0表示不记录
+     */
+    public SignalingConfig setEventSampling(String type, double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Invalid sampling rate: " + rate);
+        }
+        eventSampling.put(EventLog.Type.of(type), rate);
+        return this;
+    }
+
+    double getEventSampling(EventLog.Type type) {
+        Double rate = eventSampling.get(type);
+        return rate != null ? rate : type.defaultSampling;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public SignalingConfig setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+        return this;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public SignalingConfig setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+}
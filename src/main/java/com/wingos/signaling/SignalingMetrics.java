@@ -0,0 +1,579 @@
+package com.wingos.signaling;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 信令服务器指标
+ *
+ * 计数器和直方图都是预先创建的 LongAdder，按枚举下标访问，
+ * 热路径上的记录操作不分配对象；连接数、队列深度等量在读取时才从服务器计算。
+ *
+ * 通过 /metrics（Prometheus 文本格式）和 JMX 暴露。
+ */
+public final class SignalingMetrics implements SignalingMetricsMXBean {
+
+    /**
+     * 统计转发延迟的消息类型
+     */
+    public enum MessageType {
+        OFFER, ANSWER, CANDIDATE, CANDIDATES, OTHER;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+
+        static MessageType of(String type) {
+            switch (type) {
+                case "offer":
+                    return OFFER;
+                case "answer":
+                    return ANSWER;
+                case "candidate":
+                    return CANDIDATE;
+                case CandidateBatcher.BATCH_TYPE:
+                    return CANDIDATES;
+                default:
+                    return OTHER;
+            }
+        }
+    }
+
+    /**
+     * 消息丢弃原因
+     */
+    public enum DropReason {
+        /** 目标设备不在线 */
+        NO_DEVICE,
+        /** 目标客户端不存在或不属于该设备 */
+        NO_CLIENT,
+        /** 接收方积压，丢弃了较早的 candidate */
+        SLOW_CONSUMER,
+        /** 离线暂存的消息过期 */
+        HELD_EXPIRED,
+        /** 离线暂存超出容量或被新 offer 取代 */
+        HELD_DISCARDED,
+        /** 超过连接的限速 */
+        RATE_LIMITED;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 错误原因
+     */
+    public enum ErrorReason {
+        /** 无法解析的消息 */
+        INVALID_MESSAGE,
+        /** 未知的消息类型 */
+        UNKNOWN_TYPE,
+        /** 处理或转发消息时的异常 */
+        HANDLER,
+        /** WebSocket 连接错误 */
+        WEBSOCKET;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final String[] BUCKET_LABELS = new String[LatencyHistogram.BOUNDS_NANOS.length + 1];
+
+    static {
+        for (int i = 0; i < LatencyHistogram.BOUNDS_NANOS.length; i++) {
+            BUCKET_LABELS[i] = Double.toString(LatencyHistogram.BOUNDS_NANOS[i] / 1e9);
+        }
+        BUCKET_LABELS[LatencyHistogram.BOUNDS_NANOS.length] = "+Inf";
+    }
+
+    private final SignalingServer server;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[MessageType.values().length];
+    private final LongAdder[] drops = newAdders(DropReason.values().length);
+    private final LongAdder[] errors = newAdders(ErrorReason.values().length);
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder processingQueueFull = new LongAdder();
+    private final LongAdder resumedSessions = new LongAdder();
+    private final LongAdder eventLogDropped = new LongAdder();
+    private final LongAdder heartbeatPings = new LongAdder();
+    private final LongAdder heartbeatSkipped = new LongAdder();
+    private final LongAdder[] reapedSessions = newAdders(Session.Role.values().length);
+    private final LongAdder[] rejectedConnections = newAdders(AdmissionControl.Rejection.values().length);
+    // 按消息类型下标，最后一个为所有消息的限速
+    private final LongAdder[] rateLimited = newAdders(MessageType.values().length + 1);
+    private final SdpDeflateExtension.Stats deflate = new SdpDeflateExtension.Stats();
+
+    // 每秒速率，由 sampleRates 定时更新
+    private long lastMessagesReceived;
+    private long lastBytesReceived;
+    private long lastMessagesSent;
+    private long lastBytesSent;
+    private volatile long messagesReceivedPerSecond;
+    private volatile long bytesReceivedPerSecond;
+    private volatile long messagesSentPerSecond;
+    private volatile long bytesSentPerSecond;
+
+    SignalingMetrics(SignalingServer server) {
+        this.server = server;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    // ---------- 记录（热路径） ----------
+
+    /**
+     * 收到一条消息，字节数按字符数统计（信令消息为ASCII）
+     */
+    void recordReceived(int length) {
+        messagesReceived.increment();
+        bytesReceived.add(length);
+    }
+
+    void recordSent(int length) {
+        messagesSent.increment();
+        bytesSent.add(length);
+    }
+
+    /**
+     * 记录从收到消息到发送调用返回的耗时
+     */
+    void recordForward(MessageType type, long nanos) {
+        latencies[type.ordinal()].record(nanos);
+    }
+
+    void recordDrop(DropReason reason) {
+        drops[reason.ordinal()].increment();
+    }
+
+    void recordError(ErrorReason reason) {
+        errors[reason.ordinal()].increment();
+    }
+
+    /**
+     * 处理线程的队列已满，解码线程等待
+     */
+    void recordProcessingQueueFull() {
+        processingQueueFull.increment();
+    }
+
+    /**
+     * 心跳检查：发送了ping，或因最近收到过帧而跳过
+     */
+    void recordHeartbeat(boolean pinged) {
+        (pinged ? heartbeatPings : heartbeatSkipped).increment();
+    }
+
+    /**
+     * 超时未收到任何帧，关闭了连接
+     */
+    void recordReapedSession(Session.Role role) {
+        reapedSessions[role.ordinal()].increment();
+    }
+
+    /**
+     * 事件日志的缓冲区已满，丢弃了一个事件
+     */
+    void recordEventLogDropped() {
+        eventLogDropped.increment();
+    }
+
+    /**
+     * 握手时因准入控制拒绝了连接
+     */
+    void recordRejectedConnection(AdmissionControl.Rejection reason) {
+        rejectedConnections[reason.ordinal()].increment();
+    }
+
+    /**
+     * 消息超过限速被丢弃
+     * @param type 超过的限速，null 表示该连接所有消息的限速
+     */
+    void recordRateLimited(MessageType type) {
+        rateLimited[type != null ? type.ordinal() : MessageType.values().length].increment();
+        drops[DropReason.RATE_LIMITED.ordinal()].increment();
+    }
+
+    /**
+     * 客户端凭恢复令牌取回了原会话
+     */
+    void recordResumedSession() {
+        resumedSessions.increment();
+    }
+
+    /**
+     * permessage-deflate 的压缩统计，由扩展直接记录
+     */
+    SdpDeflateExtension.Stats deflateStats() {
+        return deflate;
+    }
+
+    /**
+     * 计算每秒速率，由定时任务每秒调用一次
+     */
+    synchronized void sampleRates() {
+        long received = messagesReceived.sum();
+        long receivedBytes = bytesReceived.sum();
+        long sent = messagesSent.sum();
+        long sentBytes = bytesSent.sum();
+        messagesReceivedPerSecond = received - lastMessagesReceived;
+        bytesReceivedPerSecond = receivedBytes - lastBytesReceived;
+        messagesSentPerSecond = sent - lastMessagesSent;
+        bytesSentPerSecond = sentBytes - lastBytesSent;
+        lastMessagesReceived = received;
+        lastBytesReceived = receivedBytes;
+        lastMessagesSent = sent;
+        lastBytesSent = sentBytes;
+    }
+
+    // ---------- Prometheus ----------
+
+    /**
+     * 以 Prometheus 文本格式输出所有指标
+     */
+    String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        gauge(sb, "signaling_clients", "Connected clients", server.getClientCount());
+        gauge(sb, "signaling_devices", "Connected devices", server.getDeviceCount());
+
+        counter(sb, "signaling_messages_received_total", "Messages received", messagesReceived.sum());
+        counter(sb, "signaling_bytes_received_total", "Bytes received", bytesReceived.sum());
+        counter(sb, "signaling_messages_sent_total", "Messages sent", messagesSent.sum());
+        counter(sb, "signaling_bytes_sent_total", "Bytes sent", bytesSent.sum());
+
+        long[] depth = queueDepth();
+        gauge(sb, "signaling_outbound_queued_messages", "Messages queued on all connections", depth[0]);
+        gauge(sb, "signaling_outbound_queued_bytes", "Bytes queued on all connections", depth[1]);
+        gauge(sb, "signaling_outbound_queued_messages_max", "Largest per-connection queue in messages", depth[2]);
+        gauge(sb, "signaling_held_messages", "Messages held for offline devices", server.getHeldMessageCount());
+        gauge(sb, "signaling_processing_queued_messages", "Messages waiting for a processing thread",
+                server.getProcessingQueueDepth());
+        counter(sb, "signaling_processing_queue_full_total", "Times a decoder thread waited on a full processing queue",
+                processingQueueFull.sum());
+        counter(sb, "signaling_resumed_sessions_total", "Client reconnects that resumed their previous session",
+                resumedSessions.sum());
+        counter(sb, "signaling_heartbeat_pings_total", "Heartbeat pings sent", heartbeatPings.sum());
+        counter(sb, "signaling_heartbeat_skipped_total", "Heartbeat checks skipped because the peer was recently active",
+                heartbeatSkipped.sum());
+        header(sb, "signaling_reaped_sessions_total", "Connections closed after the heartbeat timeout", "counter");
+        for (Session.Role role : Session.Role.values()) {
+            sb.append("signaling_reaped_sessions_total{role=\"").append(role.label).append("\"} ")
+                    .append(reapedSessions[role.ordinal()].sum()).append('\n');
+        }
+        gauge(sb, "signaling_event_log_queued_events", "Events waiting for the event log writer",
+                server.getEventLogDepth());
+        counter(sb, "signaling_event_log_dropped_total", "Events dropped because the event log buffer was full",
+                eventLogDropped.sum());
+        gauge(sb, "signaling_tls_pooled_buffers", "Idle TLS engine buffers kept for new connections",
+                server.getTlsPooledBuffers());
+
+        header(sb, "signaling_dropped_total", "Messages dropped by reason", "counter");
+        for (DropReason reason : DropReason.values()) {
+            sb.append("signaling_dropped_total{reason=\"").append(reason.label).append("\"} ")
+                    .append(drops[reason.ordinal()].sum()).append('\n');
+        }
+        header(sb, "signaling_errors_total", "Errors by reason", "counter");
+        for (ErrorReason reason : ErrorReason.values()) {
+            sb.append("signaling_errors_total{reason=\"").append(reason.label).append("\"} ")
+                    .append(errors[reason.ordinal()].sum()).append('\n');
+        }
+
+        header(sb, "signaling_rejected_connections_total", "Connections rejected at handshake by reason", "counter");
+        for (AdmissionControl.Rejection reason : AdmissionControl.Rejection.values()) {
+            sb.append("signaling_rejected_connections_total{reason=\"").append(reason.label).append("\"} ")
+                    .append(rejectedConnections[reason.ordinal()].sum()).append('\n');
+        }
+        SignalingConfig config = server.getConfig();
+        header(sb, "signaling_connection_limit", "Configured connection limits (0 = unlimited)", "gauge");
+        sb.append("signaling_connection_limit{scope=\"total\"} ").append(config.getMaxConnections()).append('\n');
+        sb.append("signaling_connection_limit{scope=\"per_ip\"} ").append(config.getMaxConnectionsPerIp()).append('\n');
+        header(sb, "signaling_rate_limited_total", "Messages dropped by per-connection rate limit", "counter");
+        for (int i = 0; i < rateLimited.length; i++) {
+            if (i == MessageType.OTHER.ordinal()) {
+                continue;
+            }
+            sb.append("signaling_rate_limited_total{limit=\"").append(rateLimitLabel(i)).append("\"} ")
+                    .append(rateLimited[i].sum()).append('\n');
+        }
+        Map<String, RateLimiter.Limit> limits = config.getRateLimits();
+        if (!limits.isEmpty()) {
+            header(sb, "signaling_rate_limit_per_second", "Configured per-connection rate limits", "gauge");
+            for (Map.Entry<String, RateLimiter.Limit> entry : limits.entrySet()) {
+                sb.append("signaling_rate_limit_per_second{limit=\"").append(entry.getKey()).append("\"} ")
+                        .append(entry.getValue().perSecond).append('\n');
+            }
+            header(sb, "signaling_rate_limit_burst", "Configured per-connection rate limit bursts", "gauge");
+            for (Map.Entry<String, RateLimiter.Limit> entry : limits.entrySet()) {
+                sb.append("signaling_rate_limit_burst{limit=\"").append(entry.getKey()).append("\"} ")
+                        .append(entry.getValue().burst).append('\n');
+            }
+        }
+
+        header(sb, "signaling_deflate_messages_total", "Outgoing messages by compression result", "counter");
+        sb.append("signaling_deflate_messages_total{result=\"compressed\"} ")
+                .append(deflate.compressedMessages.sum()).append('\n');
+        sb.append("signaling_deflate_messages_total{result=\"skipped\"} ")
+                .append(deflate.skippedMessages.sum()).append('\n');
+        counter(sb, "signaling_deflate_input_bytes_total", "Bytes before compression of compressed messages",
+                deflate.deflateInputBytes.sum());
+        counter(sb, "signaling_deflate_output_bytes_total", "Bytes after compression of compressed messages",
+                deflate.deflateOutputBytes.sum());
+        counter(sb, "signaling_inflate_input_bytes_total", "Compressed bytes received", deflate.inflateInputBytes.sum());
+        counter(sb, "signaling_inflate_output_bytes_total", "Bytes after decompression", deflate.inflateOutputBytes.sum());
+
+        header(sb, "signaling_forward_latency_seconds", "Time from message receipt to send return", "histogram");
+        for (MessageType type : MessageType.values()) {
+            LatencyHistogram histogram = latencies[type.ordinal()];
+            long[] counts = histogram.snapshot();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                sb.append("signaling_forward_latency_seconds_bucket{type=\"").append(type.label)
+                        .append("\",le=\"").append(BUCKET_LABELS[i]).append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append("signaling_forward_latency_seconds_sum{type=\"").append(type.label).append("\"} ")
+                    .append(histogram.sumNanos() / 1e9).append('\n');
+            sb.append("signaling_forward_latency_seconds_count{type=\"").append(type.label).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, help, "gauge");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, help, "counter");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * @return [总消息数, 总字节数, 单连接最大消息数]
+     */
+    private long[] queueDepth() {
+        long[] depth = new long[3];
+        for (long[] queue : server.getOutboundQueueDepths().values()) {
+            depth[0] += queue[0];
+            depth[1] += queue[1];
+            depth[2] = Math.max(depth[2], queue[0]);
+        }
+        return depth;
+    }
+
+    // ---------- JMX ----------
+
+    @Override
+    public int getClientCount() {
+        return server.getClientCount();
+    }
+
+    @Override
+    public int getDeviceCount() {
+        return server.getDeviceCount();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getMessagesReceivedPerSecond() {
+        return messagesReceivedPerSecond;
+    }
+
+    @Override
+    public long getBytesReceivedPerSecond() {
+        return bytesReceivedPerSecond;
+    }
+
+    @Override
+    public long getMessagesSentPerSecond() {
+        return messagesSentPerSecond;
+    }
+
+    @Override
+    public long getBytesSentPerSecond() {
+        return bytesSentPerSecond;
+    }
+
+    @Override
+    public long getQueuedMessages() {
+        return queueDepth()[0];
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return queueDepth()[1];
+    }
+
+    @Override
+    public long getMaxQueuedMessages() {
+        return queueDepth()[2];
+    }
+
+    @Override
+    public int getHeldMessages() {
+        return server.getHeldMessageCount();
+    }
+
+    @Override
+    public Map<String, Long> getDropCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (DropReason reason : DropReason.values()) {
+            counts.put(reason.label, drops[reason.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ErrorReason reason : ErrorReason.values()) {
+            counts.put(reason.label, errors[reason.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRejectedConnectionCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (AdmissionControl.Rejection reason : AdmissionControl.Rejection.values()) {
+            counts.put(reason.label, rejectedConnections[reason.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRateLimitedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < rateLimited.length; i++) {
+            if (i == MessageType.OTHER.ordinal()) {
+                continue;
+            }
+            counts.put(rateLimitLabel(i), rateLimited[i].sum());
+        }
+        return counts;
+    }
+
+    private static String rateLimitLabel(int index) {
+        return index < MessageType.values().length ? MessageType.values()[index].label : SignalingConfig.RATE_LIMIT_ALL;
+    }
+
+    @Override
+    public int getProcessingQueuedMessages() {
+        return server.getProcessingQueueDepth();
+    }
+
+    @Override
+    public long getProcessingQueueFullCount() {
+        return processingQueueFull.sum();
+    }
+
+    @Override
+    public long getResumedSessionCount() {
+        return resumedSessions.sum();
+    }
+
+    @Override
+    public long getHeartbeatPingCount() {
+        return heartbeatPings.sum();
+    }
+
+    @Override
+    public long getHeartbeatSkippedCount() {
+        return heartbeatSkipped.sum();
+    }
+
+    @Override
+    public Map<String, Long> getReapedSessionCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Session.Role role : Session.Role.values()) {
+            counts.put(role.label, reapedSessions[role.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public int getEventLogQueuedEvents() {
+        return server.getEventLogDepth();
+    }
+
+    @Override
+    public long getEventLogDroppedCount() {
+        return eventLogDropped.sum();
+    }
+
+    @Override
+    public int getTlsPooledBuffers() {
+        return server.getTlsPooledBuffers();
+    }
+
+    @Override
+    public double getDeflateRatio() {
+        return ratio(deflate.deflateOutputBytes.sum(), deflate.deflateInputBytes.sum());
+    }
+
+    @Override
+    public double getInflateRatio() {
+        return ratio(deflate.inflateInputBytes.sum(), deflate.inflateOutputBytes.sum());
+    }
+
+    /**
+     * 压缩后 / 压缩前，没有数据时为0
+     */
+    private static double ratio(long compressed, long uncompressed) {
+        return uncompressed > 0 ? (double) compressed / uncompressed : 0;
+    }
+
+    @Override
+    public Map<String, Long> getForwardLatencyP50Micros() {
+        return latencyPercentiles(0.5);
+    }
+
+    @Override
+    public Map<String, Long> getForwardLatencyP99Micros() {
+        return latencyPercentiles(0.99);
+    }
+
+    private Map<String, Long> latencyPercentiles(double quantile) {
+        Map<String, Long> percentiles = new LinkedHashMap<>();
+        for (MessageType type : MessageType.values()) {
+            long nanos = LatencyHistogram.percentile(latencies[type.ordinal()].snapshot(), quantile);
+            percentiles.put(type.label, TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+        return percentiles;
+    }
+}
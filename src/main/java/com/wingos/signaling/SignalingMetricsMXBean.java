@@ -0,0 +1,94 @@
+package com.wingos.signaling;
+
+import java.util.Map;
+
+/**
+ * 信令服务器的JMX指标
+ * 注册名：com.wingos.signaling:type=SignalingServer,port=端口
+ */
+public interface SignalingMetricsMXBean {
+
+    int getClientCount();
+
+    int getDeviceCount();
+
+    long getMessagesReceived();
+
+    long getBytesReceived();
+
+    long getMessagesSent();
+
+    long getBytesSent();
+
+    /** 最近一秒的接收消息数 */
+    long getMessagesReceivedPerSecond();
+
+    long getBytesReceivedPerSecond();
+
+    long getMessagesSentPerSecond();
+
+    long getBytesSentPerSecond();
+
+    /** 所有连接排队中的消息数 */
+    long getQueuedMessages();
+
+    /** 所有连接排队中的字节数 */
+    long getQueuedBytes();
+
+    /** 单个连接排队中的最大消息数 */
+    long getMaxQueuedMessages();
+
+    /** 设备离线暂存中的消息数 */
+    int getHeldMessages();
+
+    /** 原因 -> 丢弃次数 */
+    Map<String, Long> getDropCounts();
+
+    /** 原因 -> 错误次数 */
+    Map<String, Long> getErrorCounts();
+
+    /** 原因 -> 握手时被准入控制拒绝的连接数 */
+    Map<String, Long> getRejectedConnectionCounts();
+
+    /** 限速（all 或消息类型） -> 超过限速被丢弃的消息数 */
+    Map<String, Long> getRateLimitedCounts();
+
+    /** 处理线程队列中等待的消息数 */
+    int getProcessingQueuedMessages();
+
+    /** 处理线程队列已满、解码线程等待的次数 */
+    long getProcessingQueueFullCount();
+
+    /** 凭恢复令牌取回原会话的客户端重连次数 */
+    long getResumedSessionCount();
+
+    /** 发送的心跳ping数 */
+    long getHeartbeatPingCount();
+
+    /** 因最近收到过帧而跳过的心跳检查数 */
+    long getHeartbeatSkippedCount();
+
+    /** 角色（device/client） -> 心跳超时被关闭的连接数 */
+    Map<String, Long> getReapedSessionCounts();
+
+    /** 事件日志缓冲区中等待写出的事件数 */
+    int getEventLogQueuedEvents();
+
+    /** 事件日志缓冲区已满而丢弃的事件数 */
+    long getEventLogDroppedCount();
+
+    /** WSS缓冲区池中空闲的缓冲区数 */
+    int getTlsPooledBuffers();
+
+    /** 发出消息的压缩率（压缩后/压缩前，只统计压缩了的消息） */
+    double getDeflateRatio();
+
+    /** 收到消息的压缩率（压缩后/解压后） */
+    double getInflateRatio();
+
+    /** 消息类型 -> 转发延迟p50（微秒） */
+    Map<String, Long> getForwardLatencyP50Micros();
+
+    /** 消息类型 -> 转发延迟p99（微秒） */
+    Map<String, Long> getForwardLatencyP99Micros();
+}
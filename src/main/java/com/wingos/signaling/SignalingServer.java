@@ -1,16 +1,46 @@
 package com.wingos.signaling;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
 import org.java_websocket.server.WebSocketServer;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -19,23 +49,85 @@ import java.util.concurrent.atomic.AtomicInteger;
  * 功能：
  * 1. 接收客户端和服务端的WebSocket连接
  * 2. 转发SDP和ICE candidate消息
- * 3. 支持多对一连接（多个客户端连接到一个服务端）
+ * 3. 支持多设备：每个服务端（设备）以deviceId注册，客户端通过deviceId指定目标设备
+ * 
+ * 连接参数：
+ * - 服务端：ws://host:port/?role=server&deviceId=DEVICE_ID
+ * - 客户端：ws://host:port/?deviceId=DEVICE_ID
+ * - 未指定deviceId时使用默认设备，兼容单设备部署
+ * - 可选功能通过 X-Signaling-Features 请求头或 features 查询参数声明，如 features=candidates
+ * - 通过 Sec-WebSocket-Protocol: signaling.v1.binary 协商二进制协议（见 BinaryCodec），默认JSON文本
+ * - --deflate=true 时接受 permessage-deflate（见 SdpDeflateExtension）
+ * 
+ * 集群模式：
+ * - 多个节点共享 LocationDirectory，通过 ClusterTransport 互相转发消息
+ * - 客户端和目标设备可以连接在不同节点上
  * 
  * 部署说明：
  * - 部署到测试服务器
  * - 默认端口：10000
  * - 可通过命令行参数修改端口：java -jar signaling-server.jar --port=10000
+ * - 指标：--metrics-port=PORT 开启 /metrics（Prometheus格式），JMX默认开启
+ * - WSS：--tls-keystore=PATH 直接终结TLS（见 TlsServerFactory），密码通过 --tls-keystore-password
+ *   或环境变量 SIGNALING_KEYSTORE_PASSWORD 提供
+ * - 多接收线程：--acceptors=N 启动N个绑定同一端口（SO_REUSEPORT）的 WebSocketServer，
+ *   由内核分配连接，所有实例共享会话和路由表
+ * - 处理线程：--processing-stripes=N 把消息按连接分到N个处理线程，同一连接的消息按顺序处理；
+ *   未开启时在 WebSocket 解码线程（--decoders，默认CPU核数）上直接处理
+ * - 准入与限速：--max-connections / --max-connections-per-ip 在握手阶段拒绝超出的连接，
+ *   --rate-limits=all:100/200,offer:2/10 按连接和消息类型丢弃超出限速的消息
+ * - 心跳：--heartbeat-interval-ms 在时间轮上分散发送ping，最近收到过帧的连接不发；
+ *   --device-timeout-ms / --client-timeout-ms 内没有收到任何帧的连接被关闭
+ * - 事件日志：转发记录经 EventLog 异步写出，--event-log=log|off|文件路径，--event-sampling 按类型采样
+ * - 低内存模式：--low-memory=true 时WSS连接空闲期间不持有TLS缓冲区，只在收发数据时从直接缓冲区池中借用
  */
 public class SignalingServer {
     private static final Logger logger = LoggerFactory.getLogger(SignalingServer.class);
     private static final int DEFAULT_PORT = 10000;
+    private static final long OUTBOUND_DRAIN_INTERVAL_MS = 10;
+    private static final long PENDING_EXPIRE_INTERVAL_MS = 1000;
+    private static final long RESUME_EXPIRE_INTERVAL_MS = 1000;
+    private static final long METRICS_SAMPLE_INTERVAL_MS = 1000;
+    private static final long HEARTBEAT_TICK_MS = 100;
+    private static final int HEARTBEAT_WHEEL_BUCKETS = 512;
+    private static final long ACCEPTOR_START_TIMEOUT_MS = 10000;
     
-    private WebSocketServer webSocketServer;
-    private final Map<String, WebSocket> clients = new ConcurrentHashMap<>(); // 客户端连接（多个）
-    private final Map<WebSocket, String> connectionToId = new ConcurrentHashMap<>(); // 连接 -> ID映射
-    private WebSocket serverConnection = null; // 服务端连接（单个）
+    private final List<WebSocketServer> webSocketServers = new ArrayList<>(); // 接收连接的实例，多个时共享同一端口
+    // 连接的其它状态（角色、ID、目标设备、发送队列等）保存在挂在连接上的 Session 中
+    private final Map<String, Session> clients = new ConcurrentHashMap<>(); // 客户端ID -> 客户端会话（多个）
+    private final DeviceRegistry deviceRegistry = new DeviceRegistry(); // 服务端会话（多个）
+    private final Set<OutboundQueue> congestedQueues = ConcurrentHashMap.newKeySet(); // 有积压消息的发送队列
     private final AtomicInteger clientIdCounter = new AtomicInteger(0);
     
+    private final SignalingConfig config;
+    private ScheduledExecutorService scheduler;
+    private CandidateBatcher candidateBatcher; // 未开启合并发送时为null
+    private PendingMessageBuffer pendingBuffer; // 未开启离线暂存时为null
+    private SessionResumption resumption; // 未开启会话恢复时为null
+    private AdmissionControl admission; // 未开启准入控制时为null
+    private RateLimiter.Limit[] rateLimits; // 按消息类型下标，最后一个为所有消息；未开启限速时为null
+    private EventLog eventLog; // 配置为off时为null
+    private TimingWheel<Session> heartbeat; // 未开启心跳时为null
+    private StripedExecutor processor; // 未开启分条处理时为null，消息在解码线程上处理
+    private TlsServerFactory tlsFactory; // 未开启WSS时为null
+    private final ClusterNode cluster; // 未开启集群模式时为null
+    private final SignalingMetrics metrics = new SignalingMetrics(this);
+    private MetricsHttpServer metricsHttpServer; // 未开启/metrics时为null
+    private ObjectName metricsMBeanName; // 未注册JMX时为null
+    
+    public SignalingServer() {
+        this(new SignalingConfig());
+    }
+    
+    public SignalingServer(SignalingConfig config) {
+        this(config, null);
+    }
+    
+    public SignalingServer(SignalingConfig config, ClusterNode cluster) {
+        this.config = config;
+        this.cluster = cluster;
+    }
+    
     public static void main(String[] args) {
         int port = DEFAULT_PORT;
     
@@ -77,7 +169,7 @@ public class SignalingServer {
         //     }
         // }
         
-        SignalingServer server = new SignalingServer();
+        SignalingServer server = new SignalingServer(SignalingConfig.fromArgs(args));
         server.start(port);
         
         // 添加关闭钩子
@@ -89,167 +181,823 @@ public class SignalingServer {
     
     public void start(int port) {
         try {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "signaling-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (config.isCandidateBatchingEnabled()) {
+                candidateBatcher = new CandidateBatcher(scheduler, (conn, messages) -> sendCandidates(Session.of(conn), messages),
+                        config.getCandidateBatchWindowMs(), config.getCandidateBatchMaxCount());
+            }
+            scheduler.scheduleWithFixedDelay(this::drainOutboundQueues,
+                    OUTBOUND_DRAIN_INTERVAL_MS, OUTBOUND_DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (config.isPendingBufferEnabled()) {
+                pendingBuffer = new PendingMessageBuffer(config.getPendingTtlMs(),
+                        config.getPendingMaxMessages(), config.getPendingMaxBytes());
+                scheduler.scheduleWithFixedDelay(() -> pendingBuffer.expire(this::expirePending),
+                        PENDING_EXPIRE_INTERVAL_MS, PENDING_EXPIRE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+            if (config.isResumeEnabled()) {
+                resumption = new SessionResumption(config.getResumeTtlMs());
+                scheduler.scheduleWithFixedDelay(resumption::expire,
+                        RESUME_EXPIRE_INTERVAL_MS, RESUME_EXPIRE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+            if (cluster != null) {
+                cluster.getTransport().join(cluster.getNodeId(), this::onClusterMessage);
+            }
+            if (config.isHeartbeatEnabled()) {
+                heartbeat = new TimingWheel<>(HEARTBEAT_TICK_MS, HEARTBEAT_WHEEL_BUCKETS, this::checkHeartbeat);
+                scheduler.scheduleAtFixedRate(heartbeat::advance,
+                        HEARTBEAT_TICK_MS, HEARTBEAT_TICK_MS, TimeUnit.MILLISECONDS);
+            }
+            scheduler.scheduleWithFixedDelay(metrics::sampleRates,
+                    METRICS_SAMPLE_INTERVAL_MS, METRICS_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (config.getMetricsPort() > 0) {
+                metricsHttpServer = new MetricsHttpServer(config.getMetricsPort(), metrics);
+                metricsHttpServer.start();
+            }
+            if (config.isJmxEnabled()) {
+                registerMetricsMBean(port);
+            }
+            
+            eventLog = EventLog.create(config, metrics::recordEventLogDropped);
+            if (config.isAdmissionControlEnabled()) {
+                admission = new AdmissionControl(config.getMaxConnections(), config.getMaxConnectionsPerIp());
+            }
+            rateLimits = buildRateLimits(config.getRateLimits());
+            
+            if (config.isStripedProcessingEnabled()) {
+                processor = new StripedExecutor("signaling-processor", config.getProcessingStripes(),
+                        config.getProcessingQueueSize(), metrics::recordProcessingQueueFull);
+            }
+            
             InetSocketAddress address = new InetSocketAddress(port);
-            webSocketServer = new WebSocketServer(address) {
-                @Override
-                public void onOpen(WebSocket conn, ClientHandshake handshake) {
-                    String clientId = generateClientId();
-                    connectionToId.put(conn, clientId);
-                    
-                    // 判断是服务端还是客户端
-                    // 可以通过查询参数或自定义Header来区分
-                    String query = handshake.getResourceDescriptor();
-                    boolean isServer = query != null && query.contains("role=server");
-                    
-                    if (isServer) {
-                        // 服务端连接
-                        if (serverConnection != null && !serverConnection.isClosed()) {
-                            logger.warn("Server connection already exists, closing old connection");
-                            serverConnection.close();
-                            connectionToId.remove(serverConnection);
-                        }
-                        serverConnection = conn;
-                        logger.info("Server connected: {} ({})", conn.getRemoteSocketAddress(), clientId);
-                    } else {
-                        // 客户端连接
-                        clients.put(clientId, conn);
-                        logger.info("Client connected: {} ({})", conn.getRemoteSocketAddress(), clientId);
+            int decoders = config.getDecoders() > 0 ? config.getDecoders() : Runtime.getRuntime().availableProcessors();
+            List<IExtension> extensions = config.isDeflateEnabled()
+                    ? Collections.<IExtension>singletonList(new SdpDeflateExtension(config.getDeflateThreshold(),
+                            config.isDeflateDictionary(), metrics.deflateStats()))
+                    : Collections.<IExtension>emptyList();
+            int acceptors = Math.max(1, config.getAcceptors());
+            Field reusePortChannel = acceptors > 1 ? reusePortChannelField() : null;
+            if (acceptors > 1 && reusePortChannel == null) {
+                logger.warn("SO_REUSEPORT is not available, using a single acceptor");
+                acceptors = 1;
+            }
+            List<Draft> drafts = Collections.singletonList(BinaryCodec.draft(extensions));
+            if (config.isTlsEnabled()) {
+                tlsFactory = createTlsFactory();
+            } else if (config.isLowMemory()) {
+                // 明文连接的读缓冲区本来就由所有连接共用，低内存模式只对WSS有效
+                logger.info("Low-memory mode only applies to WSS, ignored for plain ws");
+            }
+            List<CompletableFuture<Void>> startups = new ArrayList<>(acceptors);
+            for (int i = 0; i < acceptors; i++) {
+                // 解码线程平均分给各个接收线程，余数分给前几个（每个实例至少1个）
+                int acceptorDecoders = Math.max(1, decoders / acceptors + (i < decoders % acceptors ? 1 : 0));
+                CompletableFuture<Void> started = new CompletableFuture<>();
+                startups.add(started);
+                WebSocketServer webSocketServer = createWebSocketServer(address, acceptorDecoders, drafts, i,
+                        reusePortChannel, started);
+                // 开启心跳时由时间轮检测，关闭 Java-WebSocket 每次扫描并ping所有连接的检测
+                webSocketServer.setConnectionLostTimeout(config.isHeartbeatEnabled() ? 0 : 60);
+                // 信令消息小且对延迟敏感，关闭 Nagle 算法
+                webSocketServer.setTcpNoDelay(true);
+                // 重启时端口上还有 TIME_WAIT 状态的连接，也能立即重新绑定
+                webSocketServer.setReuseAddr(true);
+                if (tlsFactory != null) {
+                    webSocketServer.setWebSocketFactory(tlsFactory);
+                }
+                webSocketServer.start();
+                webSocketServers.add(webSocketServer);
+            }
+            // WebSocketServer 在自己的线程上绑定端口，等待所有实例绑定完成，绑定失败时不报告启动成功
+            for (CompletableFuture<Void> started : startups) {
+                try {
+                    started.get(ACCEPTOR_START_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to bind port " + port, e.getCause());
+                }
+            }
+            
+        } catch (Exception e) {
+            logger.error("Failed to start signaling server", e);
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * 创建一个接收连接的 WebSocket 服务器，多个实例共享本服务器的会话和路由表
+     * @param acceptor 实例序号
+     * @param reusePortChannel 多个实例绑定同一端口时为 WebSocketServer 的服务器通道字段，否则为null
+     * @param started 绑定端口后完成，绑定失败时以异常完成
+     */
+    private WebSocketServer createWebSocketServer(InetSocketAddress address, int decoders, List<Draft> drafts,
+            int acceptor, Field reusePortChannel, CompletableFuture<Void> started) {
+        return new WebSocketServer(address, decoders, drafts) {
+            @Override
+            public boolean isReuseAddr() {
+                // Java-WebSocket 在打开服务器通道之后、绑定端口之前读取这个选项，此时开启 SO_REUSEPORT
+                if (reusePortChannel != null) {
+                    enableReusePort(this, reusePortChannel, started);
+                }
+                return super.isReuseAddr();
+            }
+            
+            @Override
+            public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft,
+                    ClientHandshake request) throws InvalidDataException {
+                ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+                // 在分配会话之前拒绝超出连接数上限的连接
+                if (admission != null) {
+                    AdmissionControl.Rejection rejection = admission.tryAdmit(conn, remoteAddress(conn));
+                    if (rejection != null) {
+                        metrics.recordRejectedConnection(rejection);
+                        logger.warn("Rejected connection from {}: {}", conn.getRemoteSocketAddress(), rejection.label);
+                        throw new InvalidDataException(CloseFrame.TRY_AGAIN_LATER, "Too many connections");
                     }
-                    
-                    // 发送连接确认
-                    sendConnectionAck(conn, clientId, isServer);
                 }
+                return response;
+            }
+            
+            @Override
+            public void onOpen(WebSocket conn, ClientHandshake handshake) {
+                // 判断是服务端还是客户端
+                // 通过查询参数区分：role=server 为服务端，deviceId 为设备ID（客户端为目标设备ID）
+                String query = handshake.getResourceDescriptor();
+                boolean isServer = "server".equals(HandshakeParams.queryParam(query, "role"));
+                String deviceId = HandshakeParams.queryParam(query, "deviceId");
+                if (deviceId == null || deviceId.isEmpty()) {
+                    deviceId = DeviceRegistry.DEFAULT_DEVICE_ID;
+                }
+                boolean supportsBatch = HandshakeParams.hasFeature(handshake, CandidateBatcher.FEATURE);
+                boolean binary = BinaryCodec.isBinary(conn);
+                OutboundQueue outbound = new OutboundQueue(conn, config.getOutboundMaxMessages(),
+                        config.getOutboundMaxBytes(), config.getSlowConsumerPolicy(), supportsBatch, binary);
                 
-                @Override
-                public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-                    String clientId = connectionToId.remove(conn);
-                    logger.info("Connection closed: {} (code={}, reason={})", clientId, code, reason);
-                    
-                    if (conn == serverConnection) {
-                        serverConnection = null;
-                        logger.info("Server disconnected");
-                    } else if (clientId != null) {
-                        clients.remove(clientId);
-                        logger.info("Client disconnected: {}", clientId);
+                Session session;
+                String resumeToken = null;
+                boolean resumed = false;
+                if (isServer) {
+                    // 服务端连接，同一deviceId的新连接替换旧连接
+                    session = new Session(conn, Session.Role.DEVICE, generateClientId(), deviceId,
+                            supportsBatch, binary, outbound, Session.newRateLimiters(rateLimits));
+                    conn.setAttachment(session);
+                    Session previous = deviceRegistry.register(deviceId, session);
+                    if (previous != null && previous != session) {
+                        logger.warn("Device {} already connected, closing old connection", deviceId);
+                        retire(previous);
+                    }
+                    if (cluster != null) {
+                        cluster.getDirectory().registerDevice(deviceId, cluster.getNodeId());
+                    }
+                    logger.info("Server connected: {} ({}, device={}, binary={}, deflate={})", conn.getRemoteSocketAddress(), session.id, deviceId,
+                            binary, SdpDeflateExtension.isNegotiated(conn));
+                } else {
+                    // 客户端连接，携带有效的恢复令牌时沿用原来的客户端ID
+                    SessionResumption.Resumable resumable = resumeSession(handshake, deviceId);
+                    resumed = resumable != null;
+                    String clientId = resumed ? resumable.clientId : generateClientId();
+                    session = new Session(conn, Session.Role.CLIENT, clientId, deviceId, supportsBatch, binary, outbound,
+                            Session.newRateLimiters(rateLimits));
+                    conn.setAttachment(session);
+                    Session previous = clients.put(clientId, session);
+                    if (previous != null && previous != session) {
+                        // 客户端先于服务器发现旧连接断开
+                        retire(previous);
                     }
+                    deviceRegistry.bindClient(deviceId, session);
+                    if (cluster != null) {
+                        cluster.getDirectory().registerClient(clientId, deviceId, cluster.getNodeId());
+                    }
+                    if (resumption != null) {
+                        resumeToken = resumption.issue(clientId, deviceId);
+                    }
+                    logger.info("Client {}: {} ({}, device={}, binary={}, deflate={})", resumed ? "resumed" : "connected",
+                            conn.getRemoteSocketAddress(), clientId, deviceId, binary, SdpDeflateExtension.isNegotiated(conn));
                 }
                 
-                @Override
-                public void onMessage(WebSocket conn, String message) {
-                    String clientId = connectionToId.get(conn);
-                    try {
-                        handleMessage(conn, message, clientId);
-                    } catch (Exception e) {
-                        logger.error("Error handling message from {}: {}", clientId, message, e);
-                    }
+                // 发送连接确认
+                sendConnectionAck(session, resumeToken, resumed);
+                
+                // 第一次检查随机分布在一个心跳间隔内，大量连接同时建立时ping也不会集中发出
+                if (heartbeat != null) {
+                    heartbeat.schedule(session, ThreadLocalRandom.current().nextLong(
+                            TimeUnit.MILLISECONDS.toNanos(config.getHeartbeatIntervalMs())));
                 }
                 
-                @Override
-                public void onError(WebSocket conn, Exception ex) {
-                    String clientId = conn != null ? connectionToId.get(conn) : "unknown";
-                    logger.error("WebSocket error for {}: {}", clientId, ex.getMessage(), ex);
+                // 补发设备离线期间暂存的消息
+                if (isServer && pendingBuffer != null) {
+                    replayPending(deviceId);
                 }
                 
-                @Override
-                public void onStart() {
-                    logger.info("========================================");
-                    logger.info("WebRTC Signaling Server Started");
-                    logger.info("Port: {}", port);
-                    logger.info("Waiting for connections...");
-                    logger.info("========================================");
-                }
-            };
+                // 通知其它节点补发暂存的消息
+                if (isServer && cluster != null) {
+                    cluster.getTransport().broadcast(cluster.getNodeId(),
+                            new ClusterMessage(ClusterMessage.Kind.DEVICE_ONLINE, deviceId, null, null, false));
+                }
+            }
             
-            webSocketServer.setConnectionLostTimeout(60);
-            webSocketServer.start();
+            @Override
+            protected boolean removeConnection(WebSocket conn) {
+                // 每个连接关闭时都会经过这里；握手之后、onOpen 之前失败的连接不会触发 onClose，也要在这里释放准入名额
+                if (admission != null) {
+                    admission.release(conn);
+                }
+                return super.removeConnection(conn);
+            }
+            
+            @Override
+            public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+                if (processor != null) {
+                    // 排在该连接已收到的消息之后清理
+                    processor.execute(conn, () -> handleClose(conn, code, reason));
+                } else {
+                    handleClose(conn, code, reason);
+                }
+            }
             
+            @Override
+            public void onMessage(WebSocket conn, String message) {
+                long receivedNanos = System.nanoTime();
+                if (!admitMessage(conn, receivedNanos)) {
+                    return;
+                }
+                if (processor != null) {
+                    processor.execute(conn, () -> processMessage(conn, message, receivedNanos));
+                } else {
+                    processMessage(conn, message, receivedNanos);
+                }
+            }
+            
+            @Override
+            public void onMessage(WebSocket conn, ByteBuffer message) {
+                long receivedNanos = System.nanoTime();
+                if (!admitMessage(conn, receivedNanos)) {
+                    return;
+                }
+                if (processor != null) {
+                    processor.execute(conn, () -> processBinaryMessage(conn, message, receivedNanos));
+                } else {
+                    processBinaryMessage(conn, message, receivedNanos);
+                }
+            }
+            
+            @Override
+            public void onWebsocketPing(WebSocket conn, Framedata f) {
+                super.onWebsocketPing(conn, f);
+                touch(conn);
+            }
+            
+            @Override
+            public void onWebsocketPong(WebSocket conn, Framedata f) {
+                touch(conn);
+            }
+            
+            @Override
+            public void onError(WebSocket conn, Exception ex) {
+                if (conn == null) {
+                    // 服务器本身的错误（如绑定失败），启动阶段由 start 报告
+                    started.completeExceptionally(ex);
+                }
+                Session session = Session.of(conn);
+                String clientId = session != null ? session.id : "unknown";
+                metrics.recordError(SignalingMetrics.ErrorReason.WEBSOCKET);
+                logger.error("WebSocket error for {}: {}", clientId, ex.getMessage(), ex);
+            }
+            
+            @Override
+            public void onStart() {
+                started.complete(null);
+                if (acceptor > 0) {
+                    logger.info("Acceptor {} started on port {}", acceptor, address.getPort());
+                    return;
+                }
+                logger.info("========================================");
+                logger.info("WebRTC Signaling Server Started");
+                logger.info("Port: {} ({})", address.getPort(), config.isTlsEnabled() ? "wss" : "ws");
+                logger.info("Waiting for connections...");
+                logger.info("========================================");
+            }
+        };
+    }
+    
+    /**
+     * 按配置的密钥库创建WSS连接工厂，多个接收实例共用
+     */
+    private TlsServerFactory createTlsFactory() throws IOException, GeneralSecurityException {
+        String password = config.getTlsKeystorePassword();
+        SSLContext context = TlsServerFactory.createContext(config.getTlsKeystore(), config.getTlsKeystoreType(),
+                password != null ? password.toCharArray() : null,
+                config.getTlsSessionCacheSize(), config.getTlsSessionTimeoutSeconds());
+        int threads = config.getTlsHandshakeThreads() > 0
+                ? config.getTlsHandshakeThreads() : Runtime.getRuntime().availableProcessors();
+        return new TlsServerFactory(context, threads, config.getTlsPooledBuffers(), config.isLowMemory());
+    }
+    
+    /**
+     * 检查能否为多个实例开启 SO_REUSEPORT：平台支持该选项，且能通过反射取得 WebSocketServer 的服务器通道
+     * @return 服务器通道字段，不能开启时返回null
+     */
+    private static Field reusePortChannelField() throws IOException {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            if (!channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                return null;
+            }
+        }
+        try {
+            Field field = WebSocketServer.class.getDeclaredField("server");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 字段不存在（Java-WebSocket 版本变化）或模块系统拒绝访问
+            logger.warn("Cannot access the WebSocketServer channel: {}", e.toString());
+            return null;
+        }
+    }
+    
+    /**
+     * 为 WebSocketServer 尚未绑定的服务器通道开启 SO_REUSEPORT，让内核把连接分散到各个实例
+     *
+     * 失败时记录到 started 并关闭通道：接下来的绑定失败，该实例停止，由 start 报告，
+     * 而不是绑定成功后让同一端口的其它实例在自己的线程上失败。
+     */
+    private static void enableReusePort(WebSocketServer server, Field channelField, CompletableFuture<Void> started) {
+        ServerSocketChannel channel = null;
+        try {
+            channel = (ServerSocketChannel) channelField.get(server);
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        } catch (IllegalAccessException | IOException | RuntimeException e) {
+            started.completeExceptionally(e);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeError) {
+                    logger.warn("Failed to close acceptor channel: {}", closeError.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * 在解码线程上记录连接的活跃时间，并按连接的总限速丢弃超出的消息，不进入处理队列也不解析
+     */
+    private boolean admitMessage(WebSocket conn, long receivedNanos) {
+        Session session = Session.of(conn);
+        if (session == null) {
+            return true;
+        }
+        session.touch(receivedNanos);
+        if (session.tryAcquire(null)) {
+            return true;
+        }
+        metrics.recordRateLimited(null);
+        logger.debug("Rate limited message from {}", session.id);
+        return false;
+    }
+    
+    private static void touch(WebSocket conn) {
+        Session session = Session.of(conn);
+        if (session != null) {
+            session.touch(System.nanoTime());
+        }
+    }
+    
+    /**
+     * 时间轮上的心跳检查：最近收到过帧的连接跳过，空闲超过心跳间隔的发送ping，
+     * 超时没有收到任何帧的连接（对端已消失）关闭
+     * @return 下次检查的延迟（纳秒），会话已结束时返回-1
+     */
+    private long checkHeartbeat(Session session, long now) {
+        if (session.isClosed()) {
+            return -1;
+        }
+        long interval = TimeUnit.MILLISECONDS.toNanos(config.getHeartbeatIntervalMs());
+        long timeout = TimeUnit.MILLISECONDS.toNanos(session.isDevice() ? config.getDeviceTimeoutMs() : config.getClientTimeoutMs());
+        long idle = session.idleNanos(now);
+        if (idle >= timeout) {
+            metrics.recordReapedSession(session.role);
+            logger.info("Closing idle {} {}: no frames for {} ms", session.role.label, session.id,
+                    TimeUnit.NANOSECONDS.toMillis(idle));
+            session.conn.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Heartbeat timeout");
+            return -1;
+        }
+        if (idle < interval) {
+            metrics.recordHeartbeat(false);
+            return interval - idle;
+        }
+        try {
+            session.conn.sendPing();
+        } catch (WebsocketNotConnectedException e) {
+            return -1;
+        }
+        metrics.recordHeartbeat(true);
+        return Math.min(interval, timeout - idle);
+    }
+    
+    /**
+     * 按消息类型的限速检查，类型在解析后才能确定
+     */
+    private boolean admitMessage(Session session, SignalingMetrics.MessageType type) {
+        if (session.tryAcquire(type)) {
+            return true;
+        }
+        metrics.recordRateLimited(type);
+        logger.debug("Rate limited {} from {}", type.label, session.id);
+        return false;
+    }
+    
+    private static RateLimiter.Limit[] buildRateLimits(Map<String, RateLimiter.Limit> configured) {
+        if (configured.isEmpty()) {
+            return null;
+        }
+        RateLimiter.Limit[] limits = new RateLimiter.Limit[SignalingMetrics.MessageType.values().length + 1];
+        for (Map.Entry<String, RateLimiter.Limit> entry : configured.entrySet()) {
+            int index = SignalingConfig.RATE_LIMIT_ALL.equals(entry.getKey())
+                    ? limits.length - 1
+                    : SignalingMetrics.MessageType.of(entry.getKey()).ordinal();
+            limits[index] = entry.getValue();
+        }
+        return limits;
+    }
+    
+    /**
+     * 记录信令事件，只写入事件日志的缓冲区，不在当前线程格式化或写日志
+     */
+    private void event(EventLog.Type type, String from, String to, long size, String detail) {
+        if (eventLog != null) {
+            eventLog.record(type, from, to, size, detail);
+        }
+    }
+    
+    private static InetAddress remoteAddress(WebSocket conn) {
+        InetSocketAddress address = conn.getRemoteSocketAddress();
+        return address != null ? address.getAddress() : null;
+    }
+    
+    private void handleClose(WebSocket conn, int code, String reason) {
+        Session session = Session.of(conn);
+        if (candidateBatcher != null) {
+            candidateBatcher.discard(conn);
+        }
+        if (session == null) {
+            logger.info("Connection closed: {} (code={}, reason={})", conn.getRemoteSocketAddress(), code, reason);
+            return;
+        }
+        logger.info("Connection closed: {} (code={}, reason={}, received={}, sent={})", session.id, code, reason,
+                session.messagesReceived(), session.messagesSent());
+        if (!session.close()) {
+            // 已被同一设备/客户端的新连接取代，路由已指向新连接
+            return;
+        }
+        congestedQueues.remove(session.outbound);
+        
+        if (session.isDevice()) {
+            if (deviceRegistry.unregister(session.deviceId, session)) {
+                if (cluster != null) {
+                    cluster.getDirectory().unregisterDevice(session.deviceId, cluster.getNodeId());
+                }
+                logger.info("Server disconnected: device={}", session.deviceId);
+            }
+        } else if (clients.remove(session.id, session)) {
+            deviceRegistry.unbindClient(session.deviceId, session);
+            if (cluster != null) {
+                cluster.getDirectory().unregisterClient(session.id, session.deviceId, cluster.getNodeId());
+            }
+            if (resumption != null) {
+                resumption.detach(session.id);
+            }
+            logger.info("Client disconnected: {}", session.id);
+        }
+    }
+    
+    /**
+     * 结束被新连接取代的会话并关闭旧连接，路由表已由调用方指向新会话
+     */
+    private void retire(Session previous) {
+        if (previous.close()) {
+            congestedQueues.remove(previous.outbound);
+        }
+        if (candidateBatcher != null) {
+            candidateBatcher.discard(previous.conn);
+        }
+        previous.conn.close();
+    }
+    
+    /**
+     * 用握手中的恢复令牌取回原会话
+     * @return 未开启会话恢复、未携带令牌或令牌无效时返回null
+     */
+    private SessionResumption.Resumable resumeSession(ClientHandshake handshake, String deviceId) {
+        if (resumption == null) {
+            return null;
+        }
+        String token = HandshakeParams.resumeToken(handshake);
+        if (token == null) {
+            return null;
+        }
+        SessionResumption.Resumable resumable = resumption.resume(token, deviceId);
+        if (resumable == null) {
+            logger.info("Resume token rejected (expired, unknown or different device {})", deviceId);
+            return null;
+        }
+        metrics.recordResumedSession();
+        return resumable;
+    }
+    
+    private void processMessage(WebSocket conn, String message, long receivedNanos) {
+        metrics.recordReceived(message.length());
+        Session session = Session.of(conn);
+        if (session == null || session.isClosed()) {
+            logger.debug("Ignoring message on replaced connection {}", conn.getRemoteSocketAddress());
+            return;
+        }
+        session.recordReceived(message.length());
+        try {
+            handleMessage(session, message, receivedNanos);
         } catch (Exception e) {
-            logger.error("Failed to start signaling server", e);
-            System.exit(1);
+            metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
+            logger.error("Error handling message from {} ({} chars)", session.id, message.length(), e);
+        }
+    }
+    
+    private void processBinaryMessage(WebSocket conn, ByteBuffer message, long receivedNanos) {
+        metrics.recordReceived(message.remaining());
+        Session session = Session.of(conn);
+        if (session == null || session.isClosed()) {
+            logger.debug("Ignoring binary message on replaced connection {}", conn.getRemoteSocketAddress());
+            return;
+        }
+        session.recordReceived(message.remaining());
+        try {
+            handleBinaryMessage(session, message, receivedNanos);
+        } catch (Exception e) {
+            metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
+            logger.error("Error handling binary message from {}", session.id, e);
         }
     }
     
     public void stop() {
         try {
-            if (webSocketServer != null) {
+            if (cluster != null) {
+                cluster.getTransport().leave(cluster.getNodeId());
+                cluster.getDirectory().removeNode(cluster.getNodeId());
+            }
+            for (WebSocketServer webSocketServer : webSocketServers) {
                 webSocketServer.stop();
             }
+            webSocketServers.clear();
+            if (processor != null) {
+                processor.shutdown();
+            }
+            if (eventLog != null) {
+                eventLog.close();
+            }
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+            if (metricsHttpServer != null) {
+                metricsHttpServer.stop();
+            }
+            if (metricsMBeanName != null) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsMBeanName);
+                metricsMBeanName = null;
+            }
         } catch (Exception e) {
             logger.error("Error stopping server", e);
         }
     }
     
+    private void registerMetricsMBean(int port) {
+        try {
+            ObjectName name = new ObjectName("com.wingos.signaling:type=SignalingServer,port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            metricsMBeanName = name;
+        } catch (Exception e) {
+            logger.warn("Failed to register metrics MBean: {}", e.getMessage());
+        }
+    }
+    
     private String generateClientId() {
+        // 集群模式下ID带节点前缀，保证全局唯一
+        if (cluster != null) {
+            return "client-" + cluster.getNodeId() + "-" + clientIdCounter.incrementAndGet();
+        }
         return "client-" + clientIdCounter.incrementAndGet();
     }
     
-    private void sendConnectionAck(WebSocket conn, String clientId, boolean isServer) {
+    /**
+     * @param resumeToken 会话恢复令牌，未开启会话恢复或服务端连接为null
+     * @param resumed 是否恢复了之前的会话
+     */
+    private void sendConnectionAck(Session session, String resumeToken, boolean resumed) {
         try {
             JSONObject ack = new JSONObject();
             ack.put("type", "connected");
-            ack.put("clientId", clientId);
-            ack.put("role", isServer ? "server" : "client");
-            conn.send(ack.toString());
+            ack.put("clientId", session.id);
+            ack.put("role", session.isDevice() ? "server" : "client");
+            ack.put("deviceId", session.deviceId);
+            ack.put("features", new JSONArray().put(CandidateBatcher.FEATURE));
+            if (resumeToken != null) {
+                ack.put("resumeToken", resumeToken);
+                ack.put("resumed", resumed);
+            }
+            send(session, ack.toString());
         } catch (Exception e) {
             logger.error("Failed to send connection ACK", e);
         }
     }
     
-    private void handleMessage(WebSocket conn, String message, String clientId) {
+    /**
+     * @param receivedNanos 收到消息的时间，转发延迟包括在处理队列中等待的时间
+     */
+    private void handleMessage(Session session, String message, long receivedNanos) {
+        // 快速路径：只扫描转发需要的顶层字段，不构建完整JSON树
+        RawMessage raw = RawMessage.scan(message);
+        if (raw == null) {
+            // 扫描器只接受标准JSON，其它情况回退到完整解析并规范化
+            try {
+                raw = RawMessage.parse(message);
+            } catch (JSONException e) {
+                metrics.recordError(SignalingMetrics.ErrorReason.INVALID_MESSAGE);
+                event(EventLog.Type.INVALID, session.id, null, message.length(), message);
+                return;
+            }
+        }
+        
+        String type = raw.type != null ? raw.type : "";
+        if (!admitMessage(session, SignalingMetrics.MessageType.of(type))) {
+            return;
+        }
+        
+        switch (type) {
+            case "offer":
+                handleOffer(session, raw);
+                break;
+                
+            case "answer":
+                handleAnswer(session, raw);
+                break;
+                
+            case "candidate":
+                handleCandidate(session, raw);
+                break;
+                
+            case CandidateBatcher.BATCH_TYPE:
+                handleCandidates(session, raw);
+                break;
+                
+            default:
+                metrics.recordError(SignalingMetrics.ErrorReason.UNKNOWN_TYPE);
+                logger.warn("Unknown message type: {} from {}", type, session.id);
+                break;
+        }
+        
+        metrics.recordForward(SignalingMetrics.MessageType.of(type), System.nanoTime() - receivedNanos);
+    }
+    
+    /**
+     * 处理二进制信令消息
+     * 接收方也使用二进制协议时只改写头部直接转发，其它情况转换为JSON后按文本消息处理
+     */
+    private void handleBinaryMessage(Session session, ByteBuffer message, long receivedNanos) {
+        BinaryCodec.Header header = BinaryCodec.scan(message);
+        if (header == null) {
+            metrics.recordError(SignalingMetrics.ErrorReason.INVALID_MESSAGE);
+            logger.error("Invalid binary message from {} ({} bytes)", session.id, message.remaining());
+            return;
+        }
+        if (!admitMessage(session, SignalingMetrics.MessageType.of(header.typeName()))) {
+            return;
+        }
+        
+        if (forwardBinary(session, message, header)) {
+            metrics.recordForward(SignalingMetrics.MessageType.of(header.typeName()), System.nanoTime() - receivedNanos);
+            return;
+        }
+        
+        String json;
         try {
-            JSONObject json = new JSONObject(message);
-            String type = json.optString("type", "");
-            
-            boolean isServer = (conn == serverConnection);
-            
-            switch (type) {
-                case "offer":
-                    handleOffer(conn, json, clientId, isServer);
-                    break;
-                    
-                case "answer":
-                    handleAnswer(conn, json, clientId, isServer);
-                    break;
-                    
-                case "candidate":
-                    handleCandidate(conn, json, clientId, isServer);
-                    break;
-                    
-                default:
-                    logger.warn("Unknown message type: {} from {}", type, clientId);
-                    break;
+            json = BinaryCodec.toJson(message, header);
+        } catch (IllegalArgumentException e) {
+            metrics.recordError(SignalingMetrics.ErrorReason.INVALID_MESSAGE);
+            logger.error("Invalid binary {} message from {}", header.typeName(), session.id, e);
+            return;
+        }
+        
+        if (session.isDevice() && header.type == BinaryCodec.CANDIDATE && header.toClientId == null) {
+            // 设备广播的candidate：二进制接收方复用收到的帧，不再从JSON转换
+            broadcastCandidate(session.deviceId, json, message);
+            forwardBroadcast(session.deviceId, json);
+            event(EventLog.Type.CANDIDATE, session.id, null, message.remaining(), null);
+            metrics.recordForward(SignalingMetrics.MessageType.of(header.typeName()), System.nanoTime() - receivedNanos);
+            return;
+        }
+        handleMessage(session, json, receivedNanos);
+    }
+    
+    /**
+     * 二进制快速路径：点对点的 offer/answer/candidate，接收方在本节点且使用二进制协议
+     * 需要暂存、合并、广播或跨节点的消息返回false，交给文本处理流程
+     * @return 消息已处理时返回true
+     */
+    private boolean forwardBinary(Session session, ByteBuffer message, BinaryCodec.Header header) {
+        boolean candidate = header.type == BinaryCodec.CANDIDATE;
+        Session recipient;
+        ByteBuffer forward;
+        if (!session.isDevice()) {
+            // 客户端 -> 服务端
+            if (header.type != BinaryCodec.OFFER && !candidate) {
+                return false;
+            }
+            if (pendingBuffer != null && pendingBuffer.hasPending(session.deviceId)) {
+                return false;
+            }
+            recipient = deviceRegistry.lookup(session.deviceId);
+            if (recipient == null || !recipient.binary) {
+                return false;
             }
-        } catch (JSONException e) {
-            logger.error("Invalid JSON message from {}: {}", clientId, message, e);
+            forward = BinaryCodec.rewrite(message, header, null, session.idBytes);
+        } else {
+            // 服务端 -> 指定客户端
+            if ((header.type != BinaryCodec.ANSWER && !candidate) || header.toClientId == null) {
+                return false;
+            }
+            recipient = clientOfDevice(header.toClientId, session.deviceId);
+            if (recipient == null || !recipient.binary) {
+                return false;
+            }
+            forward = BinaryCodec.rewrite(message, header, null, header.fromClientId);
+        }
+        
+        if (candidate && candidateBatcher != null && recipient.batchCapable) {
+            return false;
+        }
+        
+        if (!candidate) {
+            flushCandidates(recipient);
         }
+        int length = forward.remaining();
+        OutboundQueue.Result result = recipient.isClosed()
+                ? OutboundQueue.Result.CLOSED
+                : trackCongestion(recipient, recipient.outbound.offer(forward, candidate), length);
+        if (result == OutboundQueue.Result.CLOSED && header.type == BinaryCodec.OFFER) {
+            metrics.recordDrop(SignalingMetrics.DropReason.SLOW_CONSUMER);
+            logger.warn("Device {} outbound queue overflow, offer from {} not delivered", session.deviceId, session.id);
+            sendError(session, "No server available");
+        } else {
+            EventLog.Type type = candidate ? EventLog.Type.CANDIDATE
+                    : header.type == BinaryCodec.OFFER ? EventLog.Type.OFFER : EventLog.Type.ANSWER;
+            event(type, session.id, session.isDevice() ? header.toClientId : session.deviceId, length, null);
+        }
+        return true;
     }
     
     /**
      * 处理Offer消息
      * 客户端 -> 信令服务器 -> 服务端
      */
-    private void handleOffer(WebSocket conn, JSONObject json, String clientId, boolean isServer) {
-        if (isServer) {
+    private void handleOffer(Session session, RawMessage raw) {
+        if (session.isDevice()) {
             logger.warn("Server sent offer (unexpected), ignoring");
             return;
         }
+        String clientId = session.id;
+        String deviceId = session.deviceId;
         
-        if (serverConnection == null || serverConnection.isClosed()) {
-            logger.warn("No server connection available, cannot forward offer from {}", clientId);
-            sendError(conn, "No server available");
+        // 添加客户端ID到消息中，以便服务端知道消息来源
+        String message = raw.withQuotedFromClientId(session.quotedId);
+        if (holdForDevice(clientId, deviceId, message, false)) {
+            event(EventLog.Type.HELD, clientId, deviceId, message.length(), "offer");
+            return;
+        }
+        
+        Session serverSession = deviceRegistry.lookup(deviceId);
+        if (serverSession == null && forwardToDevice(clientId, deviceId, message, false)) {
+            event(EventLog.Type.OFFER, clientId, deviceId, message.length(), "remote");
+            return;
+        }
+        if (serverSession == null) {
+            metrics.recordDrop(SignalingMetrics.DropReason.NO_DEVICE);
+            event(EventLog.Type.DROPPED, clientId, deviceId, message.length(), "offer: no device");
+            sendError(session, "No server available");
             return;
         }
         
         try {
-            // 添加客户端ID到消息中，以便服务端知道消息来源
-            json.put("fromClientId", clientId);
-            String message = json.toString();
-            
-            serverConnection.send(message);
-            logger.info("Forwarded offer from client {} to server", clientId);
+            flushCandidates(serverSession);
+            OutboundQueue.Result result = send(serverSession, message);
+            if (result == OutboundQueue.Result.CLOSED) {
+                metrics.recordDrop(SignalingMetrics.DropReason.SLOW_CONSUMER);
+                logger.warn("Device {} outbound queue overflow, offer from {} not delivered", deviceId, clientId);
+                sendError(session, "No server available");
+                return;
+            }
+            event(EventLog.Type.OFFER, clientId, deviceId, message.length(), null);
         } catch (Exception e) {
+            metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
             logger.error("Failed to forward offer from {}", clientId, e);
-            sendError(conn, "Failed to forward offer");
+            sendError(session, "Failed to forward offer");
         }
     }
     
@@ -257,49 +1005,58 @@ public class SignalingServer {
      * 处理Answer消息
      * 服务端 -> 信令服务器 -> 客户端
      */
-    private void handleAnswer(WebSocket conn, JSONObject json, String clientId, boolean isServer) {
-        if (!isServer) {
+    private void handleAnswer(Session session, RawMessage raw) {
+        if (!session.isDevice()) {
             logger.warn("Client sent answer (unexpected), ignoring");
             return;
         }
+        String deviceId = session.deviceId;
         
         // 获取目标客户端ID
-        String targetClientId = json.optString("toClientId", null);
+        String targetClientId = raw.toClientId;
         
         if (targetClientId != null) {
-            // 转发给指定客户端
-            WebSocket targetClient = clients.get(targetClientId);
-            if (targetClient != null && !targetClient.isClosed()) {
+            // 转发给指定客户端（仅限绑定到本设备的客户端）
+            Session targetClient = clientOfDevice(targetClientId, deviceId);
+            if (targetClient != null && targetClient.isOpen()) {
                 try {
                     // 移除目标客户端ID，只发送标准格式
-                    JSONObject answer = new JSONObject();
-                    answer.put("type", "answer");
-                    answer.put("sdp", json.getString("sdp"));
-                    targetClient.send(answer.toString());
-                    logger.info("Forwarded answer from server to client {}", targetClientId);
+                    flushCandidates(targetClient);
+                    send(targetClient, raw.withoutToClientId());
+                    event(EventLog.Type.ANSWER, session.id, targetClientId, raw.text.length(), null);
                 } catch (Exception e) {
+                    metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
                     logger.error("Failed to forward answer to client {}", targetClientId, e);
                 }
+            } else if (forwardToClient(deviceId, targetClientId, raw.withoutToClientId(), false)) {
+                event(EventLog.Type.ANSWER, session.id, targetClientId, raw.text.length(), "remote");
             } else {
-                logger.warn("Target client {} not found or disconnected", targetClientId);
+                metrics.recordDrop(SignalingMetrics.DropReason.NO_CLIENT);
+                event(EventLog.Type.DROPPED, session.id, targetClientId, raw.text.length(), "answer: no client");
             }
         } else {
-            // 广播给所有客户端（如果只有一个客户端，这是合理的）
-            if (clients.size() == 1) {
-                WebSocket client = clients.values().iterator().next();
-                if (client != null && !client.isClosed()) {
+            // 广播给本设备的客户端（如果只有一个客户端，这是合理的）
+            Set<String> deviceClientIds = clientIdsOf(deviceId);
+            if (deviceClientIds.size() == 1) {
+                String soleClientId = deviceClientIds.iterator().next();
+                Session client = clients.get(soleClientId);
+                if (client == null) {
+                    if (forwardToClient(deviceId, soleClientId, raw.text, false)) {
+                        event(EventLog.Type.ANSWER, session.id, soleClientId, raw.text.length(), "remote");
+                    }
+                } else if (client.isOpen()) {
                     try {
-                        JSONObject answer = new JSONObject();
-                        answer.put("type", "answer");
-                        answer.put("sdp", json.getString("sdp"));
-                        client.send(answer.toString());
-                        logger.info("Broadcasted answer from server to single client");
+                        flushCandidates(client);
+                        send(client, raw.text);
+                        event(EventLog.Type.ANSWER, session.id, soleClientId, raw.text.length(), null);
                     } catch (Exception e) {
+                        metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
                         logger.error("Failed to broadcast answer", e);
                     }
                 }
             } else {
-                logger.warn("Multiple clients connected but no targetClientId specified in answer");
+                metrics.recordDrop(SignalingMetrics.DropReason.NO_CLIENT);
+                event(EventLog.Type.DROPPED, session.id, deviceId, raw.text.length(), "answer: no targetClientId");
             }
         }
     }
@@ -308,60 +1065,643 @@ public class SignalingServer {
      * 处理ICE Candidate消息
      * 双向转发：客户端 <-> 信令服务器 <-> 服务端
      */
-    private void handleCandidate(WebSocket conn, JSONObject json, String clientId, boolean isServer) {
+    private void handleCandidate(Session session, RawMessage raw) {
+        String deviceId = session.deviceId;
         try {
-            if (isServer) {
+            if (session.isDevice()) {
                 // 服务端 -> 客户端
-                String targetClientId = json.optString("toClientId", null);
+                String targetClientId = raw.toClientId;
+                
+                if (targetClientId != null) {
+                    Session targetClient = clientOfDevice(targetClientId, deviceId);
+                    if (targetClient != null && targetClient.isOpen()) {
+                        deliverCandidate(targetClient, raw.withoutToClientId());
+                        event(EventLog.Type.CANDIDATE, session.id, targetClientId, raw.text.length(), null);
+                    } else if (targetClient != null || !forwardToClient(deviceId, targetClientId, raw.withoutToClientId(), true)) {
+                        metrics.recordDrop(SignalingMetrics.DropReason.NO_CLIENT);
+                    }
+                } else {
+                    broadcastCandidate(deviceId, raw.text);
+                    forwardBroadcast(deviceId, raw.text);
+                    event(EventLog.Type.CANDIDATE, session.id, null, raw.text.length(), null);
+                }
+            } else {
+                // 客户端 -> 服务端
+                String clientId = session.id;
+                String message = raw.withQuotedFromClientId(session.quotedId);
+                if (holdForDevice(clientId, deviceId, message, true)) {
+                    event(EventLog.Type.HELD, clientId, deviceId, message.length(), "candidate");
+                    return;
+                }
+                
+                Session serverSession = deviceRegistry.lookup(deviceId);
+                if (serverSession == null) {
+                    if (!forwardToDevice(clientId, deviceId, message, true)) {
+                        metrics.recordDrop(SignalingMetrics.DropReason.NO_DEVICE);
+                        event(EventLog.Type.DROPPED, clientId, deviceId, message.length(), "candidate: no device");
+                    }
+                    return;
+                }
                 
+                deliverCandidate(serverSession, message);
+                event(EventLog.Type.CANDIDATE, clientId, deviceId, message.length(), null);
+            }
+        } catch (Exception e) {
+            metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
+            logger.error("Failed to forward ICE candidate", e);
+        }
+    }
+    
+    /**
+     * 处理批量ICE Candidate消息（candidates）
+     * 拆分为单条candidate后按与handleCandidate相同的规则路由，
+     * 接收方支持candidates时再合并发送，否则逐条发送
+     */
+    private void handleCandidates(Session session, RawMessage raw) {
+        String clientId = session.id;
+        String deviceId = session.deviceId;
+        try {
+            List<String> items = CandidateBatcher.decode(raw.text, session.isDevice() ? null : clientId);
+            if (items == null) {
+                metrics.recordError(SignalingMetrics.ErrorReason.INVALID_MESSAGE);
+                logger.warn("Invalid candidates message from {}", clientId);
+                return;
+            }
+            
+            if (session.isDevice()) {
+                // 服务端 -> 客户端
+                String targetClientId = raw.toClientId;
                 if (targetClientId != null) {
-                    WebSocket targetClient = clients.get(targetClientId);
-                    if (targetClient != null && !targetClient.isClosed()) {
-                        JSONObject candidate = new JSONObject();
-                        candidate.put("type", "candidate");
-                        candidate.put("candidate", json.getString("candidate"));
-                        candidate.put("sdpMid", json.getString("sdpMid"));
-                        candidate.put("sdpMLineIndex", json.getInt("sdpMLineIndex"));
-                        targetClient.send(candidate.toString());
-                        logger.debug("Forwarded ICE candidate from server to client {}", targetClientId);
+                    Session targetClient = clientOfDevice(targetClientId, deviceId);
+                    if (targetClient != null && targetClient.isOpen()) {
+                        deliverCandidates(targetClient, items);
+                    } else if (targetClient == null && remoteNodeOfClient(targetClientId, deviceId) != null) {
+                        // 跨节点时逐条转发，由接收节点按接收方能力重新合并
+                        for (String item : items) {
+                            forwardToClient(deviceId, targetClientId, item, true);
+                        }
+                    } else {
+                        metrics.recordDrop(SignalingMetrics.DropReason.NO_CLIENT);
                     }
                 } else {
-                    // 广播给所有客户端
-                    JSONObject candidate = new JSONObject();
-                    candidate.put("type", "candidate");
-                    candidate.put("candidate", json.getString("candidate"));
-                    candidate.put("sdpMid", json.getString("sdpMid"));
-                    candidate.put("sdpMLineIndex", json.getInt("sdpMLineIndex"));
-                    
-                    for (WebSocket client : clients.values()) {
-                        if (client != null && !client.isClosed()) {
-                            client.send(candidate.toString());
+                    for (Session client : deviceRegistry.clientSessionsOf(deviceId)) {
+                        if (client.isOpen()) {
+                            deliverCandidates(client, items);
                         }
                     }
-                    logger.debug("Broadcasted ICE candidate from server to all clients");
+                    for (String item : items) {
+                        forwardBroadcast(deviceId, item);
+                    }
                 }
+                event(EventLog.Type.CANDIDATE, clientId, targetClientId, raw.text.length(), null);
             } else {
                 // 客户端 -> 服务端
-                if (serverConnection == null || serverConnection.isClosed()) {
-                    logger.warn("No server connection available, cannot forward candidate from {}", clientId);
+                if (pendingBuffer != null
+                        && (!isDeviceOnline(deviceId) || pendingBuffer.hasPending(deviceId))) {
+                    for (String item : items) {
+                        holdForDevice(clientId, deviceId, item, true);
+                    }
+                    event(EventLog.Type.HELD, clientId, deviceId, raw.text.length(), "candidates");
                     return;
                 }
                 
-                json.put("fromClientId", clientId);
-                serverConnection.send(json.toString());
-                logger.debug("Forwarded ICE candidate from client {} to server", clientId);
+                Session serverSession = deviceRegistry.lookup(deviceId);
+                if (serverSession == null) {
+                    boolean forwarded = false;
+                    for (String item : items) {
+                        forwarded = forwardToDevice(clientId, deviceId, item, true);
+                        if (!forwarded) {
+                            break;
+                        }
+                    }
+                    if (!forwarded) {
+                        metrics.recordDrop(SignalingMetrics.DropReason.NO_DEVICE);
+                        event(EventLog.Type.DROPPED, clientId, deviceId, raw.text.length(), "candidates: no device");
+                    }
+                    return;
+                }
+                deliverCandidates(serverSession, items);
+                event(EventLog.Type.CANDIDATE, clientId, deviceId, raw.text.length(), null);
             }
         } catch (Exception e) {
-            logger.error("Failed to forward ICE candidate", e);
+            metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
+            logger.error("Failed to forward ICE candidates", e);
+        }
+    }
+    
+    /**
+     * 设备离线（或仍有待补发的消息）且开启了离线暂存时，暂存客户端发往设备的消息
+     * @return 消息已暂存时返回true
+     */
+    private boolean holdForDevice(String clientId, String deviceId, String message, boolean candidate) {
+        if (pendingBuffer == null || deviceId == null) {
+            return false;
+        }
+        if (isDeviceOnline(deviceId) && !pendingBuffer.hasPending(deviceId)) {
+            return false;
+        }
+        
+        pendingBuffer.add(deviceId, new PendingMessageBuffer.Pending(clientId, message, candidate), this::discardPending);
+        // 设备可能在暂存期间重新上线
+        if (isDeviceOnline(deviceId)) {
+            replayPending(deviceId);
+        }
+        return true;
+    }
+    
+    /**
+     * 按原顺序补发设备暂存的消息，连续的candidate合并为一次发送
+     */
+    private void replayPending(String deviceId) {
+        Session device = deviceRegistry.lookup(deviceId);
+        if (device == null) {
+            replayPendingToNode(deviceId);
+            return;
+        }
+        
+        pendingBuffer.replay(deviceId, messages -> {
+            flushCandidates(device);
+            boolean capable = device.batchCapable;
+            List<String> candidateRun = new ArrayList<>();
+            int replayed = 0;
+            for (PendingMessageBuffer.Pending pending : messages) {
+                if (!clients.containsKey(pending.clientId)) {
+                    // 客户端已断开，不再补发
+                    continue;
+                }
+                if (pending.candidate && capable) {
+                    candidateRun.add(pending.message);
+                } else {
+                    if (!candidateRun.isEmpty()) {
+                        sendCandidates(device, candidateRun);
+                        candidateRun = new ArrayList<>();
+                    }
+                    if (pending.candidate) {
+                        sendCandidates(device, Collections.singletonList(pending.message));
+                    } else {
+                        send(device, pending.message);
+                    }
+                }
+                replayed++;
+            }
+            if (!candidateRun.isEmpty()) {
+                sendCandidates(device, candidateRun);
+            }
+            logger.info("Replayed {} held messages to device {}", replayed, deviceId);
+        }, this::expirePending);
+    }
+    
+    /**
+     * 设备连接在其它节点时，按原顺序经集群转发暂存的消息
+     */
+    private void replayPendingToNode(String deviceId) {
+        String nodeId = remoteNodeOfDevice(deviceId);
+        if (nodeId == null) {
+            return;
+        }
+        
+        pendingBuffer.replay(deviceId, messages -> {
+            int replayed = 0;
+            for (PendingMessageBuffer.Pending pending : messages) {
+                if (!clients.containsKey(pending.clientId)) {
+                    continue;
+                }
+                ClusterMessage forward = new ClusterMessage(ClusterMessage.Kind.TO_DEVICE,
+                        deviceId, pending.clientId, pending.message, pending.candidate);
+                if (!cluster.getTransport().send(cluster.getNodeId(), nodeId, forward)) {
+                    notifyUndelivered(pending);
+                    continue;
+                }
+                replayed++;
+            }
+            logger.info("Replayed {} held messages to device {} on node {}", replayed, deviceId, nodeId);
+        }, this::expirePending);
+    }
+    
+    /**
+     * 设备是否在线（本节点或集群中的其它节点）
+     */
+    private boolean isDeviceOnline(String deviceId) {
+        return deviceRegistry.lookup(deviceId) != null || remoteNodeOfDevice(deviceId) != null;
+    }
+    
+    /**
+     * 设备所在的其它节点，未开启集群模式或设备不在其它节点时返回null
+     */
+    private String remoteNodeOfDevice(String deviceId) {
+        if (cluster == null || deviceId == null) {
+            return null;
+        }
+        String nodeId = cluster.getDirectory().locateDevice(deviceId);
+        return nodeId != null && !nodeId.equals(cluster.getNodeId()) ? nodeId : null;
+    }
+    
+    /**
+     * 客户端所在的其它节点，未开启集群模式或客户端不在其它节点时返回null
+     */
+    private String remoteNodeOfClient(String clientId, String deviceId) {
+        if (cluster == null || deviceId == null) {
+            return null;
+        }
+        String nodeId = cluster.getDirectory().locateClient(clientId, deviceId);
+        return nodeId != null && !nodeId.equals(cluster.getNodeId()) ? nodeId : null;
+    }
+    
+    /**
+     * 设备的所有客户端ID，集群模式下包含其它节点上的客户端
+     */
+    private Set<String> clientIdsOf(String deviceId) {
+        if (cluster == null) {
+            return deviceRegistry.clientsOf(deviceId);
+        }
+        return cluster.getDirectory().clientsOf(deviceId).keySet();
+    }
+    
+    /**
+     * 把客户端发往设备的消息转发给设备所在的节点
+     * @return 设备不在其它节点或节点不可达时返回false
+     */
+    private boolean forwardToDevice(String clientId, String deviceId, String message, boolean candidate) {
+        String nodeId = remoteNodeOfDevice(deviceId);
+        if (nodeId == null) {
+            return false;
+        }
+        return cluster.getTransport().send(cluster.getNodeId(), nodeId,
+                new ClusterMessage(ClusterMessage.Kind.TO_DEVICE, deviceId, clientId, message, candidate));
+    }
+    
+    /**
+     * 把设备发往客户端的消息转发给客户端所在的节点
+     * @return 客户端不在其它节点或节点不可达时返回false
+     */
+    private boolean forwardToClient(String deviceId, String clientId, String message, boolean candidate) {
+        String nodeId = remoteNodeOfClient(clientId, deviceId);
+        if (nodeId == null) {
+            return false;
+        }
+        return cluster.getTransport().send(cluster.getNodeId(), nodeId,
+                new ClusterMessage(ClusterMessage.Kind.TO_CLIENT, deviceId, clientId, message, candidate));
+    }
+    
+    /**
+     * 把设备广播的candidate转发给有该设备客户端的其它节点，每个节点一条
+     */
+    private void forwardBroadcast(String deviceId, String message) {
+        if (cluster == null) {
+            return;
+        }
+        Set<String> nodeIds = new HashSet<>(cluster.getDirectory().clientsOf(deviceId).values());
+        nodeIds.remove(cluster.getNodeId());
+        for (String nodeId : nodeIds) {
+            cluster.getTransport().send(cluster.getNodeId(), nodeId,
+                    new ClusterMessage(ClusterMessage.Kind.BROADCAST, deviceId, null, message, true));
+        }
+    }
+    
+    /**
+     * 处理其它节点转发来的消息，交付给本节点的连接
+     */
+    private void onClusterMessage(String fromNodeId, ClusterMessage message) {
+        try {
+            switch (message.getKind()) {
+                case TO_DEVICE: {
+                    Session device = deviceRegistry.lookup(message.getDeviceId());
+                    if (device == null) {
+                        metrics.recordDrop(SignalingMetrics.DropReason.NO_DEVICE);
+                        logger.debug("Device {} no longer on this node, dropped message from node {}",
+                                message.getDeviceId(), fromNodeId);
+                        return;
+                    }
+                    executeFor(device, fromNodeId, () -> deliver(device, message.getPayload(), message.isCandidate()));
+                    break;
+                }
+                case TO_CLIENT: {
+                    Session client = clientOfDevice(message.getClientId(), message.getDeviceId());
+                    if (client == null) {
+                        metrics.recordDrop(SignalingMetrics.DropReason.NO_CLIENT);
+                        logger.debug("Client {} no longer on this node, dropped message from node {}",
+                                message.getClientId(), fromNodeId);
+                        return;
+                    }
+                    executeFor(client, fromNodeId, () -> deliver(client, message.getPayload(), message.isCandidate()));
+                    break;
+                }
+                case BROADCAST:
+                    if (processor == null) {
+                        broadcastCandidate(message.getDeviceId(), message.getPayload());
+                        break;
+                    }
+                    for (Session client : deviceRegistry.clientSessionsOf(message.getDeviceId())) {
+                        // FanOut 不能跨处理线程共用，每个客户端单独编码
+                        executeFor(client, fromNodeId, () -> offerCandidate(client, new FanOut(message.getPayload())));
+                    }
+                    break;
+                case DEVICE_ONLINE:
+                    retireMovedDevice(message.getDeviceId(), fromNodeId);
+                    if (pendingBuffer != null) {
+                        replayPending(message.getDeviceId());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
+            logger.error("Failed to handle cluster message from node {}", fromNodeId, e);
+        }
+    }
+    
+    /**
+     * 在接收方连接的处理线程上执行其它节点转发来的消息
+     *
+     * 集群传输在发送节点的线程上调用 onClusterMessage，直接交付会与本节点处理该连接消息的线程并发，
+     * 排入同一条处理线程后与本节点发给该连接的消息保持顺序。
+     */
+    private void executeFor(Session recipient, String fromNodeId, Runnable task) {
+        if (processor == null) {
+            task.run();
+            return;
+        }
+        processor.execute(recipient.conn, () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                metrics.recordError(SignalingMetrics.ErrorReason.HANDLER);
+                logger.error("Failed to handle cluster message from node {}", fromNodeId, e);
+            }
+        });
+    }
+    
+    /**
+     * 设备在其它节点重新上线时，本节点上可能还留着它的旧会话（旧连接半开，尚未检测到断开），
+     * 与 onOpen 替换旧连接相同：注销并关闭旧会话，本节点的客户端改为经集群转发到新节点
+     */
+    private void retireMovedDevice(String deviceId, String fromNodeId) {
+        if (cluster.getNodeId().equals(fromNodeId)) {
+            return;
+        }
+        String owner = cluster.getDirectory().locateDevice(deviceId);
+        if (owner == null || owner.equals(cluster.getNodeId())) {
+            return;
+        }
+        Session stale = deviceRegistry.lookup(deviceId);
+        if (stale != null && deviceRegistry.unregister(deviceId, stale)) {
+            logger.warn("Device {} reconnected on node {}, closing old connection", deviceId, owner);
+            // 旧会话先结束，关闭回调不会再从目录中注销（目录已指向新节点）
+            retire(stale);
+        }
+    }
+    
+    /**
+     * 交付一条消息，offer/answer发送前先发出待合并的candidate
+     */
+    private void deliver(Session recipient, String message, boolean candidate) {
+        if (candidate) {
+            deliverCandidate(recipient, message);
+        } else {
+            flushCandidates(recipient);
+            send(recipient, message);
+        }
+    }
+    
+    /**
+     * 广播candidate给本节点上该设备的所有客户端，消息只编码一次
+     * @return 直接写入套接字的客户端数
+     */
+    private int broadcastCandidate(String deviceId, String message) {
+        return broadcastCandidate(deviceId, message, null);
+    }
+    
+    /**
+     * @param binary 与 message 内容相同的二进制消息，可以为null
+     */
+    private int broadcastCandidate(String deviceId, String message, ByteBuffer binary) {
+        FanOut fanOut = new FanOut(message, binary);
+        for (Session client : deviceRegistry.clientSessionsOf(deviceId)) {
+            offerCandidate(client, fanOut);
+        }
+        return fanOut.sentCount();
+    }
+    
+    private void offerCandidate(Session client, FanOut fanOut) {
+        if (!client.isClosed()) {
+            trackCongestion(client, client.outbound.offerCandidate(fanOut), fanOut.payload().length());
+        }
+    }
+    
+    private void expirePending(PendingMessageBuffer.Pending pending) {
+        metrics.recordDrop(SignalingMetrics.DropReason.HELD_EXPIRED);
+        logger.debug("Held message from {} expired", pending.clientId);
+        notifyUndelivered(pending);
+    }
+    
+    private void discardPending(PendingMessageBuffer.Pending pending) {
+        metrics.recordDrop(SignalingMetrics.DropReason.HELD_DISCARDED);
+        logger.debug("Held message buffer full, dropped message from {}", pending.clientId);
+        notifyUndelivered(pending);
+    }
+    
+    /**
+     * 暂存的offer未能送达时通知客户端，与设备离线时的处理一致
+     */
+    private void notifyUndelivered(PendingMessageBuffer.Pending pending) {
+        if (!pending.candidate) {
+            Session client = clients.get(pending.clientId);
+            if (client != null) {
+                sendError(client, "No server available");
+            }
+        }
+    }
+    
+    /**
+     * 发送一条candidate消息，开启合并发送且接收方支持时进入批次
+     */
+    private void deliverCandidate(Session recipient, String message) {
+        if (candidateBatcher != null && recipient.batchCapable) {
+            candidateBatcher.add(recipient.conn, message);
+        } else {
+            sendCandidates(recipient, Collections.singletonList(message));
+        }
+    }
+    
+    /**
+     * 发送多条candidate消息，接收方支持时合并为一条candidates消息
+     */
+    private void deliverCandidates(Session recipient, List<String> messages) {
+        if (!recipient.batchCapable) {
+            for (String message : messages) {
+                sendCandidates(recipient, Collections.singletonList(message));
+            }
+        } else if (candidateBatcher != null) {
+            for (String message : messages) {
+                candidateBatcher.add(recipient.conn, message);
+            }
+        } else if (!messages.isEmpty()) {
+            sendCandidates(recipient, messages);
+        }
+    }
+    
+    /**
+     * 通过发送队列发送消息
+     * @return 背压信号，连接已不存在时返回CLOSED
+     */
+    private OutboundQueue.Result send(Session recipient, String message) {
+        if (recipient == null || recipient.isClosed()) {
+            return OutboundQueue.Result.CLOSED;
+        }
+        return trackCongestion(recipient, recipient.outbound.offer(message), message.length());
+    }
+    
+    /**
+     * 通过发送队列发送candidate消息，多条时合并为一条candidates消息（调用方保证接收方支持）
+     */
+    private OutboundQueue.Result sendCandidates(Session recipient, List<String> messages) {
+        if (recipient == null || recipient.isClosed()) {
+            return OutboundQueue.Result.CLOSED;
+        }
+        int length = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            length += messages.get(i).length();
+        }
+        return trackCongestion(recipient, recipient.outbound.offerCandidates(messages), length);
+    }
+    
+    /**
+     * 记录发送结果：积压的队列交给定时任务继续交付，并更新发送和丢弃计数
+     */
+    private OutboundQueue.Result trackCongestion(Session recipient, OutboundQueue.Result result, int length) {
+        OutboundQueue queue = recipient.outbound;
+        if (result != OutboundQueue.Result.CLOSED) {
+            metrics.recordSent(length);
+            recipient.recordSent();
+        }
+        switch (result) {
+            case QUEUED:
+                congestedQueues.add(queue);
+                break;
+            case DROPPED:
+                congestedQueues.add(queue);
+                metrics.recordDrop(SignalingMetrics.DropReason.SLOW_CONSUMER);
+                logger.debug("Outbound queue full, dropped oldest candidate (depth={} messages, {} bytes)",
+                        queue.depthMessages(), queue.depthBytes());
+                break;
+            case CLOSED:
+                congestedQueues.remove(queue);
+                break;
+            default:
+                break;
+        }
+        return result;
+    }
+    
+    /**
+     * 定时把积压的消息交付给套接字
+     */
+    private void drainOutboundQueues() {
+        for (OutboundQueue queue : congestedQueues) {
+            try {
+                if (!queue.drain()) {
+                    congestedQueues.remove(queue);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to drain outbound queue", e);
+                congestedQueues.remove(queue);
+            }
+        }
+    }
+    
+    /**
+     * 获取各连接当前的发送队列深度
+     * @return 连接ID -> [消息数, 字节数]
+     */
+    public Map<String, long[]> getOutboundQueueDepths() {
+        Map<String, long[]> depths = new HashMap<>();
+        for (Session session : clients.values()) {
+            depths.put(session.id, new long[] {session.outbound.depthMessages(), session.outbound.depthBytes()});
+        }
+        for (Session session : deviceRegistry.sessions()) {
+            depths.put(session.id, new long[] {session.outbound.depthMessages(), session.outbound.depthBytes()});
+        }
+        return depths;
+    }
+    
+    public int getClientCount() {
+        return clients.size();
+    }
+    
+    public int getDeviceCount() {
+        return deviceRegistry.deviceCount();
+    }
+    
+    /**
+     * 处理线程队列中等待的消息数
+     */
+    public int getProcessingQueueDepth() {
+        return processor != null ? processor.queuedTasks() : 0;
+    }
+    
+    /**
+     * 事件日志缓冲区中等待写出的事件数
+     */
+    public int getEventLogDepth() {
+        return eventLog != null ? eventLog.queuedEvents() : 0;
+    }
+    
+    /**
+     * WSS缓冲区池中空闲的缓冲区数
+     */
+    public int getTlsPooledBuffers() {
+        return tlsFactory != null ? tlsFactory.pooledBuffers() : 0;
+    }
+    
+    /**
+     * 设备离线暂存中的消息数
+     */
+    public int getHeldMessageCount() {
+        return pendingBuffer != null ? pendingBuffer.size() : 0;
+    }
+    
+    public SignalingConfig getConfig() {
+        return config;
+    }
+    
+    public SignalingMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 底层WebSocket服务器（第一个接收实例），供基准测试直接调用 onOpen/onMessage
+     */
+    WebSocketServer getWebSocketServer() {
+        return webSocketServers.isEmpty() ? null : webSocketServers.get(0);
+    }
+    
+    /**
+     * 发出接收方待合并的candidate，在发送offer/answer前调用以保证顺序
+     */
+    private void flushCandidates(Session recipient) {
+        if (candidateBatcher != null) {
+            candidateBatcher.flush(recipient.conn);
+        }
+    }
+    
+    /**
+     * 查找绑定到指定设备的客户端会话，不属于该设备时返回null
+     */
+    private Session clientOfDevice(String clientId, String deviceId) {
+        Session client = clients.get(clientId);
+        if (client == null || !client.deviceId.equals(deviceId)) {
+            return null;
         }
+        return client;
     }
     
-    private void sendError(WebSocket conn, String error) {
+    private void sendError(Session session, String error) {
         try {
             JSONObject errorMsg = new JSONObject();
             errorMsg.put("type", "error");
             errorMsg.put("message", error);
-            conn.send(errorMsg.toString());
+            send(session, errorMsg.toString());
         } catch (Exception e) {
             logger.error("Failed to send error message", e);
         }
@@ -1,22 +1,79 @@
 package com.wingos.signaling;
 
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * WebSocket客户端封装
  * 用于服务端和客户端连接到独立信令服务器
+ * 
+ * 可选开启ICE candidate合并发送（setCandidateBatching），
+ * 仅当信令服务器在连接确认中声明支持candidates时生效，否则仍逐条发送
+ * 
+ * 可选使用二进制协议（构造参数 binaryProtocol），通过 Sec-WebSocket-Protocol 协商，
+ * 服务器不支持时自动使用JSON文本
+ * 
+ * 可选开启 permessage-deflate（构造参数 compression），SDP等较大的消息压缩发送，
+ * 对端是本项目的信令服务器时使用SDP预置字典
+ * 
+ * MessageHandler 回调默认不在 WebSocket 读线程上执行，而是按收到的顺序在单独的线程上依次执行
+ * （Java 21 及以上为虚拟线程），耗时的回调不会阻塞读取和心跳；可用 setCallbackExecutor 替换
+ * 
+ * 可选开启自动重连（setAutoReconnect），断线后按带随机抖动的指数退避重连，并携带连接确认中的
+ * 恢复令牌，信令服务器恢复原来的客户端ID和路由，已建立的 PeerConnection 无需重新协商
  */
 public class SignalingWebSocketClient extends WebSocketClient {
     private static final Logger logger = LoggerFactory.getLogger(SignalingWebSocketClient.class);
     
+    // 所有实例共享的定时器（合并发送、自动重连）
+    private static final ScheduledExecutorService batchScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "signaling-client-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     private final MessageHandler messageHandler;
     private volatile boolean connected = false;
+    private volatile boolean serverSupportsBatch = false;
+    private volatile boolean binaryNegotiated = false;
+    private volatile CallbackDispatcher callbacks =
+            new CallbackDispatcher(CallbackDispatcher.defaultRunner(), CallbackDispatcher.DEFAULT_QUEUE_SIZE);
+    
+    // candidate合并发送：toClientId -> 待发送的candidate
+    private final Map<String, List<JSONObject>> pendingCandidates = new HashMap<>();
+    private volatile long candidateBatchWindowMs = 0;
+    private volatile int candidateBatchMaxCount = 20;
+    
+    // 自动重连：初始延迟（毫秒，0表示关闭）、最大延迟和最大重试次数（0表示不限）
+    private volatile long reconnectInitialDelayMs = 0;
+    private volatile long reconnectMaxDelayMs = 30000;
+    private volatile int reconnectMaxAttempts = 0;
+    private volatile int reconnectAttempts = 0;
+    private volatile boolean everConnected = false;
+    private volatile boolean awaitingReconnectAck = false;
+    private volatile ScheduledFuture<?> reconnectTask;
+    private volatile String clientId;
     
     public interface MessageHandler {
         void onConnected();
@@ -25,20 +82,115 @@ public class SignalingWebSocketClient extends WebSocketClient {
         void onAnswer(String sdp);
         void onIceCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId);
         void onError(String error);
+        
+        /**
+         * 开启自动重连时，断线后准备第 attempt 次重连，代替 onDisconnected；放弃重连时仍调用 onDisconnected
+         */
+        default void onReconnecting(int attempt, long delayMs) {
+        }
+        
+        /**
+         * 重连后恢复了原会话：客户端ID和路由不变，无需重新协商。未能恢复时调用 onConnected
+         */
+        default void onResumed() {
+        }
     }
     
     public SignalingWebSocketClient(URI serverUri, MessageHandler messageHandler) {
-        super(serverUri);
+        this(serverUri, messageHandler, false);
+    }
+    
+    /**
+     * @param binaryProtocol 是否请求二进制协议
+     */
+    public SignalingWebSocketClient(URI serverUri, MessageHandler messageHandler, boolean binaryProtocol) {
+        this(serverUri, messageHandler, binaryProtocol, false);
+    }
+    
+    /**
+     * @param binaryProtocol 是否请求二进制协议
+     * @param compression 是否请求 permessage-deflate
+     */
+    public SignalingWebSocketClient(URI serverUri, MessageHandler messageHandler, boolean binaryProtocol, boolean compression) {
+        super(serverUri, draft(binaryProtocol, compression));
         this.messageHandler = messageHandler;
         setConnectionLostTimeout(60);
+        setTcpNoDelay(true);
+        // 声明支持接收candidates消息
+        addHeader(HandshakeParams.FEATURES_HEADER, CandidateBatcher.FEATURE);
+    }
+    
+    private static Draft_6455 draft(boolean binaryProtocol, boolean compression) {
+        List<IExtension> extensions = compression
+                ? Collections.<IExtension>singletonList(new SdpDeflateExtension(SdpDeflateExtension.DEFAULT_THRESHOLD,
+                        true, new SdpDeflateExtension.Stats()))
+                : Collections.<IExtension>emptyList();
+        return binaryProtocol ? BinaryCodec.draft(extensions) : new Draft_6455(extensions);
+    }
+    
+    /**
+     * 开启ICE candidate合并发送
+     * @param windowMs 合并窗口（毫秒），0表示关闭
+     * @param maxCount 单批最大数量，达到后立即发送
+     */
+    public void setCandidateBatching(long windowMs, int maxCount) {
+        this.candidateBatchWindowMs = windowMs;
+        this.candidateBatchMaxCount = maxCount;
+    }
+    
+    /**
+     * 开启自动重连，第n次重连前等待 min(maxDelayMs, initialDelayMs * 2^(n-1)) 的 50%~100%（随机抖动）。
+     * 只在连接成功过之后、非正常关闭（关闭码不是1000）时重连，调用 close() 取消等待中的重连
+     * @param initialDelayMs 初始延迟（毫秒），0表示关闭
+     * @param maxAttempts 连续重连失败的最大次数，0表示不限
+     */
+    public void setAutoReconnect(long initialDelayMs, long maxDelayMs, int maxAttempts) {
+        this.reconnectInitialDelayMs = initialDelayMs;
+        this.reconnectMaxDelayMs = maxDelayMs;
+        this.reconnectMaxAttempts = maxAttempts;
+    }
+    
+    /**
+     * 信令服务器分配的客户端ID，尚未收到连接确认时为null
+     */
+    public String getClientId() {
+        return clientId;
+    }
+    
+    /**
+     * 替换执行 MessageHandler 回调的线程，需在 connect 之前调用
+     * @param executor 提供执行回调的线程，回调仍按收到的顺序依次执行；传入 Runnable::run 则在读线程上同步执行
+     * @param queueSize 等待执行的回调上限，超出时阻塞读线程
+     */
+    public void setCallbackExecutor(Executor executor, int queueSize) {
+        this.callbacks = new CallbackDispatcher(executor, queueSize);
+    }
+    
+    /**
+     * 等待执行的回调数
+     */
+    public int getCallbackQueueDepth() {
+        return callbacks.queuedCallbacks();
+    }
+    
+    /**
+     * 回调队列已满、读线程被阻塞的次数
+     */
+    public long getCallbackQueueFullCount() {
+        return callbacks.queueFullCount();
     }
     
     @Override
     public void onOpen(ServerHandshake handshake) {
-        logger.info("Connected to signaling server: {}", getURI());
+        binaryNegotiated = BinaryCodec.isBinary(getConnection());
+        logger.info("Connected to signaling server: {} (binary={}, deflate={})", getURI(), binaryNegotiated,
+                SdpDeflateExtension.isNegotiated(getConnection()));
         connected = true;
-        if (messageHandler != null) {
-            messageHandler.onConnected();
+        // 重连时等连接确认，根据是否恢复了会话回调 onResumed 或 onConnected
+        awaitingReconnectAck = everConnected;
+        everConnected = true;
+        if (messageHandler != null && !awaitingReconnectAck) {
+            callbacks.execute(messageHandler::onConnected);
         }
     }
     
@@ -51,30 +203,37 @@ public class SignalingWebSocketClient extends WebSocketClient {
             switch (type) {
                 case "connected":
                     logger.info("Connection acknowledged by signaling server");
+                    JSONArray features = json.optJSONArray("features");
+                    serverSupportsBatch = features != null
+                            && features.toList().contains(CandidateBatcher.FEATURE);
+                    onConnectionAck(json);
                     break;
                     
                 case "offer":
                     String offerSdp = json.getString("sdp");
                     String fromClientId = json.optString("fromClientId", null);
                     if (messageHandler != null) {
-                        messageHandler.onOffer(offerSdp, fromClientId);
+                        callbacks.execute(() -> messageHandler.onOffer(offerSdp, fromClientId));
                     }
                     break;
                     
                 case "answer":
                     String answerSdp = json.getString("sdp");
                     if (messageHandler != null) {
-                        messageHandler.onAnswer(answerSdp);
+                        callbacks.execute(() -> messageHandler.onAnswer(answerSdp));
                     }
                     break;
                     
                 case "candidate":
-                    String candidate = json.getString("candidate");
-                    String sdpMid = json.getString("sdpMid");
-                    int sdpMLineIndex = json.getInt("sdpMLineIndex");
-                    String fromId = json.optString("fromClientId", null);
-                    if (messageHandler != null) {
-                        messageHandler.onIceCandidate(candidate, sdpMid, sdpMLineIndex, fromId);
+                    dispatchCandidate(json, null);
+                    break;
+                    
+                case CandidateBatcher.BATCH_TYPE:
+                    // 批量candidate，逐条回调
+                    JSONArray candidates = json.getJSONArray("candidates");
+                    String batchFromId = json.optString("fromClientId", null);
+                    for (int i = 0; i < candidates.length(); i++) {
+                        dispatchCandidate(candidates.getJSONObject(i), batchFromId);
                     }
                     break;
                     
@@ -82,7 +241,7 @@ public class SignalingWebSocketClient extends WebSocketClient {
                     String error = json.optString("message", "Unknown error");
                     logger.error("Error from signaling server: {}", error);
                     if (messageHandler != null) {
-                        messageHandler.onError(error);
+                        callbacks.execute(() -> messageHandler.onError(error));
                     }
                     break;
                     
@@ -95,20 +254,141 @@ public class SignalingWebSocketClient extends WebSocketClient {
         }
     }
     
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        try {
+            BinaryCodec.Header header = BinaryCodec.scan(bytes);
+            if (header == null) {
+                logger.warn("Invalid binary message ({} bytes)", bytes.remaining());
+                return;
+            }
+            if (messageHandler == null) {
+                return;
+            }
+            
+            BinaryCodec.decode(bytes, header, new BinaryCodec.Sink() {
+                @Override
+                public void onSdp(byte type, String sdp) {
+                    if (type == BinaryCodec.OFFER) {
+                        callbacks.execute(() -> messageHandler.onOffer(sdp, header.fromClientId));
+                    } else {
+                        callbacks.execute(() -> messageHandler.onAnswer(sdp));
+                    }
+                }
+                
+                @Override
+                public void onCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId) {
+                    callbacks.execute(() -> messageHandler.onIceCandidate(candidate, sdpMid, sdpMLineIndex,
+                            fromClientId));
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Error parsing binary message", e);
+        }
+    }
+    
+    private void onConnectionAck(JSONObject ack) {
+        clientId = ack.optString("clientId", null);
+        reconnectAttempts = 0;
+        // 下次重连时携带新的恢复令牌
+        String resumeToken = ack.optString("resumeToken", null);
+        if (resumeToken != null) {
+            addHeader(HandshakeParams.RESUME_HEADER, resumeToken);
+        } else {
+            removeHeader(HandshakeParams.RESUME_HEADER);
+        }
+        
+        if (!awaitingReconnectAck) {
+            return;
+        }
+        awaitingReconnectAck = false;
+        boolean resumed = ack.optBoolean("resumed", false);
+        logger.info("Reconnected to signaling server as {} (resumed={})", clientId, resumed);
+        if (messageHandler != null) {
+            callbacks.execute(resumed ? messageHandler::onResumed : messageHandler::onConnected);
+        }
+    }
+    
+    /**
+     * 是否已协商使用二进制协议
+     */
+    public boolean isBinaryProtocol() {
+        return binaryNegotiated;
+    }
+    
+    private void dispatchCandidate(JSONObject json, String defaultFromId) {
+        String candidate = json.getString("candidate");
+        String sdpMid = json.getString("sdpMid");
+        int sdpMLineIndex = json.getInt("sdpMLineIndex");
+        String fromId = json.optString("fromClientId", defaultFromId);
+        if (messageHandler != null) {
+            callbacks.execute(() -> messageHandler.onIceCandidate(candidate, sdpMid, sdpMLineIndex, fromId));
+        }
+    }
+    
     @Override
     public void onClose(int code, String reason, boolean remote) {
         logger.info("Disconnected from signaling server: code={}, reason={}", code, reason);
         connected = false;
+        synchronized (pendingCandidates) {
+            pendingCandidates.clear();
+        }
+        if (scheduleReconnect(code)) {
+            return;
+        }
+        if (messageHandler != null) {
+            callbacks.execute(messageHandler::onDisconnected);
+        }
+    }
+    
+    /**
+     * 开启了自动重连且不是正常关闭时安排下一次重连
+     * @return 已安排重连时返回true
+     */
+    private boolean scheduleReconnect(int code) {
+        long initialDelayMs = reconnectInitialDelayMs;
+        if (initialDelayMs <= 0 || !everConnected || code == CloseFrame.NORMAL) {
+            return false;
+        }
+        int attempt = reconnectAttempts + 1;
+        int maxAttempts = reconnectMaxAttempts;
+        if (maxAttempts > 0 && attempt > maxAttempts) {
+            logger.warn("Giving up reconnecting to signaling server after {} attempts", maxAttempts);
+            return false;
+        }
+        reconnectAttempts = attempt;
+        
+        // 指数退避，取其 50%~100% 避免大量客户端同时重连
+        long delayMs = Math.min(reconnectMaxDelayMs, initialDelayMs << Math.min(attempt - 1, 20));
+        delayMs = delayMs / 2 + ThreadLocalRandom.current().nextLong(delayMs / 2 + 1);
+        logger.info("Reconnecting to signaling server in {} ms (attempt {})", delayMs, attempt);
         if (messageHandler != null) {
-            messageHandler.onDisconnected();
+            long delay = delayMs;
+            callbacks.execute(() -> messageHandler.onReconnecting(attempt, delay));
+        }
+        // reconnect 不能在 WebSocket 自己的线程上调用
+        reconnectTask = batchScheduler.schedule(this::reconnect, delayMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+    
+    /**
+     * 关闭连接，并取消等待中的自动重连
+     */
+    @Override
+    public void close() {
+        ScheduledFuture<?> task = reconnectTask;
+        if (task != null) {
+            task.cancel(false);
         }
+        super.close();
     }
     
     @Override
     public void onError(Exception ex) {
         logger.error("WebSocket error", ex);
         if (messageHandler != null) {
-            messageHandler.onError(ex.getMessage());
+            String error = ex.getMessage();
+            callbacks.execute(() -> messageHandler.onError(error));
         }
     }
     
@@ -131,6 +411,16 @@ public class SignalingWebSocketClient extends WebSocketClient {
             json.put("candidate", candidate);
             json.put("sdpMid", sdpMid);
             json.put("sdpMLineIndex", sdpMLineIndex);
+            
+            if (candidateBatchWindowMs > 0 && serverSupportsBatch) {
+                queueCandidate(json, toClientId);
+                return;
+            }
+            
+            if (binaryNegotiated) {
+                send(BinaryCodec.encodeCandidate(toClientId, null, candidate, sdpMid, sdpMLineIndex));
+                return;
+            }
             if (toClientId != null) {
                 json.put("toClientId", toClientId);
             }
@@ -140,6 +430,51 @@ public class SignalingWebSocketClient extends WebSocketClient {
         }
     }
     
+    private void queueCandidate(JSONObject json, String toClientId) {
+        synchronized (pendingCandidates) {
+            List<JSONObject> batch = pendingCandidates.computeIfAbsent(toClientId, k -> new ArrayList<>());
+            batch.add(json);
+            if (batch.size() >= candidateBatchMaxCount) {
+                flushCandidates(toClientId);
+            } else if (batch.size() == 1) {
+                batchScheduler.schedule(() -> {
+                    synchronized (pendingCandidates) {
+                        flushCandidates(toClientId);
+                    }
+                }, candidateBatchWindowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    /**
+     * 发送指定目标的待合并candidate，调用方需持有pendingCandidates锁
+     */
+    private void flushCandidates(String toClientId) {
+        List<JSONObject> batch = pendingCandidates.remove(toClientId);
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        
+        try {
+            if (batch.size() == 1) {
+                JSONObject json = batch.get(0);
+                if (toClientId != null) {
+                    json.put("toClientId", toClientId);
+                }
+                sendSignal(json.toString());
+            } else {
+                List<String> items = new ArrayList<>(batch.size());
+                for (JSONObject json : batch) {
+                    items.add(json.toString());
+                }
+                sendSignal(CandidateBatcher.encode(items, toClientId));
+            }
+            logger.debug("Sent {} ICE candidates to signaling server", batch.size());
+        } catch (Exception e) {
+            logger.error("Failed to send ICE candidates", e);
+        }
+    }
+    
     private void sendMessage(String type, String sdp, String toClientId) {
         if (!isConnected()) {
             logger.warn("Not connected, cannot send {}", type);
@@ -147,17 +482,38 @@ public class SignalingWebSocketClient extends WebSocketClient {
         }
         
         try {
-            JSONObject json = new JSONObject();
-            json.put("type", type);
-            json.put("sdp", sdp);
-            if (toClientId != null) {
-                json.put("toClientId", toClientId);
+            // 先发出待合并的candidate，保证消息顺序
+            synchronized (pendingCandidates) {
+                flushCandidates(toClientId);
+            }
+            
+            if (binaryNegotiated) {
+                byte binaryType = "offer".equals(type) ? BinaryCodec.OFFER : BinaryCodec.ANSWER;
+                send(BinaryCodec.encodeSdp(binaryType, toClientId, null, sdp));
+            } else {
+                JSONObject json = new JSONObject();
+                json.put("type", type);
+                json.put("sdp", sdp);
+                if (toClientId != null) {
+                    json.put("toClientId", toClientId);
+                }
+                send(json.toString());
             }
-            send(json.toString());
             logger.debug("Sent {} to signaling server", type);
         } catch (Exception e) {
             logger.error("Failed to send {}", type, e);
         }
     }
+    
+    /**
+     * 发送JSON文本信令消息，已协商二进制协议时转换为二进制帧
+     */
+    private void sendSignal(String text) {
+        ByteBuffer binary = binaryNegotiated ? BinaryCodec.fromJson(text) : null;
+        if (binary != null) {
+            send(binary);
+        } else {
+            send(text);
+        }
+    }
 }
-
@@ -0,0 +1,14 @@
+package com.wingos.signaling;
+
+/**
+ * 慢速连接处理策略
+ * 连接的发送队列超过上限时使用
+ */
+public enum SlowConsumerPolicy {
+    /** 丢弃最早的 candidate，offer/answer 不丢弃 */
+    DROP_OLDEST_CANDIDATE,
+    /** 合并相邻的 candidate，仍超限时丢弃最早的 candidate */
+    COALESCE,
+    /** 直接关闭连接 */
+    CLOSE
+}
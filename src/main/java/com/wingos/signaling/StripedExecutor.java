@@ -0,0 +1,110 @@
+package com.wingos.signaling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 按键分条的执行器
+ *
+ * 每条（stripe）一个线程和一个有界队列，同一个键的任务总是进入同一条，按提交顺序执行；
+ * 不同的键分散到各条上并行执行。信令服务器以连接为键，保证同一连接的消息按顺序处理，
+ * 而一个连接上的慢处理只影响同一条上的连接，不会阻塞 WebSocket 的解码线程。
+ *
+ * 队列满时 execute 阻塞提交线程（解码线程），把背压传递到TCP，而不是丢弃或乱序执行。
+ */
+final class StripedExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(StripedExecutor.class);
+
+    private final Stripe[] stripes;
+    private final Runnable onQueueFull;
+    private volatile boolean shutdown;
+
+    private final class Stripe extends Thread {
+        final BlockingQueue<Runnable> queue;
+
+        Stripe(String name, int queueSize) {
+            super(name);
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Task failed on {}", getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param onQueueFull 提交时队列已满（即将阻塞）时调用，用于统计
+     */
+    StripedExecutor(String name, int stripeCount, int queueSize, Runnable onQueueFull) {
+        this.onQueueFull = onQueueFull;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(name + "-" + i, queueSize);
+            stripes[i].start();
+        }
+    }
+
+    /**
+     * 提交任务，同一个键的任务按提交顺序执行
+     */
+    void execute(Object key, Runnable task) {
+        if (shutdown) {
+            return;
+        }
+        BlockingQueue<Runnable> queue = stripeOf(key).queue;
+        if (queue.offer(task)) {
+            return;
+        }
+        onQueueFull.run();
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Stripe stripeOf(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    /**
+     * 所有条上排队的任务数
+     */
+    int queuedTasks() {
+        int queued = 0;
+        for (Stripe stripe : stripes) {
+            queued += stripe.queue.size();
+        }
+        return queued;
+    }
+
+    /**
+     * 停止所有线程，未执行的任务被丢弃
+     */
+    void shutdown() {
+        shutdown = true;
+        for (Stripe stripe : stripes) {
+            stripe.interrupt();
+            stripe.queue.clear();
+        }
+    }
+}
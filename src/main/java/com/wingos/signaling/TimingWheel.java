@@ -0,0 +1,130 @@
+package com.wingos.signaling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 哈希时间轮
+ *
+ * 把到期时间按 tick 取模放进固定数量的桶，advance 每次只处理当前 tick 对应的一个桶，
+ * 而不是扫描全部条目；超过一圈的条目留在桶里，等转到对应的圈数再处理。
+ * 10万个条目均匀分布在各个 tick 上，每个 tick 只处理其中一小部分。
+ *
+ * schedule 可以在任意线程调用（先进入无锁队列），advance 和处理回调只在一个线程上执行，
+ * 桶本身不需要同步。
+ */
+final class TimingWheel<T> {
+
+    /**
+     * 到期处理
+     */
+    interface Handler<T> {
+        /**
+         * @param now 当前时间（System.nanoTime）
+         * @return 下次到期的延迟（纳秒），小于0表示不再调度
+         */
+        long onTimeout(T item, long now);
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        long deadlineNanos;
+        long deadlineTick;
+
+        Entry(T item, long deadlineNanos) {
+            this.item = item;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private final long tickNanos;
+    private final List<Entry<T>>[] buckets;
+    private final int mask;
+    private final long startNanos;
+    private final Handler<T> handler;
+    private final Queue<Entry<T>> added = new ConcurrentLinkedQueue<>();
+    private long currentTick; // 只由 advance 的线程访问
+    private volatile int size;
+
+    /**
+     * @param tickMs 每个 tick 的时间
+     * @param bucketCount 桶数，向上取整为2的幂
+     */
+    TimingWheel(long tickMs, int bucketCount, Handler<T> handler) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        int count = Integer.highestOneBit(Math.max(2, bucketCount - 1)) << 1;
+        // 不能直接创建泛型数组，数组只在本类内部使用，转换是安全的
+        @SuppressWarnings("unchecked")
+        List<Entry<T>>[] buckets = (List<Entry<T>>[]) new List<?>[count];
+        for (int i = 0; i < count; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.buckets = buckets;
+        this.mask = count - 1;
+        this.startNanos = System.nanoTime();
+        this.handler = handler;
+    }
+
+    /**
+     * 在 delayNanos 之后调用 handler
+     */
+    void schedule(T item, long delayNanos) {
+        added.add(new Entry<>(item, System.nanoTime() + delayNanos));
+    }
+
+    /**
+     * 处理到当前时间为止的所有 tick，由定时任务周期调用
+     */
+    void advance() {
+        long now = System.nanoTime();
+        long targetTick = (now - startNanos) / tickNanos;
+        Entry<T> entry;
+        while ((entry = added.poll()) != null) {
+            place(entry);
+            size++;
+        }
+        for (; currentTick <= targetTick; currentTick++) {
+            List<Entry<T>> bucket = buckets[(int) currentTick & mask];
+            for (int i = 0; i < bucket.size(); ) {
+                entry = bucket.get(i);
+                if (entry.deadlineTick > currentTick) {
+                    // 还没转到这一圈
+                    i++;
+                    continue;
+                }
+                // 与最后一个交换后删除，桶内顺序无关
+                int last = bucket.size() - 1;
+                bucket.set(i, bucket.get(last));
+                bucket.remove(last);
+                long delay;
+                try {
+                    delay = handler.onTimeout(entry.item, now);
+                } catch (RuntimeException e) {
+                    delay = -1;
+                }
+                if (delay < 0) {
+                    size--;
+                    continue;
+                }
+                entry.deadlineNanos = now + delay;
+                place(entry);
+            }
+        }
+    }
+
+    private void place(Entry<T> entry) {
+        // 到期时间已过的放到下一个 tick，不会在本次 advance 中再次处理同一个条目
+        entry.deadlineTick = Math.max(currentTick + 1, (entry.deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+        buckets[(int) entry.deadlineTick & mask].add(entry);
+    }
+
+    /**
+     * 时间轮中的条目数
+     */
+    int size() {
+        return size;
+    }
+}
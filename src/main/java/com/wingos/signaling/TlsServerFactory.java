@@ -0,0 +1,337 @@
+package com.wingos.signaling;
+
+import org.java_websocket.SSLSocketChannel2;
+import org.java_websocket.server.DefaultSSLWebSocketServerFactory;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WSS（TLS）连接工厂
+ *
+ * 在 DefaultSSLWebSocketServerFactory 的基础上：
+ * - 从密钥库创建 SSLContext，并设置服务端会话缓存的大小和有效期，移动端断线重连时可以恢复TLS会话，
+ *   省去完整握手的非对称运算
+ * - 关闭连接时不再让会话失效（SSLSocketChannel2.close 会调用 SSLSession.invalidate，导致会话无法恢复）
+ * - SSLEngine 的三个缓冲区（每个约16KB）从池中取用，连接关闭后归还，重连时不再分配新的缓冲区；
+ *   低内存模式下池中是直接缓冲区，连接空闲时也归还，只在收发数据时借用（见 PooledChannel.detachIfIdle）
+ * - 握手中的耗时计算（签名、密钥交换）在多个线程上执行，而不是默认的单个线程
+ * - 修正 SSLSocketChannel2 握手时的空转和偶发的停顿（见 PooledChannel 的 consumeDelegatedTasks、write、isNeedWrite）
+ */
+final class TlsServerFactory extends DefaultSSLWebSocketServerFactory {
+
+    // 已归还缓冲区的连接使用的空缓冲区，容量为0，读写前都会换回池中的缓冲区
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final BufferPool pool;
+    private final boolean lowMemory;
+
+    /**
+     * @param lowMemory 连接空闲时归还缓冲区，池中使用直接缓冲区
+     */
+    TlsServerFactory(SSLContext sslContext, int handshakeThreads, int maxPooledBuffers, boolean lowMemory) {
+        super(sslContext, newHandshakeExecutor(handshakeThreads));
+        this.pool = new BufferPool(maxPooledBuffers, lowMemory);
+        this.lowMemory = lowMemory;
+    }
+
+    /**
+     * 从密钥库创建 SSLContext
+     * @param sessionCacheSize 服务端会话缓存的会话数
+     * @param sessionTimeoutSeconds 会话的有效期
+     */
+    static SSLContext createContext(String keystorePath, String keystoreType, char[] password,
+            int sessionCacheSize, int sessionTimeoutSeconds) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(keystoreType);
+        try (InputStream in = new FileInputStream(keystorePath)) {
+            keyStore.load(in, password);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, password);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        SSLSessionContext sessions = context.getServerSessionContext();
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout(sessionTimeoutSeconds);
+        return context;
+    }
+
+    private static ExecutorService newHandshakeExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "signaling-tls-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public ByteChannel wrapChannel(SocketChannel channel, SelectionKey key) throws IOException {
+        SSLEngine engine = sslcontext.createSSLEngine();
+        engine.setUseClientMode(false);
+        return new PooledChannel(channel, engine, exec, key);
+    }
+
+    /**
+     * 池中空闲的缓冲区数
+     */
+    int pooledBuffers() {
+        return pool.size.get();
+    }
+
+    /**
+     * 使用池中缓冲区的 SSLSocketChannel2
+     *
+     * createBuffers 在父类构造方法中调用，此时子类的字段还未初始化，
+     * 因此声明为内部类，通过外部类的 pool 取缓冲区（外部类引用在调用父类构造方法之前已赋值）。
+     *
+     * close 可能在选择器线程之外调用（如心跳超时），读写和关闭在同一把锁下进行；
+     * 归还缓冲区后换成空缓冲区，关闭后残留的读写不会访问已被其它连接取用的缓冲区。
+     *
+     * 低内存模式下每次读写之后检查连接是否空闲（握手已完成、没有未解密的密文、未读出的明文和未发出的密文），
+     * 空闲时归还三个缓冲区，下一次读写前再从池中借用。选择器线程只在一次读写的过程中持有缓冲区，
+     * 大量空闲连接只占用少量池中的缓冲区。
+     */
+    private final class PooledChannel extends SSLSocketChannel2 {
+        private boolean released;
+        private boolean detached;
+        // 归还时记录缓冲区的容量，借用时取相同大小的
+        private int appBufferSize;
+        private int netBufferSize;
+
+        PooledChannel(SocketChannel channel, SSLEngine engine, ExecutorService handshakeExecutor, SelectionKey key)
+                throws IOException {
+            super(channel, engine, handshakeExecutor, key);
+        }
+
+        @Override
+        protected void createBuffers(SSLSession session) {
+            if (inData == null) {
+                // 大小与父类分配的一致，父类只在为null或大小不同时分配新的缓冲区
+                int netBufferMax = session.getPacketBufferSize();
+                int appBufferMax = Math.max(session.getApplicationBufferSize(), netBufferMax);
+                inData = pool.acquire(appBufferMax);
+                outCrypt = pool.acquire(netBufferMax);
+                inCrypt = pool.acquire(netBufferMax);
+                // 父类先把 inCrypt 中剩余的数据当作未处理的密文保存，取出的缓冲区要设为没有剩余数据
+                inCrypt.limit(0);
+            }
+            super.createBuffers(session);
+        }
+
+        @Override
+        protected void consumeDelegatedTasks() {
+            // 父类只把任务提交到线程池，任务完成后没有任何事件唤醒选择器；任务完成后注册写事件，继续握手
+            Runnable task;
+            while ((task = sslEngine.getDelegatedTask()) != null) {
+                tasks.add(CompletableFuture.runAsync(task, exec).whenComplete((result, error) -> requestWrite()));
+            }
+        }
+
+        /**
+         * 注册写事件并唤醒选择器，选择器线程会调用 write 继续握手
+         */
+        private void requestWrite() {
+            SelectionKey key = selectionKey;
+            if (key == null || !key.isValid()) {
+                return;
+            }
+            try {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                key.selector().wakeup();
+            } catch (CancelledKeyException e) {
+                // 连接已关闭
+            }
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            attach();
+            int read = super.read(dst);
+            if (isNeedWrite()) {
+                // 读路径上的握手需要继续发送数据（isNeedWrite 不再让写事件一直保持注册）
+                requestWrite();
+            }
+            detachIfIdle();
+            return read;
+        }
+
+        @Override
+        public synchronized int readMore(ByteBuffer dst) throws SSLException {
+            attach();
+            int read = super.readMore(dst);
+            detachIfIdle();
+            return read;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            if (sslEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                // 握手中等待对端数据时只由读事件推进：写路径上父类也会读取套接字，
+                // 如果把对端的 Finished 和紧随其后的 HTTP 升级请求一起读入并完成握手，
+                // 剩余的数据会留在通道里，而选择器不会再为它调用 read，连接一直停在握手阶段
+                return 0;
+            }
+            attach();
+            int written = super.write(src);
+            detachIfIdle();
+            return written;
+        }
+
+        @Override
+        public synchronized void writeMore() throws IOException {
+            attach();
+            super.writeMore();
+            detachIfIdle();
+        }
+
+        @Override
+        public synchronized boolean isNeedRead() {
+            return super.isNeedRead();
+        }
+
+        @Override
+        public synchronized boolean isNeedWrite() {
+            // 父类在整个握手期间都返回true，选择器会一直处理写事件空转，
+            // 等待委托任务时与握手线程争抢CPU；这里只在确实有数据要发送时返回true，
+            // 委托任务完成后由 requestWrite 重新注册写事件
+            return outCrypt.hasRemaining()
+                    || sslEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            // 与父类相同（发送 close_notify 后关闭），但不调用 SSLSession.invalidate，会话留在缓存中供重连时恢复
+            sslEngine.closeOutbound();
+            try {
+                if (socketChannel.isOpen()) {
+                    attach();
+                    outCrypt.compact();
+                    writeEngineResult = sslEngine.wrap(emptybuffer, outCrypt);
+                    outCrypt.flip();
+                    socketChannel.write(outCrypt);
+                }
+            } finally {
+                socketChannel.close();
+                release();
+            }
+        }
+
+        /**
+         * 低内存模式下空闲时归还缓冲区
+         *
+         * 有半个TLS记录留在 inCrypt 中（BUFFER_UNDERFLOW）、握手后保存的密文、
+         * 未交给 WebSocketImpl 的明文或没有写完的密文时不能归还。
+         */
+        private void detachIfIdle() {
+            if (!lowMemory || detached || released
+                    || sslEngine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                    || inData.hasRemaining() || inCrypt.hasRemaining() || outCrypt.hasRemaining()
+                    || super.isNeedRead()) {
+                return;
+            }
+            detached = true;
+            appBufferSize = inData.capacity();
+            netBufferSize = inCrypt.capacity();
+            returnBuffers();
+        }
+
+        /**
+         * 借回空闲时归还的缓冲区，三个缓冲区都设为没有剩余数据，与归还前的状态相同
+         */
+        private void attach() {
+            if (!detached || released) {
+                return;
+            }
+            detached = false;
+            inData = pool.acquire(appBufferSize);
+            outCrypt = pool.acquire(netBufferSize);
+            inCrypt = pool.acquire(netBufferSize);
+            inData.limit(0);
+            outCrypt.limit(0);
+            inCrypt.limit(0);
+        }
+
+        private void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (!detached) {
+                returnBuffers();
+            }
+        }
+
+        private void returnBuffers() {
+            pool.release(inData);
+            pool.release(outCrypt);
+            pool.release(inCrypt);
+            inData = EMPTY;
+            outCrypt = EMPTY;
+            inCrypt = EMPTY;
+        }
+    }
+
+    /**
+     * 固定上限的缓冲区池，每种容量一个队列，取用时直接从对应容量的队列里取
+     *
+     * 直接缓冲区不占用堆，SSLEngine 读写套接字时也不需要再经过JDK内部的临时直接缓冲区复制一次；
+     * 分配和回收的开销比堆缓冲区大，只在缓冲区被反复借用的低内存模式下使用。
+     */
+    private static final class BufferPool {
+        // TLS会话的缓冲区只有应用数据和网络数据两三种大小，队列数很少
+        private final Map<Integer, Queue<ByteBuffer>> buffers = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int maxBuffers;
+        private final boolean direct;
+
+        BufferPool(int maxBuffers, boolean direct) {
+            this.maxBuffers = maxBuffers;
+            this.direct = direct;
+        }
+
+        ByteBuffer acquire(int capacity) {
+            Queue<ByteBuffer> queue = buffers.get(capacity);
+            ByteBuffer buffer = queue == null ? null : queue.poll();
+            if (buffer != null) {
+                size.decrementAndGet();
+                buffer.clear();
+                return buffer;
+            }
+            return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+
+        void release(ByteBuffer buffer) {
+            if (buffer == null || size.incrementAndGet() > maxBuffers) {
+                if (buffer != null) {
+                    size.decrementAndGet();
+                }
+                return;
+            }
+            buffers.computeIfAbsent(buffer.capacity(), c -> new ConcurrentLinkedQueue<>()).offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AdmissionControlTest {
+    private static final InetAddress IP_A = InetAddress.getLoopbackAddress();
+
+    @Test
+    void enforcesPerIpAndTotalLimits() throws Exception {
+        AdmissionControl admission = new AdmissionControl(3, 2);
+        InetAddress ipB = InetAddress.getByAddress(new byte[] {10, 0, 0, 2});
+
+        assertNull(admission.tryAdmit(TestSockets.open(), IP_A));
+        assertNull(admission.tryAdmit(TestSockets.open(), IP_A));
+        assertEquals(AdmissionControl.Rejection.MAX_CONNECTIONS_PER_IP, admission.tryAdmit(TestSockets.open(), IP_A));
+        assertNull(admission.tryAdmit(TestSockets.open(), ipB));
+        assertEquals(AdmissionControl.Rejection.MAX_CONNECTIONS, admission.tryAdmit(TestSockets.open(), ipB));
+        assertEquals(3, admission.connections());
+    }
+
+    @Test
+    void releaseIsIdempotentAndIgnoresUnadmittedConnections() {
+        AdmissionControl admission = new AdmissionControl(2, 1);
+        WebSocket first = TestSockets.open();
+        WebSocket rejected = TestSockets.open();
+
+        assertNull(admission.tryAdmit(first, IP_A));
+        assertEquals(AdmissionControl.Rejection.MAX_CONNECTIONS_PER_IP, admission.tryAdmit(rejected, IP_A));
+        admission.release(rejected);
+        assertEquals(1, admission.connections());
+
+        admission.release(first);
+        admission.release(first);
+        assertEquals(0, admission.connections());
+
+        // 名额已归还，同一IP可以再次连接
+        assertNull(admission.tryAdmit(TestSockets.open(), IP_A));
+        assertEquals(1, admission.connections());
+    }
+}
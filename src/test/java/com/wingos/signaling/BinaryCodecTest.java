@@ -0,0 +1,120 @@
+package com.wingos.signaling;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryCodecTest {
+
+    private static String candidate(String candidate, String sdpMid, int index, String fromClientId) {
+        JSONObject json = new JSONObject().put("type", "candidate").put("candidate", candidate)
+                .put("sdpMid", sdpMid).put("sdpMLineIndex", index);
+        if (fromClientId != null) {
+            json.put("fromClientId", fromClientId);
+        }
+        return json.toString();
+    }
+
+    private static List<String[]> decodeAll(ByteBuffer frame, BinaryCodec.Header header) {
+        List<String[]> decoded = new ArrayList<>();
+        BinaryCodec.decode(frame, header, new BinaryCodec.Sink() {
+            @Override
+            public void onSdp(byte type, String sdp) {
+                decoded.add(new String[] {"sdp", sdp});
+            }
+
+            @Override
+            public void onCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId) {
+                decoded.add(new String[] {candidate, sdpMid, String.valueOf(sdpMLineIndex), fromClientId});
+            }
+        });
+        return decoded;
+    }
+
+    @Test
+    void mixedSourceBatchKeepsPerItemSource() {
+        String batch = CandidateBatcher.encode(Arrays.asList(
+                candidate("candidate:1 1 udp 1 10.0.0.1 5000 typ host", "0", 0, "client-1"),
+                candidate("candidate:2 1 udp 1 10.0.0.2 5000 typ host", "1", 1, "client-2"),
+                candidate("candidate:3 1 udp 1 10.0.0.1 5001 typ host", "0", 0, "client-1")), null);
+
+        ByteBuffer frame = BinaryCodec.fromJson(batch);
+        assertNotNull(frame);
+        BinaryCodec.Header header = BinaryCodec.scan(frame);
+        assertNotNull(header);
+        assertEquals(BinaryCodec.CANDIDATES, header.type);
+        assertNull(header.fromClientId);
+
+        List<String[]> decoded = decodeAll(frame, header);
+        assertEquals(3, decoded.size());
+        assertEquals(Arrays.asList("candidate:1 1 udp 1 10.0.0.1 5000 typ host", "0", "0", "client-1"),
+                Arrays.asList(decoded.get(0)));
+        assertEquals(Arrays.asList("candidate:2 1 udp 1 10.0.0.2 5000 typ host", "1", "1", "client-2"),
+                Arrays.asList(decoded.get(1)));
+        assertEquals(Arrays.asList("candidate:3 1 udp 1 10.0.0.1 5001 typ host", "0", "0", "client-1"),
+                Arrays.asList(decoded.get(2)));
+
+        JSONArray items = new JSONObject(BinaryCodec.toJson(frame, header)).getJSONArray(CandidateBatcher.BATCH_TYPE);
+        assertEquals("client-1", items.getJSONObject(0).getString("fromClientId"));
+        assertEquals("client-2", items.getJSONObject(1).getString("fromClientId"));
+        assertEquals("client-1", items.getJSONObject(2).getString("fromClientId"));
+    }
+
+    @Test
+    void batchItemsWithoutSourceUseHeader() {
+        JSONObject batch = new JSONObject(CandidateBatcher.encode(Arrays.asList(
+                candidate("c1", "0", 0, null), candidate("c2", "0", 0, "client-9")), "client-5"))
+                .put("fromClientId", "client-7");
+
+        ByteBuffer frame = BinaryCodec.fromJson(batch.toString());
+        BinaryCodec.Header header = BinaryCodec.scan(frame);
+        assertEquals("client-5", header.toClientId);
+        assertEquals("client-7", header.fromClientId);
+
+        List<String[]> decoded = decodeAll(frame, header);
+        assertEquals("client-7", decoded.get(0)[3]);
+        assertEquals("client-9", decoded.get(1)[3]);
+    }
+
+    @Test
+    void singleCandidateRoundTrip() {
+        ByteBuffer frame = BinaryCodec.encodeCandidate("client-2", "client-1", "candidate:1", "audio", 3);
+        BinaryCodec.Header header = BinaryCodec.scan(frame);
+        assertEquals("client-2", header.toClientId);
+        assertEquals("client-1", header.fromClientId);
+        List<String[]> decoded = decodeAll(frame, header);
+        assertEquals(Arrays.asList("candidate:1", "audio", "3", "client-1"), Arrays.asList(decoded.get(0)));
+    }
+
+    @Test
+    void offerRoundTrip() {
+        String offer = new JSONObject().put("type", "offer").put("sdp", "v=0\r\ns=会话\r\n")
+                .put("fromClientId", "client-1").toString();
+        ByteBuffer frame = BinaryCodec.fromJson(offer);
+        BinaryCodec.Header header = BinaryCodec.scan(frame);
+        JSONObject json = new JSONObject(BinaryCodec.toJson(frame, header));
+        assertEquals("offer", json.getString("type"));
+        assertEquals("v=0\r\ns=会话\r\n", json.getString("sdp"));
+        assertEquals("client-1", json.getString("fromClientId"));
+    }
+
+    @Test
+    void truncatedBatchIsRejected() {
+        String batch = CandidateBatcher.encode(Arrays.asList(candidate("c1", "0", 0, "client-1")), null);
+        ByteBuffer frame = BinaryCodec.fromJson(batch);
+        ByteBuffer truncated = frame.duplicate();
+        truncated.limit(frame.limit() - 3);
+        BinaryCodec.Header header = BinaryCodec.scan(truncated);
+        assertThrows(IllegalArgumentException.class, () -> decodeAll(truncated, header));
+    }
+}
@@ -0,0 +1,106 @@
+package com.wingos.signaling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallbackDispatcherTest {
+    private final ExecutorService runner = Executors.newFixedThreadPool(4);
+    private final List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void shutdown() {
+        runner.shutdownNow();
+    }
+
+    private void awaitExecuted(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executed.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void runsCallbacksOneAtATimeInSubmissionOrder() throws Exception {
+        CallbackDispatcher dispatcher = new CallbackDispatcher(runner, 64);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            int n = i;
+            dispatcher.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                executed.add(n);
+                running.decrementAndGet();
+            });
+        }
+        awaitExecuted(count);
+
+        assertEquals(count, executed.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, executed.get(i));
+        }
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void blocksReaderWhenQueueIsFull() throws Exception {
+        CallbackDispatcher dispatcher = new CallbackDispatcher(runner, 2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        dispatcher.execute(() -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.add(0);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 第一个回调正在执行，队列容纳两个，第四个阻塞提交线程
+        Thread reader = new Thread(() -> {
+            for (int i = 1; i <= 3; i++) {
+                int n = i;
+                dispatcher.execute(() -> executed.add(n));
+            }
+        });
+        reader.start();
+        reader.join(200);
+        assertTrue(reader.isAlive());
+        assertEquals(1, dispatcher.queueFullCount());
+        assertEquals(2, dispatcher.queuedCallbacks());
+
+        release.countDown();
+        reader.join(5000);
+        assertFalse(reader.isAlive());
+        awaitExecuted(4);
+        assertEquals(List.of(0, 1, 2, 3), executed);
+    }
+
+    @Test
+    void keepsDrainingAfterFailedCallback() throws Exception {
+        CallbackDispatcher dispatcher = new CallbackDispatcher(runner, 16);
+        dispatcher.execute(() -> {
+            throw new IllegalStateException("handler failed");
+        });
+        dispatcher.execute(() -> executed.add(1));
+        awaitExecuted(1);
+        assertEquals(List.of(1), executed);
+    }
+}
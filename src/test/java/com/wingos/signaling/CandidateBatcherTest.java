@@ -0,0 +1,90 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CandidateBatcherTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void flushesWhenCountReached() {
+        WebSocket socket = TestSockets.open();
+        CandidateBatcher batcher = new CandidateBatcher(scheduler, (ws, items) -> sent.add(items.toString()), 60000, 2);
+
+        batcher.add(socket, "c1");
+        assertTrue(sent.isEmpty());
+        batcher.add(socket, "c2");
+        batcher.add(socket, "c3");
+        batcher.flush(socket);
+        batcher.flush(socket);
+
+        assertEquals(Arrays.asList("[c1, c2]", "[c3]"), sent);
+    }
+
+    @Test
+    void discardDropsPendingBatch() {
+        WebSocket socket = TestSockets.open();
+        CandidateBatcher batcher = new CandidateBatcher(scheduler, (ws, items) -> sent.add(items.toString()), 60000, 10);
+
+        batcher.add(socket, "c1");
+        batcher.discard(socket);
+        batcher.flush(socket);
+        batcher.add(socket, "c2");
+        batcher.flush(socket);
+
+        assertEquals(Collections.singletonList("[c2]"), sent);
+    }
+
+    @Test
+    void flushWaitsForBatchBeingSentByTimer() throws Exception {
+        WebSocket socket = TestSockets.open();
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CandidateBatcher batcher = new CandidateBatcher(scheduler, (ws, items) -> {
+            sending.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sent.add(items.toString());
+        }, 1, 10);
+
+        batcher.add(socket, "c1");
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        // 处理线程在定时器发送批次期间转发 offer：先 flush 再发送
+        Thread processor = new Thread(() -> {
+            batcher.flush(socket);
+            sent.add("offer");
+        });
+        processor.start();
+        processor.join(100);
+        assertTrue(processor.isAlive());
+
+        release.countDown();
+        processor.join(5000);
+        assertFalse(processor.isAlive());
+        assertEquals(Arrays.asList("[c1]", "offer"), sent);
+    }
+}
@@ -0,0 +1,166 @@
+package com.wingos.signaling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 两个节点共用进程内的集群传输和位置目录，客户端和设备连接在不同节点上
+ */
+class ClusterTest {
+    private final InMemoryClusterTransport transport = new InMemoryClusterTransport();
+    private final InMemoryLocationDirectory directory = new InMemoryLocationDirectory();
+    private final List<SignalingServer> servers = new ArrayList<>();
+    private final List<SignalingWebSocketClient> connections = new ArrayList<>();
+
+    /**
+     * 按顺序记录收到的回调
+     */
+    private static final class Recorder implements SignalingWebSocketClient.MessageHandler {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onConnected() {
+            events.add("connected");
+        }
+
+        @Override
+        public void onDisconnected() {
+            events.add("disconnected");
+        }
+
+        @Override
+        public void onOffer(String sdp, String fromClientId) {
+            events.add("offer:" + sdp + ":" + fromClientId);
+        }
+
+        @Override
+        public void onAnswer(String sdp) {
+            events.add("answer:" + sdp);
+        }
+
+        @Override
+        public void onIceCandidate(String candidate, String sdpMid, int sdpMLineIndex, String fromClientId) {
+            events.add("candidate:" + candidate + ":" + fromClientId);
+        }
+
+        @Override
+        public void onError(String error) {
+            events.add("error:" + error);
+        }
+
+        String next() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @AfterEach
+    void stop() {
+        for (SignalingWebSocketClient connection : connections) {
+            connection.close();
+        }
+        for (SignalingServer server : servers) {
+            server.stop();
+        }
+    }
+
+    private int startNode(String nodeId) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        SignalingConfig config = new SignalingConfig()
+                .setPendingTtlMs(5000)
+                .setProcessingStripes(2);
+        SignalingServer server = new SignalingServer(config, new ClusterNode(nodeId, transport, directory));
+        server.start(port);
+        servers.add(server);
+        return port;
+    }
+
+    private SignalingWebSocketClient connect(int port, String query, Recorder recorder) throws Exception {
+        SignalingWebSocketClient connection = new SignalingWebSocketClient(
+                new URI("ws://127.0.0.1:" + port + "/?" + query), recorder);
+        connections.add(connection);
+        assertTrue(connection.connectBlocking(5, TimeUnit.SECONDS));
+        assertEquals("connected", recorder.next());
+        return connection;
+    }
+
+    @Test
+    void routesAcrossNodesInOrder() throws Exception {
+        int portA = startNode("a");
+        int portB = startNode("b");
+        Recorder device = new Recorder();
+        Recorder client = new Recorder();
+        Recorder otherClient = new Recorder();
+        SignalingWebSocketClient deviceConnection = connect(portB, "role=server&deviceId=X", device);
+        SignalingWebSocketClient clientConnection = connect(portA, "deviceId=X", client);
+        connect(portB, "deviceId=X", otherClient);
+        String clientId = clientConnection.getClientId();
+
+        clientConnection.sendOffer("sdp");
+        for (int i = 0; i < 20; i++) {
+            clientConnection.sendIceCandidate("c" + i, "0", 0, null);
+        }
+        assertEquals("offer:sdp:" + clientId, device.next());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("candidate:c" + i + ":" + clientId, device.next());
+        }
+
+        deviceConnection.sendAnswer("answer", clientId);
+        assertEquals("answer:answer", client.next());
+
+        // 设备不指定接收方的 candidate 广播给两个节点上的客户端
+        deviceConnection.sendIceCandidate("broadcast", "0", 0, null);
+        assertEquals("candidate:broadcast:null", client.next());
+        assertEquals("candidate:broadcast:null", otherClient.next());
+    }
+
+    @Test
+    void replaysHeldOfferWhenDeviceComesOnlineOnAnotherNode() throws Exception {
+        int portA = startNode("a");
+        int portB = startNode("b");
+        Recorder client = new Recorder();
+        Recorder device = new Recorder();
+        SignalingWebSocketClient clientConnection = connect(portA, "deviceId=X", client);
+
+        // 设备离线，offer 暂存在节点a
+        clientConnection.sendOffer("early");
+        Thread.sleep(200);
+        connect(portB, "role=server&deviceId=X", device);
+
+        assertEquals("offer:early:" + clientConnection.getClientId(), device.next());
+    }
+
+    @Test
+    void retiresStaleDeviceSessionWhenDeviceMovesToAnotherNode() throws Exception {
+        int portA = startNode("a");
+        int portB = startNode("b");
+        Recorder oldDevice = new Recorder();
+        Recorder newDevice = new Recorder();
+        Recorder client = new Recorder();
+        connect(portA, "role=server&deviceId=Y", oldDevice);
+        SignalingWebSocketClient clientConnection = connect(portA, "deviceId=Y", client);
+
+        // 旧连接仍然打开时设备在节点b重新连接
+        connect(portB, "role=server&deviceId=Y", newDevice);
+        assertEquals("disconnected", oldDevice.next());
+
+        clientConnection.sendOffer("moved");
+        assertEquals("offer:moved:" + clientConnection.getClientId(), newDevice.next());
+        assertNull(oldDevice.events.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,97 @@
+package com.wingos.signaling;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLogTest {
+
+    /**
+     * 第一次写出时阻塞，直到测试放行；记录是否已关闭
+     */
+    private static final class BlockingWriter extends StringWriter {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean closed;
+
+        @Override
+        public StringWriter append(CharSequence csq) {
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.append(csq);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    private static double[] sampling(double rate) {
+        double[] sampling = new double[EventLog.Type.values().length];
+        Arrays.fill(sampling, rate);
+        return sampling;
+    }
+
+    @Test
+    void dropsEventsWhenBufferIsFullAndWritesTheRestOnClose() throws Exception {
+        BlockingWriter writer = new BlockingWriter();
+        AtomicInteger drops = new AtomicInteger();
+        EventLog log = new EventLog(4, sampling(1), 100, writer, drops::incrementAndGet);
+
+        // 写线程取走第一个事件后阻塞在写出上，缓冲区的4个槽位都空出来
+        log.record(EventLog.Type.OFFER, "c0", "d", 10, null);
+        assertTrue(writer.writing.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 6; i++) {
+            log.record(EventLog.Type.OFFER, "c" + i, "d", 10, null);
+        }
+        assertEquals(2, drops.get());
+        assertEquals(4, log.queuedEvents());
+
+        writer.release.countDown();
+        log.close();
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(5, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            JSONObject event = new JSONObject(lines[i]);
+            assertEquals("offer", event.getString("event"));
+            assertEquals("c" + i, event.getString("from"));
+        }
+        assertTrue(writer.closed);
+        assertEquals(0, log.queuedEvents());
+    }
+
+    @Test
+    void appliesSamplingAndTruncatesDetail() {
+        StringWriter writer = new StringWriter();
+        double[] sampling = sampling(1);
+        sampling[EventLog.Type.CANDIDATE.ordinal()] = 0;
+        EventLog log = new EventLog(16, sampling, 4, writer, () -> { });
+
+        log.record(EventLog.Type.CANDIDATE, "c", "d", 1, null);
+        log.record(EventLog.Type.INVALID, "c", null, 9, "{not json");
+        log.close();
+        log.record(EventLog.Type.OFFER, "late", "d", 1, null);
+
+        JSONObject event = new JSONObject(writer.toString().trim());
+        assertEquals("invalid", event.getString("event"));
+        assertEquals("{not...", event.getString("detail"));
+        assertEquals(9, event.getLong("size"));
+        assertEquals(0, log.queuedEvents());
+    }
+}
@@ -0,0 +1,86 @@
+package com.wingos.signaling;
+
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.HandshakeImpl1Client;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FanOutTest {
+    private static final String CANDIDATE =
+            "{\"type\":\"candidate\",\"candidate\":\"candidate:1 1 udp 1 10.0.0.1 5000 typ host\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+
+    /**
+     * 协商了二进制子协议的连接
+     */
+    private static TestSockets.Recording binarySocket() throws Exception {
+        Draft_6455 draft = new Draft_6455(Collections.emptyList(),
+                Collections.<IProtocol>singletonList(new Protocol(BinaryCodec.PROTOCOL)));
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.put("Sec-WebSocket-Version", "13");
+        handshake.put("Sec-WebSocket-Protocol", BinaryCodec.PROTOCOL);
+        draft.acceptHandshakeAsServer(handshake);
+        TestSockets.Recording socket = new TestSockets.Recording();
+        socket.draft = draft;
+        return socket;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Framedata> frames(TestSockets.Recording socket) {
+        assertEquals(1, socket.sent.size());
+        return (List<Framedata>) socket.sent.get(0);
+    }
+
+    @Test
+    void encodesFramesOnceForAllRecipients() {
+        TestSockets.Recording first = new TestSockets.Recording();
+        TestSockets.Recording second = new TestSockets.Recording();
+        TestSockets.Recording closed = new TestSockets.Recording();
+        closed.open = false;
+
+        FanOut fanOut = new FanOut(CANDIDATE);
+        assertTrue(fanOut.sendTo(first.socket));
+        assertFalse(fanOut.sendTo(closed.socket));
+        assertTrue(fanOut.sendTo(second.socket));
+
+        assertSame(frames(first), frames(second));
+        assertEquals(Opcode.TEXT, frames(first).get(0).getOpcode());
+        assertTrue(closed.sent.isEmpty());
+        assertEquals(2, fanOut.sentCount());
+    }
+
+    @Test
+    void binaryRecipientsShareBinaryFrames() throws Exception {
+        TestSockets.Recording text = new TestSockets.Recording();
+        TestSockets.Recording binaryA = binarySocket();
+        // 两个连接各自协商，Draft 相等即复用同一组帧
+        TestSockets.Recording binaryB = binarySocket();
+
+        FanOut fanOut = new FanOut(CANDIDATE);
+        assertTrue(fanOut.sendTo(binaryA.socket));
+        assertTrue(fanOut.sendTo(binaryB.socket));
+        assertTrue(fanOut.sendTo(text.socket));
+
+        assertSame(frames(binaryA), frames(binaryB));
+        assertEquals(Opcode.BINARY, frames(binaryA).get(0).getOpcode());
+        assertNotSame(frames(binaryA), frames(text));
+        assertEquals(Opcode.TEXT, frames(text).get(0).getOpcode());
+        assertEquals(3, fanOut.sentCount());
+    }
+
+    @Test
+    void payloadBytesCountsUtf8() {
+        assertEquals(OutboundQueue.utf8Length("{\"sdp\":\"é\"}"), new FanOut("{\"sdp\":\"é\"}").payloadBytes());
+    }
+}
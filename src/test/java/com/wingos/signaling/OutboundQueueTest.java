@@ -0,0 +1,161 @@
+package com.wingos.signaling;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundQueueTest {
+    private static final int BACKLOG = OutboundQueue.SOCKET_QUEUE_FRAMES;
+    private static final String OFFER = "{\"type\":\"offer\"}";
+    private static final String ANSWER = "{\"type\":\"answer\"}";
+
+    private static String candidate(int n) {
+        return "{\"type\":\"candidate\",\"n\":" + n + "}";
+    }
+
+    /**
+     * 套接字队列已积压 BACKLOG 帧（每帧1字节）的发送队列
+     */
+    private static OutboundQueue backlogged(TestSockets.Recording socket, int maxMessages, long maxBytes,
+                                            SlowConsumerPolicy policy) {
+        socket.fill(BACKLOG);
+        return new OutboundQueue(socket.socket, socket.outQueue, maxMessages, maxBytes, policy, true, false);
+    }
+
+    @Test
+    void deliversDirectlyWhileSocketHasRoom() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        OutboundQueue queue = new OutboundQueue(socket.socket, socket.outQueue, 4, 1024,
+                SlowConsumerPolicy.CLOSE, true, false);
+
+        assertEquals(OutboundQueue.Result.SENT, queue.offer(OFFER));
+        assertEquals(OutboundQueue.Result.SENT, queue.offerCandidates(Collections.singletonList(candidate(1))));
+        assertEquals(Arrays.asList(OFFER, candidate(1)), socket.sent);
+        assertEquals(2, queue.depthMessages());
+    }
+
+    @Test
+    void queuesWhileSocketIsBackloggedAndDrainsInOrder() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        OutboundQueue queue = backlogged(socket, BACKLOG + 10, 1 << 20, SlowConsumerPolicy.CLOSE);
+
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offer(OFFER));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerCandidates(Collections.singletonList(candidate(1))));
+        assertTrue(socket.sent.isEmpty());
+        assertTrue(queue.drain());
+
+        socket.outQueue.clear();
+        assertFalse(queue.drain());
+        assertEquals(Arrays.asList(OFFER, candidate(1)), socket.sent);
+    }
+
+    @Test
+    void dropOldestCandidateKeepsOffersAndAnswers() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        OutboundQueue queue = backlogged(socket, BACKLOG + 3, 1 << 20, SlowConsumerPolicy.DROP_OLDEST_CANDIDATE);
+
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offer(OFFER));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerCandidates(Collections.singletonList(candidate(1))));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerCandidates(Collections.singletonList(candidate(2))));
+        assertEquals(OutboundQueue.Result.DROPPED, queue.offerCandidates(Collections.singletonList(candidate(3))));
+        assertEquals(OutboundQueue.Result.DROPPED, queue.offer(ANSWER));
+        assertEquals(2, queue.droppedCount());
+        assertEquals(BACKLOG + 3, queue.depthMessages());
+
+        socket.outQueue.clear();
+        queue.drain();
+        assertEquals(Arrays.asList(OFFER, candidate(3), ANSWER), socket.sent);
+        assertTrue(socket.open);
+    }
+
+    @Test
+    void dropOldestCandidateClosesWhenNothingCanBeDropped() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        OutboundQueue queue = backlogged(socket, BACKLOG + 1, 1 << 20, SlowConsumerPolicy.DROP_OLDEST_CANDIDATE);
+
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offer(OFFER));
+        assertEquals(OutboundQueue.Result.CLOSED, queue.offer(ANSWER));
+        assertFalse(socket.open);
+        assertEquals(OutboundQueue.CLOSE_CODE, socket.closeCode);
+        assertEquals(OutboundQueue.Result.CLOSED, queue.offer(OFFER));
+    }
+
+    @Test
+    void closePolicyClosesOnFirstOverflow() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        OutboundQueue queue = backlogged(socket, BACKLOG + 1, 1 << 20, SlowConsumerPolicy.CLOSE);
+
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerCandidates(Collections.singletonList(candidate(1))));
+        assertEquals(OutboundQueue.Result.CLOSED, queue.offerCandidates(Collections.singletonList(candidate(2))));
+        assertEquals(OutboundQueue.CLOSE_CODE, socket.closeCode);
+        assertEquals(0, queue.droppedCount());
+    }
+
+    @Test
+    void coalesceMergesAdjacentCandidates() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        OutboundQueue queue = backlogged(socket, BACKLOG + 2, 1 << 20, SlowConsumerPolicy.COALESCE);
+
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offer(OFFER));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerCandidates(Collections.singletonList(candidate(1))));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerCandidates(Collections.singletonList(candidate(2))));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerCandidates(Collections.singletonList(candidate(3))));
+        assertEquals(0, queue.droppedCount());
+
+        socket.outQueue.clear();
+        queue.drain();
+        assertEquals(Arrays.asList(OFFER, CandidateBatcher.encode(Arrays.asList(candidate(1), candidate(2), candidate(3)), null)),
+                socket.sent);
+    }
+
+    @Test
+    void coalesceWithoutBatchSupportDropsOldestCandidate() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        socket.fill(BACKLOG);
+        OutboundQueue queue = new OutboundQueue(socket.socket, socket.outQueue, BACKLOG + 1, 1 << 20,
+                SlowConsumerPolicy.COALESCE, false, false);
+
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offerCandidates(Collections.singletonList(candidate(1))));
+        assertEquals(OutboundQueue.Result.DROPPED, queue.offerCandidates(Collections.singletonList(candidate(2))));
+
+        socket.outQueue.clear();
+        queue.drain();
+        assertEquals(Collections.singletonList(candidate(2)), socket.sent);
+    }
+
+    @Test
+    void byteLimitCountsUtf8Bytes() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        // 积压的套接字队列占 BACKLOG 字节，再留10字节
+        OutboundQueue queue = backlogged(socket, 1000, BACKLOG + 10, SlowConsumerPolicy.DROP_OLDEST_CANDIDATE);
+
+        // 5个字符、10个字节
+        String offer = "ééééé";
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offer(offer));
+        assertEquals(BACKLOG + 10, queue.depthBytes());
+        // 按字符数计仍在上限内，按字节数计超限
+        assertEquals(OutboundQueue.Result.DROPPED, queue.offerCandidates(Collections.singletonList("ü")));
+        assertEquals(1, queue.droppedCount());
+        assertEquals(BACKLOG + 10, queue.depthBytes());
+    }
+
+    @Test
+    void utf8LengthMatchesEncodedBytes() {
+        String[] values = {
+                "",
+                "{\"type\":\"offer\",\"sdp\":\"v=0\\r\\n\"}",
+                "s=会话 é ß",
+                "a=label:😀🎥",
+                "\u007f\u0080߿ࠀ￿",
+        };
+        for (String value : values) {
+            assertEquals(value.getBytes(StandardCharsets.UTF_8).length, OutboundQueue.utf8Length(value), value);
+        }
+    }
+}
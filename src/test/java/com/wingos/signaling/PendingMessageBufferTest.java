@@ -0,0 +1,116 @@
+package com.wingos.signaling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingMessageBufferTest {
+    private final List<String> discarded = new ArrayList<>();
+    private final List<String> replayed = new ArrayList<>();
+
+    private void replay(PendingMessageBuffer buffer, String deviceId) {
+        buffer.replay(deviceId, live -> live.forEach(p -> replayed.add(p.message)), p -> discarded.add(p.message));
+    }
+
+    @Test
+    void byteLimitCountsUtf8Bytes() {
+        PendingMessageBuffer buffer = new PendingMessageBuffer(60000, 100, 10);
+
+        // 每条3个字符、6个字节，按字符数计两条都能保留
+        buffer.add("d", new PendingMessageBuffer.Pending("c1", "ééé", true), p -> discarded.add(p.message));
+        buffer.add("d", new PendingMessageBuffer.Pending("c1", "üüü", true), p -> discarded.add(p.message));
+
+        assertEquals(List.of("ééé"), discarded);
+        replay(buffer, "d");
+        assertEquals(List.of("üüü"), replayed);
+    }
+
+    private void add(PendingMessageBuffer buffer, String deviceId, String clientId, String message, boolean candidate) {
+        buffer.add(deviceId, new PendingMessageBuffer.Pending(clientId, message, candidate), p -> discarded.add(p.message));
+    }
+
+    @Test
+    void replaysInOrderOnceAndOnlyForTheDevice() {
+        PendingMessageBuffer buffer = new PendingMessageBuffer(60000, 100, 1 << 20);
+        add(buffer, "d1", "c1", "offer-1", false);
+        add(buffer, "d2", "c2", "offer-2", false);
+        add(buffer, "d1", "c1", "cand-1", true);
+        add(buffer, "d1", "c3", "offer-3", false);
+        assertEquals(4, buffer.size());
+
+        replay(buffer, "d1");
+        assertEquals(List.of("offer-1", "cand-1", "offer-3"), replayed);
+        assertFalse(buffer.hasPending("d1"));
+        assertTrue(buffer.hasPending("d2"));
+
+        replay(buffer, "d1");
+        assertEquals(3, replayed.size());
+    }
+
+    @Test
+    void dropsOldestWhenMessageLimitIsExceeded() {
+        PendingMessageBuffer buffer = new PendingMessageBuffer(60000, 2, 1 << 20);
+        add(buffer, "d", "c1", "offer-1", false);
+        add(buffer, "d", "c2", "offer-2", false);
+        add(buffer, "d", "c3", "offer-3", false);
+
+        assertEquals(List.of("offer-1"), discarded);
+        replay(buffer, "d");
+        assertEquals(List.of("offer-2", "offer-3"), replayed);
+    }
+
+    @Test
+    void newOfferSupersedesEarlierMessagesFromSameClient() {
+        PendingMessageBuffer buffer = new PendingMessageBuffer(60000, 100, 1 << 20);
+        add(buffer, "d", "c1", "offer-1", false);
+        add(buffer, "d", "c1", "cand-1", true);
+        add(buffer, "d", "c2", "offer-2", false);
+        add(buffer, "d", "c1", "offer-1b", false);
+
+        replay(buffer, "d");
+        assertEquals(List.of("offer-2", "offer-1b"), replayed);
+        // 被取代的消息不算作溢出丢弃
+        assertTrue(discarded.isEmpty());
+    }
+
+    @Test
+    void expiresMessagesAfterTtl() throws Exception {
+        PendingMessageBuffer buffer = new PendingMessageBuffer(30, 100, 1 << 20);
+        add(buffer, "d1", "c1", "old", false);
+        add(buffer, "d2", "c2", "old-2", false);
+        Thread.sleep(60);
+        add(buffer, "d1", "c3", "new", false);
+
+        List<String> expired = new ArrayList<>();
+        buffer.expire(p -> expired.add(p.message));
+        assertEquals(List.of("old", "old-2"), sorted(expired));
+        assertFalse(buffer.hasPending("d2"));
+        assertEquals(1, buffer.size());
+
+        replay(buffer, "d1");
+        assertEquals(List.of("new"), replayed);
+    }
+
+    @Test
+    void replaySkipsExpiredMessages() throws Exception {
+        PendingMessageBuffer buffer = new PendingMessageBuffer(30, 100, 1 << 20);
+        add(buffer, "d", "c1", "old", false);
+        Thread.sleep(60);
+        add(buffer, "d", "c2", "new", false);
+
+        replay(buffer, "d");
+        assertEquals(List.of("old"), discarded);
+        assertEquals(List.of("new"), replayed);
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> copy = new ArrayList<>(values);
+        copy.sort(null);
+        return copy;
+    }
+}
@@ -0,0 +1,81 @@
+package com.wingos.signaling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    @Test
+    void allowsBurstThenRefillsAtRate() throws Exception {
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(10, 3));
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        // 每100毫秒补充一个
+        Thread.sleep(150);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void idleTimeDoesNotAccumulateBeyondBurst() throws Exception {
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(20, 3));
+        Thread.sleep(500);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void concurrentCallersShareTheBurst() throws Exception {
+        // 每10秒一个，测试期间不会补充
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(0.1, 50));
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 1000; j++) {
+                    if (limiter.tryAcquire()) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(50, acquired.get());
+    }
+
+    @Test
+    void parsesLimits() {
+        RateLimiter.Limit limit = RateLimiter.Limit.parse("2/10");
+        assertEquals(2, limit.perSecond);
+        assertEquals(10, limit.burst);
+        assertEquals(5, RateLimiter.Limit.parse(" 5 ").burst);
+        assertEquals(1, RateLimiter.Limit.parse("0.5").burst);
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.Limit.parse("0/5"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.Limit.parse("2/0"));
+        assertThrows(NumberFormatException.class, () -> RateLimiter.Limit.parse("fast"));
+    }
+}
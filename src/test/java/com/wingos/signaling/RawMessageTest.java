@@ -0,0 +1,173 @@
+package com.wingos.signaling;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RawMessageTest {
+
+    @Test
+    void scanReadsTypeAndToClientId() {
+        RawMessage message = RawMessage.scan(" {\"type\":\"offer\",\"sdp\":\"v=0\\r\\n\",\"toClientId\":\"client-1\"} ");
+        assertNotNull(message);
+        assertEquals("offer", message.type);
+        assertEquals("client-1", message.toClientId);
+    }
+
+    @Test
+    void scanDecodesEscapes() {
+        RawMessage message = RawMessage.scan("{\"type\":\"an\\u0073wer\",\"to\\u0043lientId\":\"a\\\"b\\\\c\\/d\"}");
+        assertNotNull(message);
+        assertEquals("answer", message.type);
+        assertEquals("a\"b\\c/d", message.toClientId);
+    }
+
+    @Test
+    void scanAcceptsNestedValuesAndLiterals() {
+        String text = "{\"type\":\"candidate\",\"candidate\":{\"sdpMLineIndex\":0,\"sdpMid\":null,"
+                + "\"list\":[[],{},[1,-2.5e+3,0.1E2,true,false,null,\"]}\"]]},\"n\":-0}";
+        RawMessage message = RawMessage.scan(text);
+        assertNotNull(message);
+        assertEquals("candidate", message.type);
+        assertNull(message.toClientId);
+    }
+
+    @Test
+    void scanRejectsMalformedText() {
+        String[] invalid = {
+                "{\"type\":\"offer\",\"x\":hello}",
+                "{\"type\":\"offer\",\"x\":tru}",
+                "{\"type\":\"offer\",\"x\":truex}",
+                "{\"x\":{]}",
+                "{\"x\":[}",
+                "{\"x\":[1,]}",
+                "{\"x\":{\"a\"}}",
+                "{\"x\":{\"a\":1,}}",
+                "{\"x\":01}",
+                "{\"x\":1.}",
+                "{\"x\":1e}",
+                "{\"x\":+1}",
+                "{\"x\":.5}",
+                "{\"x\":\"a\nb\"}",
+                "{\"x\":\"\\u+041\"}",
+                "{\"x\":\"\\u-041\"}",
+                "{\"x\":\"\\u00g1\"}",
+                "{\"x\":\"\\q\"}",
+                "{'type':'offer'}",
+                "{\"type\":\"offer\",\"type\":\"answer\"}",
+                "{\"type\":\"offer\"} x",
+                "{\"type\":\"offer\"",
+                "[1]",
+        };
+        for (String text : invalid) {
+            assertNull(RawMessage.scan(text), text);
+        }
+    }
+
+    @Test
+    void scanFallsBackForNonStringFields() {
+        assertNull(RawMessage.scan("{\"type\":\"offer\",\"toClientId\":123}"));
+        assertNull(RawMessage.scan("{\"type\":\"offer\",\"toClientId\":null}"));
+        assertNull(RawMessage.scan("{\"type\":1}"));
+        assertNull(RawMessage.scan("{\"type\":\"offer\",\"fromClientId\":{}}"));
+    }
+
+    @Test
+    void parseReadsNumericToClientIdAsString() {
+        String text = "{\"type\":\"answer\",\"toClientId\":42,\"sdp\":\"x\"}";
+        assertNull(RawMessage.scan(text));
+        RawMessage message = RawMessage.parse(text);
+        assertEquals("answer", message.type);
+        assertEquals("42", message.toClientId);
+
+        // 设备发往客户端：删除 toClientId 后原样转发
+        JSONObject forwarded = new JSONObject(message.withoutToClientId());
+        assertFalse(forwarded.has("toClientId"));
+        assertEquals("x", forwarded.getString("sdp"));
+    }
+
+    @Test
+    void parseTreatsNullFieldsAsAbsent() {
+        RawMessage message = RawMessage.parse("{\"type\":null,\"toClientId\":null,\"fromClientId\":null}");
+        assertNull(message.type);
+        assertNull(message.toClientId);
+        assertEquals("c", new JSONObject(message.withFromClientId("c")).getString("fromClientId"));
+    }
+
+    @Test
+    void parseNormalizesLenientJson() {
+        RawMessage message = RawMessage.parse("{'type':'offer',toClientId:'a',n:1.50}");
+        assertEquals("offer", message.type);
+        assertEquals("a", message.toClientId);
+    }
+
+    @Test
+    void parseRejectsNonObjects() {
+        assertThrows(JSONException.class, () -> RawMessage.parse("[1]"));
+        assertThrows(JSONException.class, () -> RawMessage.parse("{\"type\":"));
+    }
+
+    @Test
+    void withFromClientIdInsertsField() {
+        RawMessage message = RawMessage.scan("{\"type\":\"offer\",\"sdp\":\"x\"}");
+        String rewritten = message.withFromClientId("client-\"7\"");
+        assertEquals("{\"fromClientId\":\"client-\\\"7\\\"\",\"type\":\"offer\",\"sdp\":\"x\"}", rewritten);
+        assertEquals("client-\"7\"", new JSONObject(rewritten).getString("fromClientId"));
+    }
+
+    @Test
+    void withFromClientIdOnEmptyObject() {
+        assertEquals("{\"fromClientId\":\"c\" }", RawMessage.scan("{ }").withFromClientId("c"));
+    }
+
+    @Test
+    void withFromClientIdReplacesExistingValue() {
+        RawMessage message = RawMessage.scan("{\"type\":\"offer\",\"fromClientId\":\"spoofed\",\"sdp\":\"x\"}");
+        assertEquals("{\"type\":\"offer\",\"fromClientId\":\"client-1\",\"sdp\":\"x\"}",
+                message.withFromClientId("client-1"));
+    }
+
+    @Test
+    void withoutToClientIdRemovesFirstField() {
+        assertEquals("{\"type\":\"answer\",\"sdp\":\"x\"}",
+                RawMessage.scan("{\"toClientId\":\"c\",\"type\":\"answer\",\"sdp\":\"x\"}").withoutToClientId());
+    }
+
+    @Test
+    void withoutToClientIdRemovesMiddleField() {
+        assertEquals("{\"type\":\"answer\",\"sdp\":\"x\"}",
+                RawMessage.scan("{\"type\":\"answer\",\"toClientId\":\"c\",\"sdp\":\"x\"}").withoutToClientId());
+    }
+
+    @Test
+    void withoutToClientIdRemovesLastField() {
+        assertEquals("{\"type\":\"answer\",\"sdp\":\"x\"}",
+                RawMessage.scan("{\"type\":\"answer\",\"sdp\":\"x\",\"toClientId\":\"c\"}").withoutToClientId());
+    }
+
+    @Test
+    void withoutToClientIdRemovesOnlyField() {
+        String removed = RawMessage.scan("{\"toClientId\":\"c\"}").withoutToClientId();
+        assertEquals("{}", removed);
+    }
+
+    @Test
+    void withoutToClientIdKeepsWhitespaceValid() {
+        String removed = RawMessage.scan("{ \"type\" : \"answer\" , \"toClientId\" : \"c\" }").withoutToClientId();
+        JSONObject json = new JSONObject(removed);
+        assertEquals("answer", json.getString("type"));
+        assertFalse(json.has("toClientId"));
+    }
+
+    @Test
+    void withoutToClientIdWithoutField() {
+        String text = "{\"type\":\"answer\"}";
+        assertEquals(text, RawMessage.scan(text).withoutToClientId());
+    }
+}
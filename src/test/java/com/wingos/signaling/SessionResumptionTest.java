@@ -0,0 +1,74 @@
+package com.wingos.signaling;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SessionResumptionTest {
+
+    @Test
+    void tokenResumesSessionOnce() {
+        SessionResumption resumption = new SessionResumption(60000);
+        String token = resumption.issue("client-1", "device-1");
+        resumption.detach("client-1");
+
+        SessionResumption.Resumable session = resumption.resume(token, "device-1");
+        assertNotNull(session);
+        assertEquals("client-1", session.clientId);
+        assertNull(resumption.resume(token, "device-1"));
+    }
+
+    @Test
+    void reissuingInvalidatesPreviousToken() {
+        SessionResumption resumption = new SessionResumption(60000);
+        String first = resumption.issue("client-1", "device-1");
+        String second = resumption.issue("client-1", "device-1");
+
+        assertNotEquals(first, second);
+        assertNull(resumption.resume(first, "device-1"));
+        assertNotNull(resumption.resume(second, "device-1"));
+        assertEquals(1, resumption.size());
+    }
+
+    @Test
+    void rejectsTokenForAnotherDevice() {
+        SessionResumption resumption = new SessionResumption(60000);
+        String token = resumption.issue("client-1", "device-1");
+
+        assertNull(resumption.resume(token, "device-2"));
+        assertNull(resumption.resume(token, "device-1"));
+        assertEquals(0, resumption.size());
+    }
+
+    @Test
+    void detachedSessionExpiresAfterTtl() throws Exception {
+        SessionResumption resumption = new SessionResumption(20);
+        String expired = resumption.issue("client-1", "device-1");
+        String connected = resumption.issue("client-2", "device-1");
+        resumption.detach("client-1");
+        Thread.sleep(50);
+
+        assertNull(resumption.resume(expired, "device-1"));
+        // 连接中的客户端不计算有效期
+        assertNotNull(resumption.resume(connected, "device-1"));
+    }
+
+    @Test
+    void expireRemovesOnlyExpiredDetachedSessions() throws Exception {
+        SessionResumption resumption = new SessionResumption(20);
+        String expired = resumption.issue("client-1", "device-1");
+        resumption.issue("client-2", "device-1");
+        resumption.detach("client-1");
+        Thread.sleep(50);
+        String recent = resumption.issue("client-3", "device-1");
+        resumption.detach("client-3");
+
+        resumption.expire();
+        assertEquals(2, resumption.size());
+        assertNull(resumption.resume(expired, "device-1"));
+        assertNotNull(resumption.resume(recent, "device-1"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.wingos.signaling;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTest {
+
+    private static Session session(TestSockets.Recording socket, String id, RateLimiter[] rateLimiters) {
+        OutboundQueue outbound = new OutboundQueue(socket.socket, socket.outQueue, 1000, 1 << 20,
+                SlowConsumerPolicy.CLOSE, false, false);
+        return new Session(socket.socket, Session.Role.CLIENT, id, "device-1", false, false, outbound, rateLimiters);
+    }
+
+    @Test
+    void sessionIsReadFromConnectionAttachment() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        assertNull(Session.of(socket.socket));
+        assertNull(Session.of(null));
+
+        Session session = session(socket, "client-1", null);
+        socket.socket.setAttachment(session);
+        assertSame(session, Session.of(socket.socket));
+        assertFalse(session.isDevice());
+    }
+
+    @Test
+    void precomputesEncodedId() {
+        Session session = session(new TestSockets.Recording(), "client-\"é\"", null);
+        assertEquals(JSONObject.quote("client-\"é\""), session.quotedId);
+        assertArrayEquals("client-\"é\"".getBytes(StandardCharsets.UTF_8), session.idBytes);
+    }
+
+    @Test
+    void closeIsIdempotentAndClearsPendingMessages() {
+        TestSockets.Recording socket = new TestSockets.Recording();
+        socket.fill(OutboundQueue.SOCKET_QUEUE_FRAMES);
+        Session session = session(socket, "client-1", null);
+        assertEquals(OutboundQueue.Result.QUEUED, session.outbound.offer("{\"type\":\"offer\"}"));
+        assertTrue(session.isOpen());
+
+        assertTrue(session.close());
+        assertFalse(session.close());
+        assertTrue(session.isClosed());
+        assertFalse(session.isOpen());
+        assertEquals(OutboundQueue.SOCKET_QUEUE_FRAMES, session.outbound.depthMessages());
+    }
+
+    @Test
+    void appliesPerTypeAndPerConnectionLimits() {
+        RateLimiter.Limit[] limits = new RateLimiter.Limit[SignalingMetrics.MessageType.values().length + 1];
+        limits[SignalingMetrics.MessageType.OFFER.ordinal()] = new RateLimiter.Limit(0.1, 1);
+        limits[limits.length - 1] = new RateLimiter.Limit(0.1, 3);
+        Session session = session(new TestSockets.Recording(), "client-1", Session.newRateLimiters(limits));
+
+        assertTrue(session.tryAcquire(SignalingMetrics.MessageType.OFFER));
+        assertFalse(session.tryAcquire(SignalingMetrics.MessageType.OFFER));
+        assertTrue(session.tryAcquire(SignalingMetrics.MessageType.ANSWER));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(session.tryAcquire(null));
+        }
+        assertFalse(session.tryAcquire(null));
+
+        Session unlimited = session(new TestSockets.Recording(), "client-2", Session.newRateLimiters(null));
+        assertTrue(unlimited.tryAcquire(SignalingMetrics.MessageType.OFFER));
+        assertTrue(unlimited.tryAcquire(null));
+    }
+}
@@ -0,0 +1,108 @@
+package com.wingos.signaling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedExecutorTest {
+    private final AtomicInteger queueFull = new AtomicInteger();
+    private StripedExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void keepsPerKeyOrderUnderConcurrentSubmitters() throws Exception {
+        executor = new StripedExecutor("test", 4, 16, queueFull::incrementAndGet);
+        int keys = 16;
+        int tasksPerKey = 2000;
+        Map<Integer, List<Integer>> executed = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(keys);
+
+        List<Thread> submitters = new ArrayList<>();
+        for (int k = 0; k < keys; k++) {
+            Integer key = k;
+            List<Integer> sequence = new ArrayList<>(tasksPerKey);
+            executed.put(key, sequence);
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < tasksPerKey; i++) {
+                    int n = i;
+                    // 同一个键的任务只在一条线程上执行，列表不需要同步
+                    executor.execute(key, () -> sequence.add(n));
+                }
+                executor.execute(key, done::countDown);
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        for (List<Integer> sequence : executed.values()) {
+            assertEquals(tasksPerKey, sequence.size());
+            for (int i = 0; i < tasksPerKey; i++) {
+                assertEquals(i, sequence.get(i));
+            }
+        }
+    }
+
+    @Test
+    void blocksSubmitterWhenStripeQueueIsFull() throws Exception {
+        executor = new StripedExecutor("test", 1, 2, queueFull::incrementAndGet);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(3);
+
+        executor.execute("a", () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Thread submitter = new Thread(() -> {
+            for (int i = 0; i < 3; i++) {
+                executor.execute("b", finished::countDown);
+            }
+        });
+        submitter.start();
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+        assertEquals(1, queueFull.get());
+        assertEquals(2, executor.queuedTasks());
+
+        release.countDown();
+        submitter.join(5000);
+        assertFalse(submitter.isAlive());
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failedTaskDoesNotStopStripe() throws Exception {
+        executor = new StripedExecutor("test", 1, 16, queueFull::incrementAndGet);
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute("a", () -> {
+            throw new IllegalStateException("task failed");
+        });
+        executor.execute("a", ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,116 @@
+package com.wingos.signaling;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * 测试用的 WebSocket
+ */
+final class TestSockets {
+
+    private TestSockets() {
+    }
+
+    /**
+     * 只实现 isOpen 的连接，按对象身份比较
+     */
+    static WebSocket open() {
+        return (WebSocket) Proxy.newProxyInstance(WebSocket.class.getClassLoader(), new Class<?>[] {WebSocket.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "socket@" + System.identityHashCode(proxy);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * 记录发出的消息的连接：发出的帧进入 outQueue，不会自动写出，模拟积压的套接字
+     */
+    static final class Recording {
+        final WebSocket socket;
+        final List<Object> sent = new ArrayList<>();
+        final Queue<ByteBuffer> outQueue = new ArrayDeque<>();
+        volatile boolean open = true;
+        volatile int closeCode;
+        volatile Draft draft = new Draft_6455();
+        private volatile Object attachment;
+
+        Recording() {
+            socket = (WebSocket) Proxy.newProxyInstance(WebSocket.class.getClassLoader(),
+                    new Class<?>[] {WebSocket.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "isOpen":
+                                return open;
+                            case "isClosed":
+                                return !open;
+                            case "getDraft":
+                                return draft;
+                            case "getAttachment":
+                                return attachment;
+                            case "setAttachment":
+                                attachment = args[0];
+                                return null;
+                            case "sendFrame":
+                                if (!open) {
+                                    throw new WebsocketNotConnectedException();
+                                }
+                                sent.add(args[0]);
+                                return null;
+                            case "send":
+                                if (!open) {
+                                    throw new WebsocketNotConnectedException();
+                                }
+                                if (args[0] instanceof String) {
+                                    sent.add(args[0]);
+                                    outQueue.add(ByteBuffer.wrap(((String) args[0]).getBytes(StandardCharsets.UTF_8)));
+                                } else {
+                                    ByteBuffer frame = (ByteBuffer) args[0];
+                                    sent.add(frame);
+                                    outQueue.add(frame.duplicate());
+                                }
+                                return null;
+                            case "close":
+                                open = false;
+                                closeCode = args != null && args.length > 0 ? (Integer) args[0] : 0;
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return "recording@" + System.identityHashCode(proxy);
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        /**
+         * 套接字队列填入 frames 个1字节的帧
+         */
+        void fill(int frames) {
+            for (int i = 0; i < frames; i++) {
+                outQueue.add(ByteBuffer.allocate(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.wingos.signaling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 每隔1毫秒推进一次，直到时间轮为空或超时
+     */
+    private static void advanceUntilEmpty(TimingWheel<?> wheel) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        do {
+            Thread.sleep(1);
+            wheel.advance();
+        } while (wheel.size() > 0 && System.nanoTime() < deadline);
+    }
+
+    @Test
+    void firesOnlyAfterDeadlineEvenBeyondOneRound() throws Exception {
+        List<Long> fired = new ArrayList<>();
+        // 4个5毫秒的桶，一圈20毫秒，60毫秒的条目要转三圈
+        TimingWheel<String> wheel = new TimingWheel<>(5, 4, (item, now) -> {
+            fired.add(now);
+            return -1;
+        });
+
+        long scheduled = System.nanoTime();
+        wheel.schedule("session", 60 * MS);
+        wheel.advance();
+        assertEquals(1, wheel.size());
+
+        Thread.sleep(25);
+        wheel.advance();
+        assertTrue(fired.isEmpty());
+
+        advanceUntilEmpty(wheel);
+        assertEquals(1, fired.size());
+        assertTrue(fired.get(0) - scheduled >= 60 * MS);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void reschedulesWithReturnedDelay() throws Exception {
+        List<Long> fired = new ArrayList<>();
+        TimingWheel<String> wheel = new TimingWheel<>(2, 8, (item, now) -> {
+            fired.add(now);
+            return fired.size() < 3 ? 20 * MS : -1;
+        });
+
+        wheel.schedule("session", 10 * MS);
+        advanceUntilEmpty(wheel);
+
+        assertEquals(3, fired.size());
+        assertTrue(fired.get(1) - fired.get(0) >= 20 * MS);
+        assertTrue(fired.get(2) - fired.get(1) >= 20 * MS);
+    }
+
+    @Test
+    void dropsEntryWhenHandlerThrows() throws Exception {
+        List<String> fired = new ArrayList<>();
+        TimingWheel<String> wheel = new TimingWheel<>(2, 8, (item, now) -> {
+            fired.add(item);
+            if (item.equals("bad")) {
+                throw new IllegalStateException("handler failed");
+            }
+            return -1;
+        });
+
+        wheel.schedule("bad", 5 * MS);
+        wheel.schedule("good", 5 * MS);
+        advanceUntilEmpty(wheel);
+
+        assertEquals(2, fired.size());
+        assertTrue(fired.contains("good"));
+        assertEquals(0, wheel.size());
+    }
+}